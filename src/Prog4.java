@@ -1,6 +1,37 @@
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
 
 /**
 * Author: Tariq Wilson & Madison Vo
@@ -42,11 +73,13 @@ import java.io.*;
 |                    that establishes a connection to the database, creates
 |                    tables if necessary, imports data, displays a menu, and
 |                    allows users to choose from different functionalities.
-|                 - getConnection(String[] args): Method to establish a database
-|                    connection using the provided username and password.
+|                 - getConnectionPool(String[] args): Method to create the pool of
+|                    database connections using the provided username and password.
 |                 - createTables(Connection dbConn): Method to create tables in
 |                    the database to store data for each entity if they do not
 |                    already exist.
+|                 - importAllData(): Method to import every CSV file, running
+|                    tables without foreign key dependencies concurrently.
 |                 - importMemberData(Connection dbConn, String file): Method to
 |                    import member data from a CSV file into the Member table
 |                    in the database.
@@ -65,11 +98,39 @@ import java.io.*;
 |                    table in the database.
 |                 - importTransactionData(Connection dbConn, String file): Method to import
 |                    transaction data from a CSV file into the Transaction table in the database.
+|                 - importCsv(Connection dbConn, String file, String tableName,
+|                    String insert, RowBinder binder): Shared batched import engine
+|                    used by every import*Data method.
+|                 - loadKeys(Connection dbConn, String tableName): Method to read
+|                    every ID of a table into an IntHashSet with one query.
+|                 - addMissingColumns(Connection dbConn): Method to add the columns
+|                    of tables created by an older version.
+|                 - createIndexes(Connection dbConn): Method to create the indexes
+|                    the queries rely on if they do not exist yet.
+|                 - createTicketTotals(Connection dbConn): Method to create the
+|                    GameTickets table of per game, per member ticket totals.
+|                 - rebuildTicketTotals(Connection dbConn): Method to recompute
+|                    GameTickets from Gameplay.
+|                 - createRedemptionLog(Connection dbConn): Method to create the
+|                    PrizeRedemption table that logs every prize redeemed.
 |                 - tableExists(Connection dbConn, String tableName): Method to check if
 |                    a table exists in the database.
-|                 - rowExists(Connection dbConn, String tableName, String id): Method to check
-|                    if a row with the given ID exists in the specified table.
-|                 - promptUpdate(Connection dbConn): Method to prompt the user if they want to
+|                 - createSequences(Connection dbConn): Method to create the sequences
+|                    new Member, Game, Prize, Transaction and Gameplay IDs are
+|                    reserved from.
+|                 - nextId(Connection dbConn, String tableName): Method to get a new
+|                    ID for a table from its block allocator.
+|                 - insertTransaction(Connection dbConn, int memberId, String type,
+|                    double amount, LocalDate date): Method to record a token or
+|                    ticket purchase.
+|                 - transactionType(String type): Method to spell a transaction
+|                    type as the Transaction table stores it.
+|                 - runScript(ConnectionPool pool, String script, PrintStream results):
+|                    Method to run a file of commands without prompting and write
+|                    one JSON result per command.
+|                 - withConnection(ConnectionPool pool, DatabaseAction action): Method
+|                    to run an operation on a connection borrowed from the pool.
+|                 - promptUpdate(ConnectionPool pool): Method to prompt the user if they want to
 |                    update the tables and execute the update method accordingly.
 |                 - update(Connection dbConn): Method to prompt the user for the table they want
 |                    to update and call the corresponding update method.
@@ -91,89 +152,242 @@ import java.io.*;
 |                 - deletePrize(Connection dbConn): Method to delete a prize from the Prize table
 |                    in the database.
 |
-|  Constants:      None.
+|  Constants:      - IMPORT_BATCH_SIZE: Number of CSV rows sent per JDBC
+|                    batch and committed together during import. Set with
+|                    -Dprog4.import.batchSize (default 1000).
+|                 - IMPORT_THREADS: Number of tables imported concurrently,
+|                    each on its own connection. Set with
+|                    -Dprog4.import.threads (default 4).
+|                 - DB_URL: JDBC URL of the database. Set with -Dprog4.db.url
+|                    (default the Oracle server on aloe.cs.arizona.edu).
+|                 - ID_BLOCK_SIZE: IDs reserved from a table's sequence per
+|                    round trip when rows are added. Set with
+|                    -Dprog4.id.blockSize (default 50). It becomes the
+|                    sequences' INCREMENT BY when they are created, so it must
+|                    not be changed without dropping them.
+|                 - QUERY_A_PLAN: SQL form query a uses when it runs in the
+|                    database: rank (RANK() OVER) or legacy (correlated
+|                    MAX subquery). Set with -Dprog4.queryA.plan (default rank).
+|                 - LEADERBOARD_SIZE: Best gameplay rows of each game kept in
+|                    memory to answer query a. Set with -Dprog4.leaderboard.size
+|                    (default 10, 0 runs query a in the database every time).
+|                 - REDEEM_RETRIES: Times a prize redemption the database
+|                    aborted because of a concurrent one is retried. Set with
+|                    -Dprog4.redeem.retries (default 3).
+|                 - MEMBER_CACHE_SIZE: Member profiles kept in memory for
+|                    lookups by MemberID. Set with -Dprog4.memberCache.size
+|                    (default 10000, 0 reads the database every time).
+|                 - GAMEPLAY_COLUMNS: Whether query a (with the leaderboard
+|                    off), query d and game-stats scan an in-memory copy of
+|                    Gameplay stored by column. Set with
+|                    -Dprog4.gameplay.columns=true (default false).
+|                 - REPORT_THREADS: Threads summing the tickets report of all
+|                    games. Set with -Dprog4.report.threads (default the
+|                    number of processors).
+|                 - METRICS_DUMP_SECONDS: Seconds between printouts of the
+|                    per operation metrics to standard error. Set with
+|                    -Dprog4.metrics.dumpSeconds (default 0, never; they are
+|                    always printed on exit and published over JMX).
+|                 - HttpService.HTTP_THREADS / HTTP_BACKLOG: Request threads
+|                    of HTTP mode without virtual threads, and connections
+|                    queued for accepting. Set with -Dprog4.http.threads
+|                    (default 64) and -Dprog4.http.backlog (default 1024).
+|                 - The gameplay ingestor is set with -Dprog4.ingest.capacity
+|                    (plays buffered, default 65536), -Dprog4.ingest.batchSize
+|                    (plays written per transaction, default 500),
+|                    -Dprog4.ingest.lingerMillis (longest a play waits for
+|                    its batch to fill, default 20) and
+|                    -Dprog4.ingest.maxWaitMillis (longest a caller waits for
+|                    room in a full buffer before the play is rejected,
+|                    default 1000, 0 rejects at once).
 |
 |  Returns:        None.
 *-------------------------------------------------------------------*/
 public class Prog4 {
 
+    private static final int IMPORT_BATCH_SIZE = Integer.getInteger("prog4.import.batchSize", 1000); /* rows per import batch */
+    private static final int IMPORT_THREADS = Integer.getInteger("prog4.import.threads", 4); /* tables imported at once */
+
+    private static final String DB_URL = System.getProperty("prog4.db.url",
+            "jdbc:oracle:thin:@aloe.cs.arizona.edu:1521:oracle"); /* lectura -> aloe access spell */
+
+    private static ConnectionPool connectionPool = null; /* pool every operation borrows its connection from */
+
+    private static final int ID_BLOCK_SIZE = Integer.getInteger("prog4.id.blockSize", 50); /* IDs reserved per sequence round trip */
+    private static final String[] SEQUENCE_TABLES = {"Member", "Game", "Prize", "Transaction", "Gameplay"}; /* tables whose IDs come from sequences */
+    private static final Map<String, IdAllocator> ids = new ConcurrentHashMap<>(); /* ID allocator of each table */
+    private static final Map<Connection, List<Runnable>> commitActions =
+            Collections.synchronizedMap(new IdentityHashMap<>()); /* see afterCommit, by connection of each open inTransaction */
+    private static final TokenSpendWindow tokenSpending = new TokenSpendWindow(10000); /* 30 day token spending, $100 threshold */
+    private static final String QUERY_A_PLAN = System.getProperty("prog4.queryA.plan", "rank"); /* SQL form of query a */
+    private static final int LEADERBOARD_SIZE = Integer.getInteger("prog4.leaderboard.size", 10); /* high scores cached per game */
+    private static final Leaderboard leaderboard = new Leaderboard(Math.max(LEADERBOARD_SIZE, 1)); /* cached answer of query a */
+    private static final int REDEEM_RETRIES = Integer.getInteger("prog4.redeem.retries", 3); /* retries of an aborted redemption */
+    private static final int MEMBER_CACHE_SIZE = Integer.getInteger("prog4.memberCache.size", 10000); /* member profiles kept in memory */
+    private static final MemberCache members = new MemberCache(MEMBER_CACHE_SIZE); /* recently used member profiles */
+    private static GameplayIngestor gameplayIngestor = null; /* writes recorded plays, started on first use */
+    private static final boolean GAMEPLAY_COLUMNS = Boolean.getBoolean("prog4.gameplay.columns"); /* scan Gameplay in memory */
+    private static final GameplayColumns gameplayColumns = new GameplayColumns(); /* Gameplay by column, loaded on first use */
+    private static final int REPORT_THREADS = Integer.getInteger("prog4.report.threads",
+            Runtime.getRuntime().availableProcessors()); /* threads summing the all games report */
+    private static final Metrics metrics = new Metrics(); /* counters and latencies of every operation */
+    private static final int METRICS_DUMP_SECONDS = Integer.getInteger("prog4.metrics.dumpSeconds", 0); /* seconds between metric dumps */
+
     public static void main(String[] args) throws SQLException {
-        Connection dbConn = null;
+        String script = null; // command file to run instead of prompting, "-" for standard input
+        String output = null; // file script results are written to, standard output if null
+        int httpPort = -1; // port to serve the HTTP API on instead of prompting, -1 for none
+
         // if there are a correct amount of command line arguments
         if (args.length == 2) {
-            dbConn = getConnection(args);
+            connectionPool = getConnectionPool(args);
+
+        // script mode: java Prog4 <username> <password> --script <file|-> [--output <file>]
+        } else if ((args.length == 4 || args.length == 6) && args[2].equals("--script")
+                   && (args.length == 4 || args[4].equals("--output"))) {
+            script = args[3];
+            output = args.length == 6 ? args[5] : null;
+            connectionPool = getConnectionPool(args);
+
+        // HTTP mode: java Prog4 <username> <password> --http <port>
+        } else if (args.length == 4 && args[2].equals("--http") && args[3].matches("\\d{1,5}")) {
+            httpPort = Integer.parseInt(args[3]);
+            connectionPool = getConnectionPool(args);
 
         // if there are a wrong amount of command line arguments
         } else {
-            System.err.println("Usage: java JDBC <username> <password>");
+            System.err.println("Usage: java JDBC <username> <password> [--script <file|-> [--output <file>] | --http <port>]");
             System.exit(-1);
         }
+        metrics.register(METRICS_DUMP_SECONDS);
+
+        PrintStream results = System.out; // where script results are written
+        if (script != null) {
+            if (output != null) {
+                try {
+                    results = new PrintStream(new FileOutputStream(output), false, "UTF-8");
+                } catch (IOException e) {
+                    System.err.println("Could not open script output file " + output + ".");
+                    System.exit(-1);
+                }
+            }
+
+            // keep progress messages out of the results
+            System.setOut(System.err);
+        }
+
+        boolean created = false; // whether the tables were created by this run
+        try (Connection dbConn = connectionPool.borrow()) {
+            // drop(dbConn);
+
+            created = createTables(dbConn);
+            addMissingColumns(dbConn);
+            createIndexes(dbConn);
+            createTicketTotals(dbConn);
+            createRedemptionLog(dbConn);
+        }
 
-        // drop(dbConn);
-        
         // creating tables
-        if (createTables(dbConn)) {
+        if (created) {
             System.out.println("Tables created successfully.");
-            importMemberData(dbConn, "Member.csv");
-            importGameData(dbConn, "Game.csv");
-            importGameplayData(dbConn, "Gameplay.csv");
-            importPrizeData(dbConn, "Prize.csv");
-            importFoodCouponData(dbConn, "FoodCoupon.csv");
-            importMembershipTierData(dbConn, "MembershipTier.csv");
-            importTransactionData(dbConn, "Transaction.csv");
-            System.out.println("Data imported successfully.");
+            if (importAllData()) {
+                System.out.println("Data imported successfully.");
+            } else {
+                System.out.println("Some tables were not imported; see the errors above.");
+            }
 
         // tables already exist
         } else {
             System.out.println("Tables already exist. Skipping table creation and data import.");
         }
 
-        promptUpdate(dbConn); // prompt user to update tables
+        // the sequences start after the imported IDs, so they are created after the import
+        try (Connection dbConn = connectionPool.borrow()) {
+            createSequences(dbConn);
+        }
+
+        // serve the HTTP API instead of prompting, until the process is stopped
+        if (httpPort >= 0) {
+            try {
+                HttpService.start(connectionPool, httpPort);
+            } catch (IOException e) {
+                System.err.println("Could not serve HTTP on port " + httpPort + ".");
+                e.printStackTrace();
+                System.exit(-1);
+            }
+            return;
+        }
+
+        // run the script instead of prompting
+        if (script != null) {
+            boolean succeeded = runScript(connectionPool, script, results);
+            results.close();
+            String ingested = closeGameplayIngestor(); // writes the plays still buffered
+            if (ingested != null) {
+                System.err.println(ingested);
+            }
+            System.err.println(connectionPool.stats());
+            System.err.println(members.stats());
+            if (GAMEPLAY_COLUMNS) {
+                System.err.println(gameplayColumns.stats());
+            }
+            System.err.println(metrics.dump());
+            connectionPool.close();
+            System.exit(succeeded ? 0 : 1);
+        }
+
+        promptUpdate(connectionPool); // prompt user to update tables
         
-        answerQueries(dbConn); // prompt user to get answer to queries
+        answerQueries(connectionPool); // prompt user to get answer to queries
     }
 
     /*---------------------------------------------------------------------
-    |  Function: getConnection
+    |  Function: getConnectionPool
     |
-    |  Purpose:  Establishes a connection to the database using the provided
-    |            username and password. If successful, it returns the
-    |            Connection object representing the database connection.
+    |  Purpose:  Creates the connection pool for the database at DB_URL using
+    |            the provided username and password. The pool opens its
+    |            minimum number of connections up front, so a bad username or
+    |            password is reported here.
     |
-    |  Pre-condition:  The Oracle JDBC driver is available. The database
+    |  Pre-condition:  The JDBC driver for DB_URL is available. The database
     |                  connection parameters (URL, username, password) are
     |                  correctly configured.
     |
-    |  Post-condition: A valid database connection is established.
+    |  Post-condition: A connection pool with valid connections is created.
     |
     |  Parameters:
     |      args - An array of Strings containing the username and password
     |             for database authentication.
     |
-    |  Returns:  Connection - A Connection object representing the database
-    |                        connection if successful, null otherwise.
+    |  Returns:  ConnectionPool - The pool of connections to the database.
     *-------------------------------------------------------------------*/
-    private static Connection getConnection(String[] args) {
-        final String oracleURL = "jdbc:oracle:thin:@aloe.cs.arizona.edu:1521:oracle"; /* lectura -> aloe access spell */
+    private static ConnectionPool getConnectionPool(String[] args) {
         String username = args[0]; /* username to access database from command line argument */
         String password = args[1]; /* password to access database from command line argument */
 
         // try catch to load Oracle JDBC driver
-        try {
-            Class.forName("oracle.jdbc.OracleDriver");
-            System.out.println("Successful loading of Oracle JDBC driver.\n");
-        
-        // catch ClassNotFoundException
-        } catch (ClassNotFoundException e) {
-            System.err.println("Error loading Oracle JDBC driver.");
-            System.exit(-1);
+        if (DB_URL.startsWith("jdbc:oracle:")) {
+            try {
+                Class.forName("oracle.jdbc.OracleDriver");
+                System.out.println("Successful loading of Oracle JDBC driver.\n");
+
+            // catch ClassNotFoundException
+            } catch (ClassNotFoundException e) {
+                System.err.println("Error loading Oracle JDBC driver.");
+                System.exit(-1);
+            }
         }
 
-        Connection dbConn = null; /* initializing database connection */
+        ConnectionPool pool = null; /* initializing connection pool */
 
         // try catch for logging in/connecting to database
         try {
-            dbConn = DriverManager.getConnection(oracleURL, username, password); /* database connection using username and password */
+            pool = new ConnectionPool(DB_URL, username, password,
+                                      Integer.getInteger("prog4.pool.min", 1),
+                                      Integer.getInteger("prog4.pool.max", 8),
+                                      Integer.getInteger("prog4.pool.idleSeconds", 300) * 1000L,
+                                      Integer.getInteger("prog4.pool.waitSeconds", 30) * 1000L,
+                                      Integer.getInteger("prog4.statementCache.size", 64));
             System.out.println("Successful JDBC connection.\n");
 
         // catch SQLException
@@ -182,7 +396,847 @@ public class Prog4 {
             System.exit(-1);
         }
 
-        return dbConn; // return JDBC connection
+        return pool; // return JDBC connection pool
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class ConnectionPool
+    |
+    |  Purpose:  Pool of connections to the database shared by every
+    |            operation of the program. borrow() hands out an idle
+    |            connection, opening a new one while fewer than maxSize are
+    |            open, and otherwise waits up to waitMillis for one to be
+    |            returned. Closing a borrowed connection returns it to the
+    |            pool instead of closing it. Connections are validated before
+    |            they are handed out, and connections idle for longer than
+    |            idleMillis are closed down to minSize by a background thread.
+    |            Validation costs a round trip per borrow; setting
+    |            prog4.pool.validationMillis skips it for connections returned
+    |            less than that long ago, trading the guarantee that every
+    |            borrowed connection was just checked for one round trip
+    |            fewer per operation when operations come back to back. A
+    |            connection that dies in that window fails the operation
+    |            instead of being replaced. The default 0 validates every
+    |            borrow.
+    |            Every pooled connection keeps an LRU cache of up to
+    |            statementCacheSize prepared statements keyed by their SQL
+    |            text, so preparing the same SQL again on a connection reuses
+    |            the statement instead of parsing it again. Every statement
+    |            execute, commit and rollback through a borrowed connection
+    |            is counted as a database round trip, in total and for the
+    |            calling thread (see Metrics).
+    |
+    |  Methods:  - borrow(): Borrows a connection. Close it to return it.
+    |            - stats(): Describes the pool size, wait metrics, round
+    |              trips and statement cache hit/miss counts.
+    |            - close(): Closes every idle connection and stops eviction.
+    *-------------------------------------------------------------------*/
+    private static final class ConnectionPool implements Closeable {
+        private static final int VALIDATION_TIMEOUT_SECONDS = 2; /* how long isValid may take on borrow */
+        private static final long VALIDATION_INTERVAL_MILLIS =
+                Long.getLong("prog4.pool.validationMillis", 0L); /* connections returned more recently skip isValid */
+
+        private final String url; /* JDBC URL of the database */
+        private final String username; /* username for every connection */
+        private final String password; /* password for every connection */
+        private final int minSize; /* connections kept open even when idle */
+        private final int maxSize; /* most connections open at once */
+        private final long idleMillis; /* idle time after which a connection is closed */
+        private final long waitMillis; /* longest a borrower waits for a connection */
+        private final int statementCacheSize; /* prepared statements cached per connection */
+        private final Deque<PooledConnection> idle = new ArrayDeque<>(); /* idle connections, most recently used first */
+        private final ScheduledExecutorService evictor; /* closes connections that sit idle */
+        private int open = 0; /* connections open or being opened */
+        private boolean closed = false; /* whether close has been called */
+
+        private long borrows = 0; /* connections handed out */
+        private long waits = 0; /* borrows that had to wait for a connection */
+        private long totalWaitNanos = 0; /* time spent waiting by all borrows */
+        private long maxWaitNanos = 0; /* longest time a borrow waited */
+        private long timeouts = 0; /* borrows that gave up waiting */
+        private long created = 0; /* connections opened */
+        private long evicted = 0; /* connections closed for being idle */
+        private long invalid = 0; /* connections closed because validation failed */
+        private final AtomicLong statementHits = new AtomicLong(); /* prepares served from a statement cache */
+        private final AtomicLong statementMisses = new AtomicLong(); /* prepares that went to the database */
+        private final AtomicLong statementEvictions = new AtomicLong(); /* cached statements closed to make room */
+        private final AtomicLong roundTrips = new AtomicLong(); /* executes, commits and rollbacks sent */
+
+        ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                       long idleMillis, long waitMillis, int statementCacheSize) throws SQLException {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+            this.minSize = Math.max(0, minSize);
+            this.maxSize = Math.max(1, Math.max(minSize, maxSize));
+            this.idleMillis = idleMillis;
+            this.waitMillis = waitMillis;
+            this.statementCacheSize = Math.max(0, statementCacheSize);
+
+            // open the minimum number of connections up front
+            for (int i = 0; i < this.minSize; i++) {
+                idle.addFirst(new PooledConnection(DriverManager.getConnection(url, username, password)));
+                open++;
+                created++;
+            }
+
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1000, idleMillis / 2);
+            evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        Connection borrow() throws SQLException {
+            long start = System.nanoTime(); // when the borrow started
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(waitMillis); // when the borrow gives up
+            boolean waited = false; // whether the borrow had to wait
+
+            while (true) {
+                PooledConnection candidate = null; // idle connection to hand out
+                synchronized (this) {
+                    // wait while every connection is in use and no more may be opened
+                    while (!closed && idle.isEmpty() && open >= maxSize) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            timeouts++;
+                            throw new SQLException("Timed out waiting " + waitMillis + " ms for a pooled connection.");
+                        }
+                        waited = true;
+                        try {
+                            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLException("Interrupted while waiting for a pooled connection.", e);
+                        }
+                    }
+                    if (closed) {
+                        throw new SQLException("The connection pool is closed.");
+                    }
+
+                    candidate = idle.pollFirst();
+                    // reserve a slot for a new connection
+                    if (candidate == null) {
+                        open++;
+                    }
+                }
+
+                // open a new connection outside the lock
+                if (candidate == null) {
+                    try {
+                        candidate = new PooledConnection(DriverManager.getConnection(url, username, password));
+                    } catch (SQLException e) {
+                        discarded(null);
+                        throw e;
+                    }
+                    synchronized (this) {
+                        created++;
+                    }
+                // validate the idle connection before handing it out, unless it was returned within the interval
+                } else if (System.currentTimeMillis() - candidate.lastUsed >= VALIDATION_INTERVAL_MILLIS
+                           && !candidate.isValid()) {
+                    synchronized (this) {
+                        invalid++;
+                    }
+                    discarded(candidate);
+                    continue;
+                }
+
+                long waitNanos = System.nanoTime() - start;
+                synchronized (this) {
+                    borrows++;
+                    if (waited) {
+                        waits++;
+                        totalWaitNanos += waitNanos;
+                        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+                    }
+                }
+                return candidate.lease();
+            }
+        }
+
+        synchronized String stats() {
+            long hits = statementHits.get();
+            long misses = statementMisses.get();
+            return String.format("Connection pool: %d open, %d idle, %d borrows, %d waited (avg %.2f ms, max %.2f ms), " +
+                                 "%d timed out, %d opened, %d evicted idle, %d failed validation, %d round trips%n" +
+                                 "Statement cache: %d hits, %d misses (%.1f%% hit rate), %d evicted",
+                                 open, idle.size(), borrows, waits,
+                                 waits == 0 ? 0.0 : totalWaitNanos / (double) waits / 1_000_000.0,
+                                 maxWaitNanos / 1_000_000.0, timeouts, created, evicted, invalid, roundTrips.get(),
+                                 hits, misses, hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses),
+                                 statementEvictions.get());
+        }
+
+        @Override
+        public void close() {
+            List<PooledConnection> toClose; // idle connections to close
+            synchronized (this) {
+                closed = true;
+                toClose = new ArrayList<>(idle);
+                open -= idle.size();
+                idle.clear();
+                notifyAll();
+            }
+            evictor.shutdownNow();
+            for (PooledConnection connection : toClose) {
+                connection.closePhysical();
+            }
+        }
+
+        private void release(PooledConnection connection) {
+            // put the connection back in its default state for the next borrower
+            boolean usable = connection.reset();
+            synchronized (this) {
+                if (usable && !closed) {
+                    connection.lastUsed = System.currentTimeMillis();
+                    idle.addFirst(connection);
+                    notifyAll();
+                    return;
+                }
+            }
+            discarded(connection);
+        }
+
+        private void discarded(PooledConnection connection) {
+            synchronized (this) {
+                open--;
+                notifyAll();
+            }
+            if (connection != null) {
+                connection.closePhysical();
+            }
+        }
+
+        private void evictIdle() {
+            List<PooledConnection> toClose = new ArrayList<>(); // connections idle for too long
+            long cutoff = System.currentTimeMillis() - idleMillis; // last use before which a connection is evicted
+            synchronized (this) {
+                // the oldest idle connections are at the end of the deque
+                while (open > minSize && !idle.isEmpty() && idle.peekLast().lastUsed < cutoff) {
+                    toClose.add(idle.pollLast());
+                    open--;
+                    evicted++;
+                }
+            }
+            for (PooledConnection connection : toClose) {
+                connection.closePhysical();
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Class PooledConnection
+        |
+        |  Purpose:  A physical connection owned by the pool. Each borrow gets
+        |            a new proxy over it, and closing the proxy returns the
+        |            connection to the pool. A proxy that has been closed
+        |            rejects further use, so a stale reference cannot touch a
+        |            connection that another borrower now holds.
+        |
+        |            prepareStatement(sql) on the proxy is served from the
+        |            connection's statement cache. The statement handed out is
+        |            itself a proxy: closing it clears its parameters and makes
+        |            it available again rather than closing it. If the cached
+        |            statement for the SQL is already checked out, a separate
+        |            statement is prepared and really closed afterwards. Any
+        |            statements still checked out when the connection is
+        |            returned are released then, so they cannot leak.
+        *-------------------------------------------------------------------*/
+        private final class PooledConnection {
+            private final Connection physical; /* the real database connection */
+            private final LinkedHashMap<String, CachedStatement> statements =
+                    new LinkedHashMap<>(16, 0.75f, true); /* cached statements, least recently used first */
+            private long lastUsed = System.currentTimeMillis(); /* when the connection was last returned */
+
+            PooledConnection(Connection physical) {
+                this.physical = physical;
+            }
+
+            Connection lease() {
+                Lease lease = new Lease(); // statements and state of this borrow
+                Connection[] proxyHolder = new Connection[1]; // the proxy, for Statement.getConnection
+                proxyHolder[0] = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                                                     new Class<?>[] {Connection.class},
+                                                                     (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!lease.returned) {
+                                lease.returned = true;
+                                lease.releaseStatements();
+                                release(this);
+                            }
+                            return null;
+
+                        case "isClosed":
+                            return lease.returned || physical.isClosed();
+
+                        default:
+                            if (lease.returned) {
+                                throw new SQLException("Connection has already been returned to the pool.");
+                            }
+                            // plain prepareStatement(sql) goes through the statement cache
+                            if (method.getName().equals("prepareStatement") && args.length == 1 && statementCacheSize > 0) {
+                                return prepare((String) args[0], lease, proxyHolder[0]);
+                            }
+                            if (method.getName().equals("commit") || method.getName().equals("rollback")) {
+                                countRoundTrip();
+                            }
+                            Object result = invoke(physical, method, args);
+                            // statements made outside the cache count their executes too
+                            if (result instanceof Statement) {
+                                return counted((Statement) result, method.getReturnType(), proxyHolder[0]);
+                            }
+                            return result;
+                    }
+                });
+                return proxyHolder[0];
+            }
+
+            private PreparedStatement prepare(String sql, Lease lease, Connection proxy) throws SQLException {
+                CachedStatement entry = statements.get(sql); // cached statement for the SQL, if any
+
+                // the cached statement is busy, use a separate one for this call
+                if (entry != null && entry.inUse) {
+                    statementMisses.incrementAndGet();
+                    PreparedStatement extra = physical.prepareStatement(sql);
+                    lease.uncached.add(extra);
+                    return wrap(extra, null, lease, proxy);
+                }
+
+                if (entry != null) {
+                    statementHits.incrementAndGet();
+                } else {
+                    statementMisses.incrementAndGet();
+                    entry = new CachedStatement(physical.prepareStatement(sql));
+                    statements.put(sql, entry);
+                    // close the least recently used statement once the cache is over size
+                    if (statements.size() > statementCacheSize) {
+                        Iterator<CachedStatement> eldest = statements.values().iterator();
+                        CachedStatement evictedEntry = eldest.next();
+                        eldest.remove();
+                        evictedEntry.evict();
+                        statementEvictions.incrementAndGet();
+                    }
+                }
+
+                entry.inUse = true;
+                lease.checkedOut.add(entry);
+                return wrap(entry.statement, entry, lease, proxy);
+            }
+
+            private PreparedStatement wrap(PreparedStatement statement, CachedStatement entry, Lease lease, Connection proxy) {
+                boolean[] closed = {false}; // whether this handle has been closed
+                return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                                                  new Class<?>[] {PreparedStatement.class},
+                                                                  (statementProxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!closed[0] && !lease.returned) {
+                                closed[0] = true;
+                                // cached statements go back to the cache, separate ones are closed
+                                if (entry != null) {
+                                    entry.release();
+                                } else {
+                                    lease.uncached.removeIf(other -> other == statement);
+                                    statement.close();
+                                }
+                            }
+                            closed[0] = true;
+                            return null;
+
+                        case "isClosed":
+                            return closed[0] || lease.returned;
+
+                        case "getConnection":
+                            return proxy;
+
+                        default:
+                            if (closed[0] || lease.returned) {
+                                throw new SQLException("Statement has already been closed.");
+                            }
+                            if (method.getName().startsWith("execute")) {
+                                countRoundTrip();
+                            }
+                            return invoke(statement, method, args);
+                    }
+                });
+            }
+
+            // a statement the cache does not manage, counting its executes
+            private Statement counted(Statement statement, Class<?> type, Connection proxy) {
+                return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] {type},
+                                                          (statementProxy, method, args) -> {
+                    if (method.getName().equals("getConnection")) {
+                        return proxy;
+                    }
+                    if (method.getName().startsWith("execute")) {
+                        countRoundTrip();
+                    }
+                    return invoke(statement, method, args);
+                });
+            }
+
+            boolean isValid() {
+                try {
+                    return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+                } catch (SQLException e) {
+                    return false;
+                }
+            }
+
+            boolean reset() {
+                try {
+                    // roll back anything the borrower left uncommitted
+                    if (!physical.getAutoCommit()) {
+                        physical.rollback();
+                        physical.setAutoCommit(true);
+                    }
+                    return !physical.isClosed();
+                } catch (SQLException e) {
+                    return false;
+                }
+            }
+
+            void closePhysical() {
+                // closing the connection also closes its cached statements
+                for (CachedStatement entry : statements.values()) {
+                    entry.evict();
+                }
+                statements.clear();
+                try {
+                    physical.close();
+                } catch (SQLException e) {
+                    System.err.println("Could not close pooled connection.");
+                }
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Class Lease
+        |
+        |  Purpose:  State of a single borrow of a pooled connection: whether
+        |            it has been returned, and the statements it has checked
+        |            out so they can be released when it is.
+        *-------------------------------------------------------------------*/
+        private static final class Lease {
+            private boolean returned = false; /* whether the borrower has closed the connection */
+            private final List<CachedStatement> checkedOut = new ArrayList<>(); /* cached statements handed out */
+            private final List<PreparedStatement> uncached = new ArrayList<>(); /* separate statements still open */
+
+            void releaseStatements() {
+                for (CachedStatement entry : checkedOut) {
+                    entry.release();
+                }
+                checkedOut.clear();
+                for (PreparedStatement statement : uncached) {
+                    try {
+                        statement.close();
+                    } catch (SQLException e) {
+                        System.err.println("Could not close statement.");
+                    }
+                }
+                uncached.clear();
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Class CachedStatement
+        |
+        |  Purpose:  A prepared statement in a connection's statement cache,
+        |            with whether it is checked out and whether it has been
+        |            evicted while checked out (so it is closed on release).
+        *-------------------------------------------------------------------*/
+        private static final class CachedStatement {
+            private final PreparedStatement statement; /* the real prepared statement */
+            private boolean inUse = false; /* whether a borrower holds it */
+            private boolean evicted = false; /* whether it has left the cache */
+
+            CachedStatement(PreparedStatement statement) {
+                this.statement = statement;
+            }
+
+            void release() {
+                if (!inUse) {
+                    return;
+                }
+                inUse = false;
+                // evicted statements are closed, cached ones are cleared for the next use
+                if (evicted) {
+                    closeQuietly();
+                    return;
+                }
+                try {
+                    statement.clearParameters();
+                    statement.clearBatch();
+                } catch (SQLException e) {
+                    evicted = true;
+                    closeQuietly();
+                }
+            }
+
+            void evict() {
+                evicted = true;
+                if (!inUse) {
+                    closeQuietly();
+                }
+            }
+
+            private void closeQuietly() {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    System.err.println("Could not close cached statement.");
+                }
+            }
+        }
+
+        private void countRoundTrip() {
+            roundTrips.incrementAndGet();
+            Metrics.roundTrip();
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class Metrics
+    |
+    |  Purpose:  Counters and latency histograms of the program's operations
+    |            (the queries, member changes, imports, redemptions, ...), to
+    |            see where the time goes while it runs. Each Operation counts
+    |            its calls, failures and database round trips, and keeps a
+    |            Histogram of its latencies for the p50, p99 and p99.9.
+    |
+    |            Round trips are counted by the connection pool's proxies
+    |            (every statement execute, commit and rollback) against the
+    |            calling thread; an operation is charged what its thread
+    |            counted while it ran. Result set rows fetched after the
+    |            first batch are not counted.
+    |
+    |            Recording allocates nothing: the counters are atomic longs
+    |            and a histogram is a fixed array of atomic buckets. The
+    |            numbers are published as the JMX MBean Prog4:type=Metrics
+    |            (attributes <operation>.<counter>, operations dump and
+    |            reset) and, with -Dprog4.metrics.dumpSeconds, printed to
+    |            standard error periodically.
+    |
+    |  Methods:  - time(name, work): Runs work as the named operation.
+    |            - record(name, nanos, roundTrips, failed): Records one call
+    |              of the named operation.
+    |            - roundTrip() / roundTrips(): Counts a round trip of the
+    |              calling thread / its count so far.
+    |            - snapshot(), dump(): Every operation called, as maps or as
+    |              a text table.
+    |            - register(dumpSeconds): Registers the MBean and starts the
+    |              periodic dump.
+    *-------------------------------------------------------------------*/
+    private static final class Metrics implements DynamicMBean {
+        private static final ThreadLocal<long[]> THREAD_ROUND_TRIPS = ThreadLocal.withInitial(() -> new long[1]); /* round trips of each thread */
+        private static final String[] COUNTERS = {"calls", "errors", "roundTrips", "meanMillis", "p50Millis", "p99Millis",
+                                                  "p999Millis", "maxMillis"}; /* attributes of each operation */
+
+        private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>(); /* every operation recorded */
+
+        /*---------------------------------------------------------------------
+        |  Class Operation
+        |
+        |  Purpose:  The counters and latency histogram of one operation.
+        *-------------------------------------------------------------------*/
+        static final class Operation {
+            final AtomicLong calls = new AtomicLong();
+            final AtomicLong errors = new AtomicLong();
+            final AtomicLong roundTrips = new AtomicLong();
+            final Histogram latencies = new Histogram(); /* nanoseconds per call */
+
+            void reset() {
+                calls.set(0);
+                errors.set(0);
+                roundTrips.set(0);
+                latencies.reset();
+            }
+
+            Object counter(String counter) {
+                switch (counter) {
+                    case "calls":
+                        return calls.get();
+                    case "errors":
+                        return errors.get();
+                    case "roundTrips":
+                        return roundTrips.get();
+                    case "meanMillis":
+                        return latencies.mean() / 1e6;
+                    case "p50Millis":
+                        return latencies.percentile(0.5) / 1e6;
+                    case "p99Millis":
+                        return latencies.percentile(0.99) / 1e6;
+                    case "p999Millis":
+                        return latencies.percentile(0.999) / 1e6;
+                    case "maxMillis":
+                        return latencies.max() / 1e6;
+                    default:
+                        return null;
+                }
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Class Histogram
+        |
+        |  Purpose:  HDR-style log-linear histogram of non-negative longs.
+        |            Values below 32 get a bucket each; above that, every
+        |            power of two is split into 32 buckets, so a value is
+        |            reported within about 3% over the whole long range with
+        |            1888 buckets. A percentile is the highest value of the
+        |            bucket holding that rank, capped at the largest value
+        |            recorded.
+        *-------------------------------------------------------------------*/
+        static final class Histogram {
+            private static final int SUB_BITS = 5;
+            private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+            private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) * SUB_BUCKETS);
+            private final AtomicLong count = new AtomicLong();
+            private final AtomicLong sum = new AtomicLong();
+            private final AtomicLong max = new AtomicLong();
+
+            void record(long value) {
+                value = Math.max(value, 0);
+                counts.incrementAndGet(index(value));
+                count.incrementAndGet();
+                sum.addAndGet(value);
+                max.accumulateAndGet(value, Math::max);
+            }
+
+            long percentile(double fraction) {
+                long total = count.get();
+                if (total == 0) {
+                    return 0;
+                }
+                long rank = Math.max(1, (long) Math.ceil(fraction * total)); // values at or below the percentile
+                long seen = 0;
+                for (int i = 0; i < counts.length(); i++) {
+                    seen += counts.get(i);
+                    if (seen >= rank) {
+                        return Math.min(highestValue(i), max.get());
+                    }
+                }
+                return max.get();
+            }
+
+            double mean() {
+                long total = count.get();
+                return total == 0 ? 0.0 : sum.get() / (double) total;
+            }
+
+            long max() {
+                return max.get();
+            }
+
+            void reset() {
+                for (int i = 0; i < counts.length(); i++) {
+                    counts.set(i, 0);
+                }
+                count.set(0);
+                sum.set(0);
+                max.set(0);
+            }
+
+            static int index(long value) {
+                if (value < SUB_BUCKETS) {
+                    return (int) value;
+                }
+                int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS; // low bits dropped by the bucket
+                return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+            }
+
+            static long highestValue(int index) {
+                if (index < SUB_BUCKETS) {
+                    return index;
+                }
+                int shift = index / SUB_BUCKETS - 1;
+                long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+                return lowest + (1L << shift) - 1;
+            }
+        }
+
+        static void roundTrip() {
+            THREAD_ROUND_TRIPS.get()[0]++;
+        }
+
+        static long roundTrips() {
+            return THREAD_ROUND_TRIPS.get()[0];
+        }
+
+        Operation operation(String name) {
+            Operation operation = operations.get(name);
+            return operation != null ? operation : operations.computeIfAbsent(name, key -> new Operation());
+        }
+
+        void record(String name, long nanos, long roundTrips, boolean failed) {
+            Operation operation = operation(name);
+            operation.calls.incrementAndGet();
+            if (failed) {
+                operation.errors.incrementAndGet();
+            }
+            operation.roundTrips.addAndGet(roundTrips);
+            operation.latencies.record(nanos);
+        }
+
+        // runs work as one call of the named operation; a thrown exception counts as an error
+        <T> T time(String name, TransactionWork<T> work) throws SQLException {
+            long start = System.nanoTime();
+            long startTrips = roundTrips();
+            boolean failed = true;
+            try {
+                T result = work.run();
+                failed = false;
+                return result;
+            } finally {
+                record(name, System.nanoTime() - start, roundTrips() - startTrips, failed);
+            }
+        }
+
+        Map<String, Map<String, Object>> snapshot() {
+            Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+            for (Map.Entry<String, Operation> operation : operations.entrySet()) {
+                Map<String, Object> counters = new LinkedHashMap<>();
+                for (String counter : COUNTERS) {
+                    counters.put(counter, operation.getValue().counter(counter));
+                }
+                snapshot.put(operation.getKey(), counters);
+            }
+            return snapshot;
+        }
+
+        String dump() {
+            StringBuilder text = new StringBuilder(String.format("Metrics (milliseconds):%n%-24s %9s %7s %11s %9s %9s %9s %9s %9s",
+                    "operation", "calls", "errors", "trips/call", "mean", "p50", "p99", "p99.9", "max"));
+            for (Map.Entry<String, Operation> entry : new TreeMap<>(operations).entrySet()) {
+                Operation operation = entry.getValue();
+                long calls = operation.calls.get();
+                text.append(String.format("%n%-24s %9d %7d %11.1f %9.3f %9.3f %9.3f %9.3f %9.3f", entry.getKey(), calls,
+                                          operation.errors.get(), calls == 0 ? 0.0 : operation.roundTrips.get() / (double) calls,
+                                          operation.counter("meanMillis"), operation.counter("p50Millis"),
+                                          operation.counter("p99Millis"), operation.counter("p999Millis"),
+                                          operation.counter("maxMillis")));
+            }
+            return text.toString();
+        }
+
+        boolean isEmpty() {
+            return operations.isEmpty();
+        }
+
+        void reset() {
+            for (Operation operation : operations.values()) {
+                operation.reset();
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method register(dumpSeconds)
+        |
+        |  Purpose:  Registers the metrics with the platform MBean server as
+        |            Prog4:type=Metrics and, if dumpSeconds is positive,
+        |            prints dump() to standard error that often on a daemon
+        |            thread. A failed registration is reported and ignored.
+        |
+        |  Parameters:
+        |      dumpSeconds -- Seconds between dumps, 0 for none.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        void register(int dumpSeconds) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("Prog4:type=Metrics"));
+            } catch (JMException e) {
+                System.err.println("Could not register the metrics MBean: " + e.getMessage());
+            }
+
+            if (dumpSeconds > 0) {
+                ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "metrics-dump");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                dumper.scheduleAtFixedRate(() -> System.err.println(dump()), dumpSeconds, dumpSeconds, TimeUnit.SECONDS);
+            }
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            int dot = attribute.lastIndexOf('.');
+            Operation operation = dot < 0 ? null : operations.get(attribute.substring(0, dot));
+            Object value = operation == null ? null : operation.counter(attribute.substring(dot + 1));
+            if (value == null) {
+                throw new AttributeNotFoundException("No metric " + attribute + ".");
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metric " + attribute.getName() + " is read only.");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList values = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    values.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // left out, as the interface asks
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            switch (actionName) {
+                case "dump":
+                    return dump();
+                case "reset":
+                    reset();
+                    return null;
+                default:
+                    throw new ReflectionException(new NoSuchMethodException(actionName), "No operation " + actionName + ".");
+            }
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : new TreeSet<>(operations.keySet())) {
+                for (String counter : COUNTERS) {
+                    attributes.add(new MBeanAttributeInfo(name + "." + counter,
+                                                          counter.endsWith("Millis") ? "double" : "long",
+                                                          counter + " of " + name, true, false, false));
+                }
+            }
+            MBeanOperationInfo[] actions = {
+                new MBeanOperationInfo("dump", "Every operation as a text table", new MBeanParameterInfo[0],
+                                       "java.lang.String", MBeanOperationInfo.INFO),
+                new MBeanOperationInfo("reset", "Zeroes every counter and histogram", new MBeanParameterInfo[0],
+                                       "void", MBeanOperationInfo.ACTION)
+            };
+            return new MBeanInfo(Metrics.class.getName(), "Per operation counters and latency percentiles of Prog4",
+                                 attributes.toArray(new MBeanAttributeInfo[0]), null, actions, null);
+        }
     }
 
     /*---------------------------------------------------------------------
@@ -260,9 +1314,11 @@ public class Prog4 {
         // SQL statements to create table for transaction
         String createTransactionTable = "CREATE TABLE Transaction (" +
         "TransactionID INT PRIMARY KEY, " +
+        "MemberID INT, " +
         "Type VARCHAR(50), " +
         "Amount DECIMAL(10, 2), " +
-        "\"Date\" DATE" +
+        "\"Date\" DATE, " +
+        "FOREIGN KEY (MemberID) REFERENCES Member(MemberID)" +
         ")";
 
         //list of the names of tables to be used later for creation processing
@@ -310,10 +1366,16 @@ public class Prog4 {
         // try catch for checking to see if given table name exists
         try {
             DatabaseMetaData metadata = dbConn.getMetaData(); /* grabbing data from JDBC database connection */
-            ResultSet tables = metadata.getTables(null, null, tableName, null); /* grabbing given table name */
-
-            // true if not found, false otherwise
-            return tables.next();
+            // Oracle stores unquoted names in upper case, other databases may use lower case
+            for (String name : new String[] {tableName, tableName.toUpperCase(), tableName.toLowerCase()}) {
+                try (ResultSet tables = metadata.getTables(null, null, name, null)) { /* grabbing given table name */
+                    // true if found
+                    if (tables.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
 
         // catch SQLException
         } catch (SQLException e) {
@@ -323,79 +1385,306 @@ public class Prog4 {
     }
 
     /*---------------------------------------------------------------------
-    |  Method importMemberData(connection, file)
+    |  Method addMissingColumns(connection)
     |
-    |  Purpose:  Imports member data from a CSV file into the Member table
-    |            in the database.
+    |  Purpose:  Adds the columns that tables created by an older version
+    |            lack. Runs on every start, before createIndexes:
+    |              - Transaction.MemberID, the member of each purchase that
+    |                query b totals. The transactions recorded before it was
+    |                added keep a NULL MemberID and are not counted.
+    |            If a column cannot be added the program exits, since the
+    |            queries and imports that use it would fail on every call.
     |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
+    |  Pre-condition:  The tables exist.
     |
-    |  Post-condition: Member data is inserted into the Member table if it
-    |                  does not already exist.
+    |  Post-condition: Every column exists.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
-    |      file -- Name of the CSV file containing member data.
-    |
-    |  Throws:
-    |      SQLException -- If an SQL exception occurs during database operations.
     |
     |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static void importMemberData(Connection dbConn, String file) {
-        String tableName = "Member"; // initialize string for table name
-
-        try {
-            String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, TO_DATE(?, 'YYYY-MM-DD'), ?)"; // insert statement for member table
-            PreparedStatement statement = dbConn.prepareStatement(insert); // prepare insert statement
-            BufferedReader reader = new BufferedReader(new FileReader(file)); // initialize reader for csv file
-            String line = null; // initialize line variable
-            // iterate through member.csv file
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(","); // split data
-                // if the memberID doesn't yet exist within the table
-                if (!rowExists(dbConn, tableName, data[0])) {
-                    // set all attributes of the member table
-                    statement.setInt(1, Integer.valueOf(data[0]));
-                    statement.setString(2, data[1]);
-                    statement.setString(3, data[2]);
-                    statement.setString(4, data[3]);
-                    statement.setString(5, data[4]);
-                    statement.setInt(6, Integer.valueOf(data[5]));
-                    statement.setDouble(7, Double.valueOf(data[6]));
-                    statement.setString(8, data[7]);
-                    statement.setInt(9, Integer.valueOf(data[8]));
-                    statement.setDate(10, java.sql.Date.valueOf(data[9]));
-                    statement.setInt(11, Integer.valueOf(data[10]));
-
-                    // execute update
-                    statement.executeUpdate();
-                // memberID already exists in table
-                } else {
-                    System.out.println("Skipping duplicate row");
+    private static void addMissingColumns(Connection dbConn) {
+        // table, column and column definition of every added column
+        String[][] columns = {
+            {"Transaction", "MemberID", "MemberID INT REFERENCES Member(MemberID)"}
+        };
+
+        for (String[] column : columns) {
+            try {
+                if (columnExists(dbConn, column[0], column[1])) {
+                    continue;
+                }
+                try (Statement statement = dbConn.createStatement()) {
+                    statement.execute("ALTER TABLE " + column[0] + " ADD " + column[2]);
                 }
+                System.out.println("Column " + column[1] + " added to " + column[0] + ".");
+            } catch (SQLException e) {
+                System.err.println("Table " + column[0] + " has no " + column[1] + " column and it could not be added;"
+                        + " drop and re-create the table.");
+                e.printStackTrace();
+                System.exit(-1);
             }
-
-            System.out.println("Successful import of " + file + " into table " + tableName + ".");
-            reader.close(); // closer reader
-            statement.close(); // close statement
-        } catch (Exception e) {}
+        }
     }
 
     /*---------------------------------------------------------------------
-    |  Method importGameData(connection, file)
-    |
-    |  Purpose:  Imports game data from a CSV file into the Game table
-    |            in the database.
+    |  Method columnExists(connection, tableName, columnName)
     |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
+    |  Purpose:  Checks if a table has a column with the given name. The
+    |            names are matched without regard to case, like indexExists.
     |
-    |  Post-condition: Game data is inserted into the Game table if it
-    |                  does not already exist.
+    |  Throws:
+    |      SQLException -- If the database metadata cannot be read.
     |
-    |  Parameters:
+    |  Returns:  boolean -- True if the column exists, false otherwise.
+    *-------------------------------------------------------------------*/
+    private static boolean columnExists(Connection dbConn, String tableName, String columnName) throws SQLException {
+        DatabaseMetaData metadata = dbConn.getMetaData();
+        for (String table : new String[] {tableName, tableName.toUpperCase(), tableName.toLowerCase()}) {
+            try (ResultSet columns = metadata.getColumns(null, null, table, null)) {
+                while (columns.next()) {
+                    if (columnName.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method createIndexes(connection)
+    |
+    |  Purpose:  Creates the indexes the queries rely on if they do not
+    |            exist yet. Runs on every start, so databases created before
+    |            an index was added get it too:
+    |              - GameplayGameScore on Gameplay (GameID, Score) lets the
+    |                per-game ranking of query a and the leaderboard read
+    |                each game's scores in order instead of scanning Gameplay.
+    |              - TransactionDate on Transaction ("Date") lets the token
+    |                spending window load only the last 30 days.
+    |
+    |  Pre-condition:  The tables exist.
+    |
+    |  Post-condition: Every index exists.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void createIndexes(Connection dbConn) {
+        // name, table and columns of every index
+        String[][] indexes = {
+            {"GameplayGameScore", "Gameplay", "GameID, Score"},
+            {"TransactionDate", "Transaction", "\"Date\""}
+        };
+
+        for (String[] index : indexes) {
+            if (indexExists(dbConn, index[1], index[0])) {
+                continue;
+            }
+
+            try (Statement statement = dbConn.createStatement()) {
+                statement.execute("CREATE INDEX " + index[0] + " ON " + index[1] + " (" + index[2] + ")");
+                System.out.println("Index " + index[0] + " created on " + index[1] + ".");
+            } catch (SQLException e) {
+                System.err.println("Could not create index " + index[0] + " on " + index[1] + ".");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method indexExists(connection, tableName, indexName)
+    |
+    |  Purpose:  Checks if a table has an index with the given name. The
+    |            names are matched without regard to case, since Oracle
+    |            stores unquoted names in upper case.
+    |
+    |  Returns:  boolean -- True if the index exists, false otherwise.
+    *-------------------------------------------------------------------*/
+    private static boolean indexExists(Connection dbConn, String tableName, String indexName) {
+        try {
+            DatabaseMetaData metadata = dbConn.getMetaData();
+            for (String table : new String[] {tableName, tableName.toUpperCase(), tableName.toLowerCase()}) {
+                try (ResultSet indexes = metadata.getIndexInfo(null, null, table, false, true)) {
+                    while (indexes.next()) {
+                        if (indexName.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            System.err.println("Could not check to see if index " + indexName + " exists.");
+            return false;
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method importAllData()
+    |
+    |  Purpose:  Imports every CSV file into its table. The tables are
+    |            scheduled by their foreign keys: tables with no parents
+    |            (Member, Game, Prize, MembershipTier) start at once, and
+    |            Gameplay, FoodCoupon and Transaction start as soon as the
+    |            tables they reference have finished. Each table is imported on its
+    |            own connection on a pool of IMPORT_THREADS threads, so the
+    |            whole load takes about as long as the largest table. If a
+    |            table fails (importCsv reports why), the tables referencing
+    |            it are skipped rather than imported with dangling keys.
+    |
+    |  Pre-condition:  The connection pool is created and the tables exist.
+    |
+    |  Post-condition: All tables are imported, or the ones that failed and
+    |                  their dependents are listed. The total elapsed time is
+    |                  printed.
+    |
+    |  Parameters:     None.
+    |
+    |  Returns:  boolean -- Whether every table was imported.
+    *-------------------------------------------------------------------*/
+    private static boolean importAllData() {
+        long startTime = System.nanoTime(); // start time of the whole import
+
+        // tables in an order where every table comes after the tables it references
+        String[] tableNames = {"Member", "Game", "Prize", "MembershipTier", "Transaction", "Gameplay", "FoodCoupon"};
+        Map<String, BiConsumer<Connection, String>> importers = new HashMap<>(); // import method of each table
+        importers.put("Member", Prog4::importMemberData);
+        importers.put("Game", Prog4::importGameData);
+        importers.put("Prize", Prog4::importPrizeData);
+        importers.put("MembershipTier", Prog4::importMembershipTierData);
+        importers.put("Transaction", Prog4::importTransactionData);
+        importers.put("Gameplay", Prog4::importGameplayData);
+        importers.put("FoodCoupon", Prog4::importFoodCouponData);
+
+        // tables referenced by the foreign keys of each table in createTables
+        Map<String, String[]> parents = new HashMap<>();
+        parents.put("Gameplay", new String[] {"Member", "Game"});
+        parents.put("FoodCoupon", new String[] {"Member"});
+        parents.put("Transaction", new String[] {"Member"});
+
+        ExecutorService executor = Executors.newFixedThreadPool(IMPORT_THREADS); // threads running the imports
+        Map<String, CompletableFuture<Void>> finished = new HashMap<>(); // completes when a table is imported
+        Set<String> started = ConcurrentHashMap.newKeySet(); // tables whose parents all imported
+
+        try {
+            // schedule each table to start once all of its parents have finished
+            for (String tableName : tableNames) {
+                String[] tableParents = parents.getOrDefault(tableName, new String[0]);
+                CompletableFuture<?>[] parentImports = new CompletableFuture<?>[tableParents.length];
+                for (int i = 0; i < tableParents.length; i++) {
+                    parentImports[i] = finished.get(tableParents[i]);
+                }
+
+                // a failed parent fails this future too, without running it
+                BiConsumer<Connection, String> importer = importers.get(tableName);
+                finished.put(tableName, CompletableFuture.allOf(parentImports).thenRunAsync(() -> {
+                    started.add(tableName);
+                    // each table is imported on its own connection
+                    try (Connection importConn = connectionPool.borrow()) {
+                        importer.accept(importConn, tableName + ".csv");
+                    } catch (SQLException e) {
+                        System.err.println("Could not borrow a connection to import table " + tableName + ".");
+                        e.printStackTrace();
+                        throw new IllegalStateException("Could not borrow a connection to import table " + tableName + ".", e);
+                    }
+                }, executor));
+            }
+
+            // wait for every table, failed or not; the failures were reported where they happened
+            CompletableFuture.allOf(finished.values().toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        List<String> skipped = new ArrayList<>(); // tables not imported because a parent failed
+        int imported = 0; // tables imported in full
+        for (String tableName : tableNames) {
+            if (!finished.get(tableName).isCompletedExceptionally()) {
+                imported++;
+            } else if (!started.contains(tableName)) {
+                skipped.add(tableName);
+            }
+        }
+        if (!skipped.isEmpty()) {
+            System.err.println("Skipped importing " + String.join(", ", skipped) + " because a table they reference failed.");
+        }
+
+        leaderboard.invalidate(); // reload high scores from the imported rows
+        PrizeCatalog.invalidate(); // reload prizes from the imported rows
+        tokenSpending.invalidate(); // reload token spending from the imported rows
+        members.invalidate(); // forget members the import replaced
+        gameplayColumns.invalidate(); // reload the gameplay columns from the imported rows
+        // recompute the query d totals from the imported gameplay
+        try (Connection dbConn = connectionPool.borrow()) {
+            rebuildTicketTotals(dbConn);
+        } catch (SQLException e) {
+            System.err.println("Could not rebuild the GameTickets totals after the import.");
+            e.printStackTrace();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0; // elapsed time of the import
+        System.out.println(String.format("Imported %d tables in %.2f seconds.", imported, seconds));
+        return imported == tableNames.length;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method importMemberData(connection, file)
+    |
+    |  Purpose:  Imports member data from a CSV file into the Member table
+    |            in the database.
+    |
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
+    |
+    |  Post-condition: Member data is inserted into the Member table if it
+    |                  does not already exist.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      file -- Name of the CSV file containing member data.
+    |
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void importMemberData(Connection dbConn, String file) {
+        String tableName = "Member"; // initialize string for table name
+        String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"; // insert statement for member table
+
+        importCsv(dbConn, file, tableName, insert, (statement, row) -> {
+            // set the remaining attributes of the member table
+            statement.setString(2, row.readString());
+            statement.setString(3, row.readString());
+            statement.setString(4, row.readString());
+            statement.setString(5, row.readString());
+            statement.setInt(6, row.readInt());
+            statement.setDouble(7, row.readDecimal());
+            statement.setString(8, row.readString()); // NULL in the csv becomes a SQL NULL
+            statement.setInt(9, row.readInt());
+            statement.setDate(10, row.readDate());
+            statement.setInt(11, row.readInt());
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method importGameData(connection, file)
+    |
+    |  Purpose:  Imports game data from a CSV file into the Game table
+    |            in the database.
+    |
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
+    |
+    |  Post-condition: Game data is inserted into the Game table if it
+    |                  does not already exist.
+    |
+    |  Parameters:
     |      dbConn -- Connection object representing the database connection.
     |      file -- Name of the CSV file containing game data.
     |
@@ -406,34 +1695,14 @@ public class Prog4 {
     *-------------------------------------------------------------------*/
     private static void importGameData(Connection dbConn, String file) {
         String tableName = "Game"; // initialize string for table name
-        try {
-            String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?)"; // insert statement for game table
-            PreparedStatement statement = dbConn.prepareStatement(insert); // prepare insert statement 
-            BufferedReader reader = new BufferedReader(new FileReader(file)); // initialize reader for csv file
-            String line = null; // initialize line variable
-            // iterate through each line of csv file
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(","); // split data
-                // if gameID doesn't yet exist in the table
-                if (!rowExists(dbConn, tableName, data[0])) {
-                    // set all attributes of game
-                    statement.setInt(1, Integer.valueOf(data[0]));
-                    statement.setString(2, data[1]);
-                    statement.setInt(3, Integer.valueOf(data[2]));
-                    statement.setInt(4, Integer.valueOf(data[3]));
-
-                    // execute update
-                    statement.executeUpdate();
-                // gameID already exists in table
-                } else {
-                    System.out.println("Skipping duplicate row");
-                }
-            }
-
-            System.out.println("Successful import of " + file + " into table " + tableName + ".");
-            reader.close(); // close reader
-            statement.close(); // closer statement
-        } catch (Exception e) {}
+        String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?)"; // insert statement for game table
+
+        importCsv(dbConn, file, tableName, insert, (statement, row) -> {
+            // set the remaining attributes of game
+            statement.setString(2, row.readString());
+            statement.setInt(3, row.readInt());
+            statement.setInt(4, row.readInt());
+        });
     }
 
     /*---------------------------------------------------------------------
@@ -459,37 +1728,16 @@ public class Prog4 {
     *-------------------------------------------------------------------*/
     private static void importGameplayData(Connection dbConn, String file) {
         String tableName = "Gameplay"; // initialize string for table name
-        
-        try {
-            String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?, TO_DATE(?, 'YYYY-MM-DD'))"; // insert statement for gameplay table
-            PreparedStatement statement = dbConn.prepareStatement(insert); // prepare insert statement
-            BufferedReader reader = new BufferedReader(new FileReader(file)); // intialize reader for csv file
-            String line = null; // initialize line variable
-            // iterate through every line in csv file
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(","); // split data
-                // if gameplayID doesn't exist within the table
-                if (!rowExists(dbConn, tableName, data[0])) {
-                    // set all attributes for gameplay
-                    statement.setInt(1, Integer.valueOf(data[0]));
-                    statement.setInt(2, Integer.valueOf(data[1]));
-                    statement.setInt(3, Integer.valueOf(data[2]));
-                    statement.setInt(4, Integer.valueOf(data[3]));
-                    statement.setInt(5, Integer.valueOf(data[4]));
-                    statement.setString(6, data[5]);
-
-                    // execute update
-                    statement.executeUpdate();
-                // gameplayID already exists within the table
-                } else {
-                    System.out.println("Skipping duplicate row");
-                }
-            }
-
-            System.out.println("Successful import of " + file + " into table " + tableName + ".");
-            reader.close(); // close reader
-            statement.close(); // close statement
-        } catch (Exception e) {}
+        String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?, ?)"; // insert statement for gameplay table
+
+        importCsv(dbConn, file, tableName, insert, (statement, row) -> {
+            // set the remaining attributes for gameplay
+            statement.setInt(2, row.readInt());
+            statement.setInt(3, row.readInt());
+            statement.setInt(4, row.readInt());
+            statement.setInt(5, row.readInt());
+            statement.setDate(6, row.readDate());
+        });
     }
 
     /*---------------------------------------------------------------------
@@ -514,35 +1762,14 @@ public class Prog4 {
     |  Returns:  None.
     *-------------------------------------------------------------------*/
     private static void importPrizeData(Connection dbConn, String file) {
-        String tableName = "Prize"; // initialize string for prize table
-
-        try {
-            String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?)"; // insert statement
-            PreparedStatement statement = dbConn.prepareStatement(insert); // prepare insert statement
-            BufferedReader reader = new BufferedReader(new FileReader(file)); // initialize reader for csv file
-            String line = null; // initialize line variable
-            // iterate through each line of csv file
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(","); // split data
-                // if prizeID doesn't exist within the table
-                if (!rowExists(dbConn, tableName, data[0])) {
-                    // set all attributes of prize
-                    statement.setInt(1, Integer.valueOf(data[0]));
-                    statement.setString(2, data[1]);
-                    statement.setInt(3, Integer.valueOf(data[2]));
-
-                    // execute update
-                    statement.executeUpdate();
-                // prizeID already exists within the table
-                } else {
-                    System.out.println("Skipping duplicate row");
-                }
-            }
-
-            System.out.println("Successful import of " + file + " into table " + tableName + ".");
-            reader.close(); // close reader
-            statement.close(); // close statement
-        } catch (Exception e) {}
+        String tableName = "Prize"; // initialize string for table name
+        String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?)"; // insert statement
+
+        importCsv(dbConn, file, tableName, insert, (statement, row) -> {
+            // set the remaining attributes of prize
+            statement.setString(2, row.readString());
+            statement.setInt(3, row.readInt());
+        });
     }
     
     /*---------------------------------------------------------------------
@@ -568,35 +1795,14 @@ public class Prog4 {
     *-------------------------------------------------------------------*/
     private static void importFoodCouponData(Connection dbConn, String file) {
         String tableName = "FoodCoupon"; // initialize string for table name
-
-        try {
-            String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?)"; // insert statement for foodCoupon table
-            PreparedStatement statement = dbConn.prepareStatement(insert); // prepare insert statement
-            BufferedReader reader = new BufferedReader(new FileReader(file)); // initialize reader for csv file
-            String line = null; // initialize line variable
-            // iterate through each line of csv file
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(","); // split data
-                // if foodCouponID doesn't exist within the table
-                if (!rowExists(dbConn, tableName, data[0])) {
-                    // set all attributes for foodCoupon
-                    statement.setInt(1, Integer.valueOf(data[0]));
-                    statement.setInt(2, Integer.valueOf(data[1]));
-                    statement.setString(3, data[2]);
-                    statement.setBoolean(4, Boolean.valueOf(data[3]));
-
-                    // execute update
-                    statement.executeUpdate();
-                // foodCouponID already exists within table
-                } else {
-                    System.out.println("Skipping duplicate row");
-                }
-            }
-
-            System.out.println("Successful import of " + file + " into table " + tableName + ".");
-            reader.close(); // close reader
-            statement.close(); // close statement
-        } catch (Exception e) {}
+        String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?)"; // insert statement for foodCoupon table
+
+        importCsv(dbConn, file, tableName, insert, (statement, row) -> {
+            // set the remaining attributes for foodCoupon
+            statement.setInt(2, row.readInt());
+            statement.setString(3, row.readString());
+            statement.setInt(4, row.readInt()); // Used is stored as 0 or 1
+        });
     }
 
     /*---------------------------------------------------------------------
@@ -622,36 +1828,15 @@ public class Prog4 {
     *-------------------------------------------------------------------*/
     private static void importMembershipTierData(Connection dbConn, String file) {
         String tableName = "MembershipTier"; // initialize string for table name
-
-        try {
-            String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?)"; // insert statement for membershipTier table
-            PreparedStatement statement = dbConn.prepareStatement(insert); // prepare statement for insert statement
-            BufferedReader reader = new BufferedReader(new FileReader(file)); // initialize reader for csv file
-            String line = null; // initialize line variable
-            // iterate through every line in csv file
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(","); // split data
-                // if membershipTierID doesn't exist within table
-                if (!rowExists(dbConn, tableName, data[0])) {
-                    // set all attributes for membershipTier
-                    statement.setInt(1, Integer.valueOf(data[0]));
-                    statement.setString(2, data[1]);
-                    statement.setDouble(3, Double.valueOf(data[2]));
-                    statement.setDouble(4, Double.valueOf(data[3]));
-                    statement.setInt(5, Integer.valueOf(data[4]));
-
-                    // execute update
-                    statement.executeUpdate();
-                // membershiptierID already exists within table
-                } else {
-                    System.out.println("Skipping duplicate row");
-                }
-            }
-
-            System.out.println("Successful import of " + file + " into table " + tableName + ".");
-            reader.close(); // close reader 
-            statement.close(); // closer statement
-        } catch (Exception e) {}
+        String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?)"; // insert statement for membershipTier table
+
+        importCsv(dbConn, file, tableName, insert, (statement, row) -> {
+            // set the remaining attributes for membershipTier
+            statement.setString(2, row.readString());
+            statement.setDouble(3, row.readDecimal());
+            statement.setDouble(4, row.readDecimal());
+            statement.setInt(5, row.readInt());
+        });
     }
 
     /*---------------------------------------------------------------------
@@ -676,1428 +1861,6245 @@ public class Prog4 {
     |  Returns:  None.
     *-------------------------------------------------------------------*/
     private static void importTransactionData(Connection dbConn, String file) {
-        String tableName = "Transaction"; // initializing string for table name
-
-        try {
-            String insert = "INSERT INTO " + tableName + " VALUES (?, ?, ?, TO_DATE(?, 'YYYY-MM-DD'))"; // insert statement for transaction table
-            PreparedStatement statement = dbConn.prepareStatement(insert); // prepare insert statement
-            BufferedReader reader = new BufferedReader(new FileReader(file)); // initialize reader for csv file
-            String line = null; // initialize line variable
-            // iterate through each line of csv file
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(","); // split data
-                // if transactionID doesn't exist within the table
-                if (!rowExists(dbConn, tableName, data[0])) {
-                    // set all attributes for transaction
-                    statement.setInt(1, Integer.valueOf(data[0]));
-                    statement.setString(2, data[1]);
-                    statement.setDouble(3, Double.valueOf(data[2]));
-                    statement.setDate(4, java.sql.Date.valueOf(data[3]));
-
-                    // execute update
-                    statement.executeUpdate();
-                // transactionID already exists within table
-                } else {
-                    System.out.println("Skipping duplicate row");
-                }
-            }
-
-            System.out.println("Successful import of " + file + " into table " + tableName + ".");
-            reader.close(); // close reader
-            statement.close(); // close statement
-        } catch (Exception e) {}
+        String tableName = "Transaction"; // initialize string for table name
+        // columns named, since a table upgraded by addMissingColumns has MemberID last
+        String insert = "INSERT INTO " + tableName + " (TransactionID, MemberID, Type, Amount, \"Date\") VALUES (?, ?, ?, ?, ?)";
+
+        importCsv(dbConn, file, tableName, insert, (statement, row) -> {
+            // set the remaining attributes for transaction
+            statement.setInt(2, row.readInt());
+            statement.setString(3, transactionType(row.readString()));
+            statement.setDouble(4, row.readDecimal());
+            statement.setDate(5, row.readDate());
+        });
     }
 
     /*---------------------------------------------------------------------
-    |  Method rowExists(connection, tableName, id)
+    |  Interface RowBinder
     |
-    |  Purpose:  Checks whether a row with the given ID exists in the specified
-    |            table of the database.
+    |  Purpose:  Sets the parameters of an import INSERT statement from the
+    |            fields of a single CSV row. importCsv has already read the
+    |            ID and set it as parameter 1, so the binder reads the rest of
+    |            the fields in order. Each import*Data method supplies one of
+    |            these to importCsv.
+    *-------------------------------------------------------------------*/
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement statement, CsvReader row) throws SQLException, IOException;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method importCsv(connection, file, tableName, insert, binder)
+    |
+    |  Purpose:  Shared import engine used by every import*Data method. Rows
+    |            of the CSV file are parsed with a CsvReader, which reads the
+    |            fields straight into ints, decimals and dates without
+    |            splitting each line into Strings. They are bound onto the
+    |            given INSERT statement and
+    |            queued with addBatch. Every IMPORT_BATCH_SIZE rows the batch
+    |            is sent with executeBatch and committed, so a large file
+    |            costs one round trip per chunk instead of one per row. The
+    |            IDs already in the table are read once up front with
+    |            loadKeys, so duplicates are found without a query per row.
+    |            The number of rows imported and the rows/sec rate are
+    |            printed once the file is done.
     |
     |  Pre-condition:  The JDBC database connection is valid and points to
     |                  the target database.
     |
-    |  Post-condition: Returns true if the row exists; otherwise, false.
+    |  Post-condition: Rows whose ID does not already exist are inserted into
+    |                  the table. On failure the current chunk is rolled back.
+    |                  The auto-commit mode of the connection is restored.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
-    |      tableName -- Name of the table to search for the row.
-    |      id -- The ID of the row to check for existence.
+    |      file -- Name of the CSV file containing the data.
+    |      tableName -- Name of the table the rows are inserted into.
+    |      insert -- Parameterized INSERT statement for the table.
+    |      binder -- Sets the statement parameters from the fields of a row.
     |
     |  Throws:
-    |      SQLException -- If an SQL exception occurs during database operations.
+    |      IllegalStateException -- If the file cannot be read or a row
+    |                               cannot be inserted. The error is printed
+    |                               here, so callers need not report it again.
     |
-    |  Returns:  boolean -- True if the row exists; otherwise, false.
+    |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static boolean rowExists(Connection dbConn, String tableName, String id) throws SQLException {
-        String query = "SELECT COUNT(*) FROM " + tableName + " WHERE " + tableName + "ID = ?"; /* query to check for given id */
-        // try catch for checking for row in table
-        try (PreparedStatement statement = dbConn.prepareStatement(query)) {
-            // setting facility id to facility attribute index
-            statement.setInt(1, Integer.valueOf(id));
+    private static void importCsv(Connection dbConn, String file, String tableName, String insert, RowBinder binder) {
+        long startTime = System.nanoTime(); // start time of the import
+        long startTrips = Metrics.roundTrips(); // round trips of this thread before the import
+        boolean failed = false; // whether the import stopped on an error
+        int imported = 0; // number of rows inserted
+        int skipped = 0; // number of duplicate rows skipped
+        boolean autoCommit = true; // auto-commit mode to restore when done
 
-            // try catch for checking if the row exists
-            try (ResultSet resultSet = statement.executeQuery()) {
-                resultSet.next();
-                // true if exists, false otherwise
-                return resultSet.getInt(1) > 0;
+        try {
+            autoCommit = dbConn.getAutoCommit();
+            dbConn.setAutoCommit(false); // commit once per chunk instead of once per row
+
+            IntHashSet existingIds = loadKeys(dbConn, tableName); // every ID already in the table, read in one pass
+
+            try (PreparedStatement statement = dbConn.prepareStatement(insert);
+                 CsvReader reader = new CsvReader(file)) {
+                int pending = 0; // rows in the current batch
+                // iterate through each row of csv file
+                while (reader.nextRow()) {
+                    int id = reader.readInt(); // the first field of every file is the ID
+                    // if the ID doesn't exist within the table or earlier in the file
+                    if (existingIds.add(id)) {
+                        statement.setInt(1, id);
+                        binder.bind(statement, reader);
+                        statement.addBatch();
+                        pending++;
+
+                        // chunk is full, send it and commit
+                        if (pending == IMPORT_BATCH_SIZE) {
+                            statement.executeBatch();
+                            dbConn.commit();
+                            imported += pending;
+                            pending = 0;
+                        }
+                    // ID already exists in table
+                    } else {
+                        skipped++;
+                    }
+                }
+
+                // send the last partial chunk
+                if (pending > 0) {
+                    statement.executeBatch();
+                    dbConn.commit();
+                    imported += pending;
+                }
             }
+
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0; // elapsed time of the import
+            System.out.println("Successful import of " + file + " into table " + tableName + ". " +
+                               imported + " row(s) imported, " + skipped + " duplicate row(s) skipped, " +
+                               String.format("%.0f", imported / Math.max(seconds, 1e-9)) + " rows/sec.");
+        } catch (SQLException | IOException | RuntimeException e) {
+            failed = true;
+            System.err.println("Could not import " + file + " into table " + tableName + " after " + imported + " row(s).");
+            e.printStackTrace();
+            try {
+                dbConn.rollback();
+            } catch (SQLException rollbackError) {
+                System.err.println("Could not roll back import of " + file + ".");
+            }
+            throw new IllegalStateException("Could not import " + file + " into table " + tableName + ".", e);
+        } finally {
+            try {
+                dbConn.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                System.err.println("Could not restore auto-commit after importing " + file + ".");
+            }
+            metrics.record("import" + tableName, System.nanoTime() - startTime, Metrics.roundTrips() - startTrips, failed);
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method promptUpdate(connection)
+    |  Method loadKeys(connection, tableName)
     |
-    |  Purpose:  Prompts the user to decide whether to update the database tables.
+    |  Purpose:  Reads every <tableName>ID of the given table with a single
+    |            query into an IntHashSet. Importers use the set to skip rows
+    |            that already exist instead of querying for each row.
     |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
+    |  Pre-condition:  The JDBC database connection is valid and the table
+    |                  exists.
     |
-    |  Post-condition: Allows the user to choose whether to update the tables.
+    |  Post-condition: None.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
+    |      tableName -- Name of the table whose IDs are read.
     |
     |  Throws:
     |      SQLException -- If an SQL exception occurs during database operations.
     |
-    |  Returns:  None.
+    |  Returns:  IntHashSet -- The set of IDs present in the table.
     *-------------------------------------------------------------------*/
-    private static void promptUpdate(Connection dbConn) throws SQLException {
-        Scanner scanner = new Scanner(System.in); // initialize new scanner for user input
-
-        // keep prompting user for input until they enter 'n'
-        while (true) {
-            System.out.println("\nWould you like to update the tables? (y/n)");
-            String answer = scanner.nextLine(); // get user input
-
-            switch (answer.toLowerCase()) {
-                // update tables
-                case "y":
-                    update(dbConn);
-                    break;
-
-                // don't update tables
-                case "n":
-                    return;
+    private static IntHashSet loadKeys(Connection dbConn, String tableName) throws SQLException {
+        IntHashSet keys = new IntHashSet(); // IDs found in the table
+        String query = "SELECT " + tableName + "ID FROM " + tableName; /* query for every id */
 
-                // invalid input
-                default:
-                    System.out.println("\nPlease choose a valid answer (y/n)");
+        try (Statement statement = dbConn.createStatement()) {
+            statement.setFetchSize(IMPORT_BATCH_SIZE); // fetch keys in large chunks
+            try (ResultSet resultSet = statement.executeQuery(query)) {
+                // add every id to the set
+                while (resultSet.next()) {
+                    keys.add(resultSet.getInt(1));
+                }
             }
         }
+
+        return keys;
     }
 
     /*---------------------------------------------------------------------
-    |  Method update(connection)
-    |
-    |  Purpose:  Allows the user to choose which table to update (Member, Game, or Prize)
-    |            and calls the respective update method.
-    |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
-    |
-    |  Post-condition: Updates the chosen table in the database.
-    |
-    |  Parameters:
-    |      dbConn -- Connection object representing the database connection.
+    |  Class IntHashSet
     |
-    |  Throws:
-    |      SQLException -- If an SQL exception occurs during database operations.
+    |  Purpose:  Open-addressing hash set of primitive ints. Used for the key
+    |            sets of the import tables so that millions of IDs can be held
+    |            without boxing every one into an Integer.
     |
-    |  Returns:  None.
+    |  Methods:  - add(int value): Adds the value, returns false if it was
+    |              already present.
+    |            - contains(int value): Checks whether the value is present.
+    |            - size(): Number of values in the set.
     *-------------------------------------------------------------------*/
-    private static void update(Connection dbConn) throws SQLException {
-        Scanner scanner = new Scanner(System.in); // initialize new scanner for user input
-        System.out.println("Which table would you like to update? (Member/Game/Prize)");
-        String answer = scanner.nextLine(); // get user input
+    private static final class IntHashSet {
+        private static final int EMPTY = 0; /* marks a free slot, zero itself is tracked by hasZero */
+
+        private int[] slots = new int[16]; /* hash table, length is always a power of two */
+        private boolean hasZero = false; /* whether zero is in the set */
+        private int size = 0; /* number of values in the set */
+
+        boolean add(int value) {
+            // zero cannot be stored in the table since it marks free slots
+            if (value == EMPTY) {
+                boolean added = !hasZero;
+                hasZero = true;
+                size += added ? 1 : 0;
+                return added;
+            }
 
-        switch (answer.toLowerCase()) {
-            // update member table
-            case "member":
-                updateMember(dbConn);
-                break;
+            // keep the table at most half full
+            if ((size + 1) * 2 > slots.length) {
+                grow();
+            }
 
-            // update game table
-            case "game":
-                updateGame(dbConn);
-                break;
+            int mask = slots.length - 1;
+            int index = mix(value) & mask;
+            // probe until the value or a free slot is found
+            while (slots[index] != EMPTY) {
+                if (slots[index] == value) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
 
-            // update prize table
-            case "prize":
-                updatePrize(dbConn);
-                break;
+            slots[index] = value;
+            size++;
+            return true;
+        }
 
-            // invalid input
-            default:
-                System.out.println("\nPlease choose a valid table (Member/Game/Prize)");
+        boolean contains(int value) {
+            if (value == EMPTY) {
+                return hasZero;
+            }
+
+            int mask = slots.length - 1;
+            int index = mix(value) & mask;
+            // probe until the value or a free slot is found
+            while (slots[index] != EMPTY) {
+                if (slots[index] == value) {
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            int mask = slots.length - 1;
+            // re-insert every value into the larger table
+            for (int value : old) {
+                if (value != EMPTY) {
+                    int index = mix(value) & mask;
+                    while (slots[index] != EMPTY) {
+                        index = (index + 1) & mask;
+                    }
+                    slots[index] = value;
+                }
+            }
+        }
+
+        private static int mix(int value) {
+            int hash = value * 0x9E3779B9; // spread sequential IDs across the table
+            return hash ^ (hash >>> 16);
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method updateMember(connection)
-    |
-    |  Purpose:  Allows the user to choose how to update the Member table
-    |            (Add, Update, or Delete) and calls the respective method.
-    |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
-    |
-    |  Post-condition: Updates the Member table according to the user's choice.
-    |
-    |  Parameters:
-    |      dbConn -- Connection object representing the database connection.
-    |
-    |  Throws:
-    |      SQLException -- If an SQL exception occurs during database operations.
-    |
-    |  Returns:  None.
+    |  Class CsvReader
+    |
+    |  Purpose:  Streaming CSV parser over an NIO FileChannel. Fields are
+    |            parsed straight out of the read buffer into primitives, so
+    |            numbers and dates never become Strings and no String[] is
+    |            created per line. Quoted fields (with "" as an escaped quote)
+    |            are supported, and the unquoted literal NULL is read as a
+    |            SQL NULL.
+    |
+    |  Methods:  - nextRow(): Moves to the next row, skipping whatever is left
+    |              of the current one. Returns false at the end of the file.
+    |            - readInt(): Reads the next field as an int.
+    |            - readDecimal(): Reads the next field as a decimal number.
+    |            - readEpochDay(): Reads the next YYYY-MM-DD field as a day
+    |              count since 1970-01-01.
+    |            - readDate(): Reads the next YYYY-MM-DD field as a Date.
+    |            - readString(): Reads the next field as a String, or null for
+    |              NULL.
     *-------------------------------------------------------------------*/
-    private static void updateMember(Connection dbConn) throws SQLException {
-        Scanner scanner = new Scanner(System.in); // initialize new scanner for user input
-        System.out.println("How would you like to update the Member table? (Add/Update/Delete)"); 
-        String answer = scanner.nextLine(); // ger user input
-
-        switch (answer.toLowerCase()) {
-            // add member
-            case "add":
-                addMember(dbConn);
-                break;
+    private static final class CsvReader implements Closeable {
+        private static final int BUFFER_SIZE = 1 << 20; /* bytes read from the file at a time */
+        private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+                                                       1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+        private final String file; /* name of the file, for error messages */
+        private final FileChannel channel; /* channel the file is read from */
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE); /* bytes read but not yet parsed */
+        private final byte[] bytes = buffer.array(); /* backing array of buffer */
+        private int position = 0; /* next byte to parse */
+        private int limit = 0; /* end of the bytes read into the buffer */
+        private boolean rowEnded = true; /* whether the last field read ended its row */
+        private long rowNumber = 0; /* current row, for error messages */
+        private byte[] text = new byte[64]; /* bytes of the String field being read */
+        private int lastEpochDay = Integer.MIN_VALUE; /* day of the last Date handed out */
+        private java.sql.Date lastDate = null; /* last Date handed out, reused for runs of the same day */
+
+        CsvReader(String file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        }
 
-            // edit member
-            case "update":
-                editMember(dbConn);
-                break;
+        boolean nextRow() throws IOException {
+            // skip the fields of the current row that were not read
+            if (!rowEnded) {
+                boolean quoted = false;
+                int c = next();
+                while (c >= 0 && (quoted || c != '\n')) {
+                    quoted ^= c == '"';
+                    c = next();
+                }
+            }
 
-            // delete member
-            case "delete":
-                deleteMember(dbConn);
-                break;
+            // skip blank lines
+            int c = peek();
+            while (c == '\n' || c == '\r') {
+                position++;
+                c = peek();
+            }
+            if (c < 0) {
+                return false;
+            }
 
-            // invalid input
-            default:
-                System.out.println("\nPlease choose a valid option (Add/Update/Delete)");
-                break;
+            rowEnded = false;
+            rowNumber++;
+            return true;
         }
-    }
-
-    /*---------------------------------------------------------------------
-    |  Method addMember(connection)
-    |
-    |  Purpose:  Adds a new member to the Member table in the database.
-    |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
-    |
-    |  Post-condition: Inserts a new row into the Member table with the
-    |                  provided member details.
-    |
-    |  Parameters:
-    |      dbConn -- Connection object representing the database connection.
-    |
-    |  Throws:
-    |      SQLException -- If an SQL exception occurs during database operations.
-    |
-    |  Returns:  None.
-    *-------------------------------------------------------------------*/
-    private static void addMember(Connection dbConn) {
-        int newMemberID = getLastMemberID(dbConn) + 1; // get new member id to add
-        Scanner scanner = new Scanner(System.in); // initialize scanner for user input
 
-        System.out.println("Enter the new member's first name:");
-        String fName = scanner.nextLine(); // ger first name
+        int readInt() throws IOException {
+            startField();
+            int c = next();
+            boolean quoted = c == '"';
+            if (quoted) {
+                c = next();
+            }
+            boolean negative = c == '-';
+            if (negative) {
+                c = next();
+            }
+            if (c < '0' || c > '9') {
+                throw invalid("integer");
+            }
 
-        System.out.println("Enter the new member's last name:");
-        String lName = scanner.nextLine(); // get last name
+            // accumulate digits as a negative number until the end of the field, as Integer.parseInt does, so
+            // Integer.MIN_VALUE fits; a value past the limit would wrap around, so it is rejected instead
+            int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+            int value = 0;
+            while (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (value < (limit + digit) / 10) {
+                    throw invalid("integer");
+                }
+                value = value * 10 - digit;
+                c = next();
+            }
+            endField(quoted ? closeQuote(c) : c);
+            return negative ? value : -value;
+        }
 
-        System.out.println("Enter the new member's phone number:");
-        String phoneNum = scanner.nextLine(); // get phone number
+        double readDecimal() throws IOException {
+            startField();
+            int c = next();
+            boolean quoted = c == '"';
+            if (quoted) {
+                c = next();
+            }
+            boolean negative = c == '-';
+            if (negative) {
+                c = next();
+            }
 
-        System.out.println("Enter the new member's address:");
-        String address = scanner.nextLine(); // get address
+            long unscaled = 0; // digits of the number without the decimal point
+            int scale = 0; // number of digits after the decimal point
+            int digits = 0; // number of digits read
+            // digits before the decimal point
+            while (c >= '0' && c <= '9') {
+                unscaled = unscaled * 10 + (c - '0');
+                digits++;
+                c = next();
+            }
+            // digits after the decimal point
+            if (c == '.') {
+                c = next();
+                while (c >= '0' && c <= '9') {
+                    if (scale < POWERS_OF_TEN.length - 1) {
+                        unscaled = unscaled * 10 + (c - '0');
+                        scale++;
+                    }
+                    digits++;
+                    c = next();
+                }
+            }
+            if (digits == 0) {
+                throw invalid("decimal");
+            }
+            endField(quoted ? closeQuote(c) : c);
 
-        String insert = "INSERT INTO Member VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, TO_DATE(?, 'YYYY-MM-DD'), ?)"; // insert statement for member table
-        try {
-            PreparedStatement statement = dbConn.prepareStatement(insert); // prepare insert statement
+            double value = unscaled / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
 
-            // memberID doesn't exist within table
-            if (!rowExists(dbConn, "Member", String.valueOf(newMemberID))) {
-                // set all attributes of member
-                statement.setInt(1, newMemberID);
-                statement.setString(2, fName);
-                statement.setString(3, lName);
-                statement.setString(4, phoneNum);
-                statement.setString(5, address);
-                statement.setInt(6, 0);
-                statement.setDouble(7, 0.00);
-                statement.setString(8, " ");
-                statement.setInt(9, 1);
-                statement.setDate(10, java.sql.Date.valueOf("2024-04-29"));
-                statement.setInt(11, 0);
+        int readEpochDay() throws IOException {
+            startField();
+            int c = next();
+            boolean quoted = c == '"';
+            if (quoted) {
+                c = next();
+            }
 
-                // execute update
-                statement.executeUpdate();
-                System.out.println("\nSuccessfully added new member " + fName + " " + lName);
-            // memberID already exists within table
-            } else {
-                System.out.println("\nSkipping duplicate row");
+            int year = 0;
+            int month = 0;
+            int day = 0;
+            // read the YYYY-MM-DD parts
+            for (int i = 0; i < 4; i++, c = next()) {
+                year = year * 10 + digit(c, "date");
             }
-        } catch (SQLException e) {
-            System.err.println("\nCould not add new member.");
-            e.printStackTrace();
+            if (c != '-') {
+                throw invalid("date");
+            }
+            c = next();
+            for (int i = 0; i < 2; i++, c = next()) {
+                month = month * 10 + digit(c, "date");
+            }
+            if (c != '-') {
+                throw invalid("date");
+            }
+            c = next();
+            for (int i = 0; i < 2; i++, c = next()) {
+                day = day * 10 + digit(c, "date");
+            }
+            if (month < 1 || month > 12 || day < 1 || day > 31) {
+                throw invalid("date");
+            }
+            endField(quoted ? closeQuote(c) : c);
+            return epochDay(year, month, day);
         }
-    }
 
-    /*---------------------------------------------------------------------
-    |  Method editMember(connection)
-    |
-    |  Purpose:  Allows the user to edit the details of an existing member
-    |            in the Member table of the database.
-    |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
-    |
-    |  Post-condition: Updates the details of the specified member in the
-    |                  Member table according to the user's input.
-    |
-    |  Parameters:
-    |      dbConn -- Connection object representing the database connection.
-    |
-    |  Throws:
-    |      SQLException -- If an SQL exception occurs during database operations.
-    |
-    |  Returns:  None.
-    *-------------------------------------------------------------------*/
-    private static void editMember(Connection dbConn) throws SQLException {
-        Scanner scanner = new Scanner(System.in); // initialize new scanner for user input
+        java.sql.Date readDate() throws IOException {
+            int epochDay = readEpochDay();
+            // rows are often grouped by day, so reuse the previous Date when it matches
+            if (epochDay != lastEpochDay) {
+                lastDate = java.sql.Date.valueOf(LocalDate.ofEpochDay(epochDay));
+                lastEpochDay = epochDay;
+            }
+            return lastDate;
+        }
 
-        System.out.println("Enter the ID of the member you want to update:");
-        int memberId = scanner.nextInt(); // get memberID
-        scanner.nextLine();
+        String readString() throws IOException {
+            startField();
+            int length = 0; // bytes of the field read into text
+            int c = next();
+            boolean quoted = c == '"';
+
+            if (quoted) {
+                // read until the closing quote, turning "" into "
+                while (true) {
+                    c = next();
+                    if (c < 0) {
+                        throw invalid("quoted field");
+                    }
+                    if (c == '"') {
+                        c = next();
+                        if (c != '"') {
+                            break;
+                        }
+                    }
+                    length = append(length, c);
+                }
+            } else {
+                // read until the end of the field
+                while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                    length = append(length, c);
+                    c = next();
+                }
+            }
+            endField(c);
 
-        // if member doesn't exist within table
-        if (!memberExists(dbConn, memberId)) {
-            System.out.println("Member with ID " + memberId + " does not exist.");
-            return;
+            // the unquoted literal NULL stands for a missing value
+            if (!quoted && length == 4 && text[0] == 'N' && text[1] == 'U' && text[2] == 'L' && text[3] == 'L') {
+                return null;
+            }
+            return new String(text, 0, length, StandardCharsets.UTF_8);
         }
 
-        System.out.println("What would you like to update for this member? (Phone number/Address/Both)");
-        String toChange = scanner.nextLine(); // get user input
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
 
-        String newPhoneNumber = null; // initialize new phone number
-        String newAddress = null; // initialize new address
+        static int epochDay(int year, int month, int day) {
+            // days from civil date, counting years from March so leap days fall at the end
+            int y = month <= 2 ? year - 1 : year;
+            int era = (y >= 0 ? y : y - 399) / 400;
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097 + dayOfEra - 719468;
+        }
 
-        switch (toChange.toLowerCase()) {
-            // changing phone number
-            case "phone number":
-                System.out.println("Enter the new phone number (###-###-####):");
-                newPhoneNumber = scanner.nextLine(); // get new phone number
-                break;
+        private int next() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return bytes[position++] & 0xFF;
+        }
 
-            // changing address
-            case "address":
-                System.out.println("Enter the new address:");
-                newAddress = scanner.nextLine(); // get new address
-                break;
+        private int peek() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return bytes[position] & 0xFF;
+        }
 
-            // changing both phone number and address
-            case "both":
-                System.out.println("Enter the new phone number (###-###-####):");
-                newPhoneNumber = scanner.nextLine(); // get new phone number
-                System.out.println("Enter the new address:");
-                newAddress = scanner.nextLine(); // get new address
-                break;
+        private boolean fill() throws IOException {
+            buffer.clear();
+            int read = 0;
+            // a channel may return zero bytes before the end of the file
+            while (read == 0) {
+                read = channel.read(buffer);
+            }
+            position = 0;
+            limit = Math.max(read, 0);
+            return read > 0;
+        }
 
-            // invalid input
-            default:
-                System.out.println("\nPlease choose a valid option (Phone number/Address/Both)");
+        private void startField() throws IOException {
+            if (rowEnded) {
+                throw new IOException("Missing field in " + file + " at row " + rowNumber + ".");
+            }
         }
 
-        String update = "UPDATE Member SET "; // initialize update statement
-        // phone number needs to be updated
-        if (newPhoneNumber != null) {
-            update += "TelephoneNum = '" + newPhoneNumber + "'";
+        private void endField(int c) throws IOException {
+            // a comma means more fields follow, anything else must end the row
+            if (c == ',') {
+                return;
+            }
+            if (c == '\r') {
+                if (peek() == '\n') {
+                    position++;
+                }
+            } else if (c != '\n' && c >= 0) {
+                throw invalid("field");
+            }
+            rowEnded = true;
         }
 
-        // address needs to be updates
-        if (newAddress != null) {
-            if (newPhoneNumber != null) {
-                update += ", ";
+        private int closeQuote(int c) throws IOException {
+            if (c != '"') {
+                throw invalid("quoted field");
             }
+            return next();
+        }
 
-            update += "Address = '" + newAddress + "'";
+        private int digit(int c, String type) throws IOException {
+            if (c < '0' || c > '9') {
+                throw invalid(type);
+            }
+            return c - '0';
         }
 
-        // both phone number and address need to be updated
-        if (newPhoneNumber != null || newAddress != null) {
-            update += " WHERE MemberID = ?";
-        // no updates to be made
-        } else {
-            // If no updates are being made, just return
-            System.out.println("No updates to perform.");
-            return;
+        private int append(int length, int c) {
+            if (length == text.length) {
+                text = Arrays.copyOf(text, length * 2);
+            }
+            text[length] = (byte) c;
+            return length + 1;
         }
 
-        try {
-            PreparedStatement statement = dbConn.prepareStatement(update); // prepare update statement
-            statement.setInt(1, memberId); // set memberID
-            int updatedRow = statement.executeUpdate(); // execute update
-            System.out.println("\n" + updatedRow + " row(s) updated successfully.");
-        } catch (SQLException e) {
-            System.out.println("\nCould not update row(s).");
-            e.printStackTrace();
-            System.exit(-1);
+        private IOException invalid(String type) {
+            return new IOException("Invalid " + type + " in " + file + " at row " + rowNumber + ".");
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method memberExists(connection, memberId)
-    |
-    |  Purpose:  Checks whether a member with the given ID exists in the
-    |            Member table of the database.
-    |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
-    |
-    |  Post-condition: Returns true if the member exists; otherwise, false.
+    |  Method runScript(pool, script, results)
+    |
+    |  Purpose:  Runs a file of commands with no prompts, one command per
+    |            line. Blank lines and lines starting with # are skipped.
+    |            Arguments are separated by whitespace and may be quoted with
+    |            double quotes ("" inside quotes is a quote). The commands are:
+    |
+    |                add-member <first> <last> <phone> <address>
+    |                edit-member <memberId> <phone|-> <address|->
+    |                delete-member <memberId>
+    |                delete-members <memberId> [<memberId> ...]
+    |                member <memberId>
+    |                add-game <name> <tokenCost> <tickets>
+    |                delete-game <gameId>
+    |                add-prize <name> <ticketCost>
+    |                delete-prize <prizeId> <memberId>
+    |                exchange-tickets <memberId>
+    |                play <memberId> <gameId> <score> <tickets>
+    |                flush-plays
+    |                add-transaction <memberId> <Token|Ticket> <amount> [yyyy-mm-dd]
+    |                coupons <memberId>
+    |                use-coupons <memberId> <couponId> [<couponId> ...]
+    |                expire-coupons <memberId> [<memberId> ...]
+    |                query a | query b | query c <memberId> | query d <gameId>
+    |                game-stats
+    |                tickets-report <file>
+    |                metrics
+    |                rebuild-ticket-totals
+    |
+    |            Each command runs on its own connection borrowed from the
+    |            pool through the same methods the prompts use, and writes one
+    |            JSON object on its own line with the line number, command,
+    |            status (ok or error), elapsed microseconds and either the
+    |            result or the error message. A failed command does not stop
+    |            the script.
+    |
+    |  Pre-condition:  The connection pool is open.
+    |
+    |  Post-condition: Every command in the script has been run.
     |
     |  Parameters:
-    |      dbConn -- Connection object representing the database connection.
-    |      memberId -- The ID of the member to check for existence.
+    |      pool -- Pool each command borrows its database connection from.
+    |      script -- Path of the command file, or - for standard input.
+    |      results -- Stream the JSON results are written to.
     |
-    |  Throws:
-    |      SQLException -- If an SQL exception occurs during database operations.
-    |
-    |  Returns:  boolean -- True if the member exists; otherwise, false.
+    |  Returns:  boolean -- Whether every command succeeded.
     *-------------------------------------------------------------------*/
-    private static boolean memberExists(Connection dbConn, int memberId) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM Member WHERE MemberID = ?"; // initialize select statement
-        try {
-            PreparedStatement statement = dbConn.prepareStatement(sql); // prepare select statement
-            statement.setInt(1, memberId); // set memberID
-            try (var resultSet = statement.executeQuery()) {
-                // member exists
-                if (resultSet.next()) {
-                    int count = resultSet.getInt(1);
-                    return count > 0;
+    private static boolean runScript(ConnectionPool pool, String script, PrintStream results) {
+        long commands = 0; // commands run
+        long failures = 0; // commands that failed
+        long start = System.nanoTime();
+
+        try (BufferedReader reader = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : new BufferedReader(new InputStreamReader(new FileInputStream(script), StandardCharsets.UTF_8))) {
+            String line; // current command line
+            int lineNumber = 0; // line number of the current command
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                // skip blank lines and comments
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                Map<String, Object> record = new LinkedHashMap<>(); // JSON result of the command
+                record.put("line", lineNumber);
+                long commandStart = System.nanoTime();
+                try {
+                    String[] command = tokenizeCommand(line);
+                    record.put("command", command[0]);
+                    try (Connection dbConn = pool.borrow()) {
+                        Object result = runCommand(dbConn, command);
+                        record.put("status", "ok");
+                        record.put("elapsedMicros", (System.nanoTime() - commandStart) / 1000);
+                        record.put("result", result);
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    failures++;
+                    record.put("status", "error");
+                    record.put("elapsedMicros", (System.nanoTime() - commandStart) / 1000);
+                    record.put("message", String.valueOf(e.getMessage()));
                 }
+                commands++;
+
+                StringBuilder json = new StringBuilder();
+                appendJson(json, record);
+                results.println(json);
             }
-        } catch (SQLException e) {}
+        } catch (IOException e) {
+            System.err.println("Could not read script " + script + ".");
+            e.printStackTrace();
+            return false;
+        }
 
-        return false;
+        results.flush();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Ran %d commands (%d failed) in %.2f seconds (%.0f commands/sec).%n",
+                          commands, failures, seconds, seconds > 0 ? commands / seconds : 0.0);
+        return failures == 0;
     }
 
     /*---------------------------------------------------------------------
-    |  Method deleteMember(connection)
+    |  Method runCommand(dbConn, command)
     |
-    |  Purpose:  Deletes a member from the Member table in the database
-    |            based on the provided Member ID.
+    |  Purpose:  Runs one script command, see runScript for the commands.
     |
-    |  Pre-condition:  Connection to the database is established.
+    |  Pre-condition:  The JDBC database connection is valid.
     |
-    |  Post-condition: The specified member is deleted from the Member table
-    |                  if it exists.
+    |  Post-condition: The command has been applied to the database.
     |
     |  Parameters:
-    |      connection -- Connection object representing the database connection.
+    |      dbConn -- Connection the command runs on. play and flush-plays
+    |                only hand work to the gameplay ingestor, which writes on
+    |                its own connection, so for them it may be null.
+    |      command -- The command name followed by its arguments.
     |
-    |  Returns:  None.
+    |  Throws:
+    |      SQLException -- If the command fails in the database.
+    |      IllegalArgumentException -- If the command or its arguments are
+    |                                  not valid.
+    |      UnavailableException -- If a play is refused or the wait for the
+    |                              ingestor is interrupted.
+    |
+    |  Returns:  Object -- The result of the command: a map of IDs or row
+    |            counts for updates, a list of rows for queries.
     *-------------------------------------------------------------------*/
-    private static void deleteMember(Connection dbConn) throws SQLException {
-        Scanner scanner = new Scanner(System.in); // initiialize scanner for user input
-    
-        System.out.println("Enter the Member ID of the member you want to delete:");
-        int memberId = scanner.nextInt(); // get memberID
-        scanner.nextLine(); // consume newline character
-
-        // member doesn't exist within database
-        if (!memberExists(dbConn, memberId)) {
-            System.out.println("\nThere is no member in the database with the MemberID " + memberId);
-            return;
-        }
-    
-        try {
-            PreparedStatement ticketCheckStatement = dbConn.prepareStatement("SELECT TotalTickets FROM Member WHERE MemberID = ?"); // prepare select statement
-            ticketCheckStatement.setInt(1, memberId); // set memberID
-            ResultSet tickets = ticketCheckStatement.executeQuery(); // execute query
-            tickets.next();
-            int ticketCount = tickets.getInt(1); // get ticket count
+    private static Object runCommand(Connection dbConn, String[] command) throws SQLException {
+        Map<String, Object> result = new LinkedHashMap<>(); // result of an update command
+
+        switch (command[0]) {
+            case "add-member":
+                checkArguments(command, 4);
+                result.put("memberId", insertMember(dbConn, command[1], command[2], command[3], command[4]));
+                return result;
+
+            case "edit-member":
+                checkArguments(command, 3);
+                result.put("updated", updateMemberContact(dbConn, parseId(command[1]),
+                        command[2].equals("-") ? null : command[2], command[3].equals("-") ? null : command[3]));
+                return result;
+
+            case "delete-member":
+                checkArguments(command, 1);
+                return removeMember(dbConn, parseId(command[1]));
+
+            case "delete-members":
+                return removeMembers(dbConn, parseIds(command, 1));
+
+            case "add-game":
+                checkArguments(command, 3);
+                result.put("gameId", insertGame(dbConn, command[1], parseId(command[2]), parseId(command[3])));
+                return result;
+
+            case "delete-game":
+                checkArguments(command, 1);
+                return removeGame(dbConn, parseId(command[1]));
+
+            case "add-prize":
+                checkArguments(command, 2);
+                result.put("prizeId", insertPrize(dbConn, command[1], parseId(command[2])));
+                return result;
+
+            case "delete-prize":
+                checkArguments(command, 2);
+                result.put("outcome", redeemPrize(dbConn, parseId(command[1]), parseId(command[2])));
+                return result;
 
-            // tickets available
-            if (ticketCount > 0) {
-                System.out.println("\nThere are still " + ticketCount + " remaining tickets. Exchange them for a prize? (y/n/e)");
-                String exchangeChoice = scanner.nextLine().trim(); // get exchange choice
+            case "member":
+                checkArguments(command, 1);
+                Map<String, Object> member = getMember(dbConn, parseId(command[1]));
+                if (member == null) {
+                    throw new IllegalArgumentException("There is no member with the MemberID " + command[1] + ".");
+                }
+                return member;
+
+            case "play":
+                checkArguments(command, 4);
+                try {
+                    result.put("queued", gameplayIngestor().offer(parseId(command[1]), parseId(command[2]),
+                                                                  parseId(command[3]), parseId(command[4])));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UnavailableException("Interrupted while queueing the play.");
+                }
+                if (!Boolean.TRUE.equals(result.get("queued"))) {
+                    throw new UnavailableException("The gameplay buffer is full; the play was rejected.");
+                }
+                return result;
+
+            case "flush-plays":
+                checkArguments(command, 0);
+                try {
+                    gameplayIngestor().flush();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UnavailableException("Interrupted while writing the plays.");
+                }
+                result.put("stats", gameplayIngestor().stats());
+                return result;
 
-                // user wants to exchange tickets
-                if (exchangeChoice.equalsIgnoreCase("y")) {
-                    exchangeTickets(dbConn, memberId, ticketCount);
-                // user doesn't want to exchange tickers
-                } else if (exchangeChoice.equalsIgnoreCase("n")) {
-                    System.out.println("\nTickets will not be exchanged for a prize.");
-                // user wants to exit
-                } else if (exchangeChoice.equalsIgnoreCase("e")) {
-                    return;
-                // invalid input
-                } else {
-                    System.out.println("Invalid choice. Please enter 'y' for yes or 'n' for no or 'e' to exit.");
+            case "exchange-tickets":
+                checkArguments(command, 1);
+                return exchangeAllTickets(dbConn, parseId(command[1]));
+
+            case "coupons":
+                checkArguments(command, 1);
+                result.put("coupons", loadUnusedCoupons(dbConn, parseId(command[1])));
+                return result;
+
+            case "use-coupons":
+                if (command.length < 2) {
+                    throw new IllegalArgumentException("use-coupons needs a member ID.");
                 }
-            }
+                result.put("used", markCouponsUsed(dbConn, parseId(command[1]), parseIds(command, 2)));
+                return result;
+
+            case "expire-coupons":
+                result.put("expired", expireCoupons(dbConn, parseIds(command, 1)));
+                return result;
+
+            case "game-stats":
+                checkArguments(command, 0);
+                return getGameStats(dbConn);
+
+            case "metrics":
+                checkArguments(command, 0);
+                return metrics.snapshot();
+
+            case "tickets-report":
+                checkArguments(command, 1);
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(command[1]),
+                                                                            StandardCharsets.UTF_8))) {
+                    result.put("lines", writeTicketsReport(dbConn, out));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Could not write the tickets report to " + command[1] + ": "
+                                                       + e.getMessage());
+                }
+                result.put("file", command[1]);
+                return result;
+
+            case "rebuild-ticket-totals":
+                checkArguments(command, 0);
+                result.put("totals", rebuildTicketTotals(dbConn));
+                return result;
+
+            case "add-transaction":
+                if (command.length == 4) {
+                    command = Arrays.copyOf(command, 5);
+                    command[4] = LocalDate.now().toString();
+                }
+                checkArguments(command, 4);
+                try {
+                    result.put("transactionId", insertTransaction(dbConn, parseId(command[1]), command[2],
+                            Double.parseDouble(command[3]), LocalDate.parse(command[4])));
+                } catch (java.time.format.DateTimeParseException | NumberFormatException e) {
+                    throw new IllegalArgumentException("add-transaction needs a dollar amount and a yyyy-mm-dd date.");
+                }
+                return result;
 
-            redeemCoupon(dbConn, memberId); // redeeming food coupons
+            case "query":
+                if (command.length < 2) {
+                    throw new IllegalArgumentException("query needs a query name (a, b, c or d).");
+                }
+                switch (command[1].toLowerCase()) {
+                    case "a":
+                        checkArguments(command, 1);
+                        return getHighScores(dbConn);
+                    case "b":
+                        checkArguments(command, 1);
+                        return getBigSpenders(dbConn);
+                    case "c":
+                        checkArguments(command, 2);
+                        return getAvailableRewards(dbConn, parseId(command[2]));
+                    case "d":
+                        checkArguments(command, 2);
+                        return getTicketsEarned(dbConn, parseId(command[2]));
+                    default:
+                        throw new IllegalArgumentException("Unknown query " + command[1] + ".");
+                }
+
+            default:
+                throw new IllegalArgumentException("Unknown command " + command[0] + ".");
+        }
+    }
 
-            PreparedStatement gameplayCheckStatement = dbConn.prepareStatement(
-                "SELECT COUNT(*) FROM Gameplay WHERE MemberID = ?"); // prepare select statement
-            gameplayCheckStatement.setInt(1, memberId); // set memberID
-            ResultSet childResultSet = gameplayCheckStatement.executeQuery(); // get rows
-            childResultSet.next();
-            int gameplayCount = childResultSet.getInt(1); // get count of rows
+    /*---------------------------------------------------------------------
+    |  Method checkArguments(command, count)
+    |
+    |  Purpose:  Checks that a script command has the given number of
+    |            arguments after its name.
+    |
+    |  Throws:
+    |      IllegalArgumentException -- If the count is wrong.
+    *-------------------------------------------------------------------*/
+    private static void checkArguments(String[] command, int count) {
+        if (command.length != count + 1) {
+            throw new IllegalArgumentException(command[0] + " takes " + count + " argument(s), got "
+                                               + (command.length - 1) + ".");
+        }
+    }
 
-            // if there were rows returned
-            if (gameplayCount > 0) {
-                System.out.println("This member has associated records in Gameplay table. Deleting Gameplay records.");
-                // delete associated records in the Gameplay table
-                PreparedStatement deleteGameplayStatement = dbConn.prepareStatement(
-                        "DELETE FROM Gameplay WHERE MemberID = ?");
-                deleteGameplayStatement.setInt(1, memberId);
-                deleteGameplayStatement.executeUpdate();
-            }
-
-            PreparedStatement foodCouponCheckStatement = dbConn.prepareStatement(
-                "SELECT COUNT(*) FROM FoodCoupon WHERE MemberID = ?"); // prepare select statement
-            foodCouponCheckStatement.setInt(1, memberId); // set memberID
-            ResultSet foodCouponResultSet = foodCouponCheckStatement.executeQuery(); // get rows
-            foodCouponResultSet.next();
-            int foodCouponCount = foodCouponResultSet.getInt(1); // get count of rows
+    /*---------------------------------------------------------------------
+    |  Method parseId(value)
+    |
+    |  Purpose:  Parses a whole-number script argument.
+    |
+    |  Throws:
+    |      IllegalArgumentException -- If the value is not a whole number.
+    *-------------------------------------------------------------------*/
+    private static int parseId(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a whole number but got " + value + ".");
+        }
+    }
 
-            // if there were rows returned
-            if (foodCouponCount > 0) {
-                System.out.println("This member has associated records in FoodCoupon table. Deleting FoodCoupon records.");
-                // delete associated records in the FoodCoupon table
-                PreparedStatement deleteFoodCouponStatement = dbConn.prepareStatement(
-                        "DELETE FROM FoodCoupon WHERE MemberID = ?");
-                deleteFoodCouponStatement.setInt(1, memberId);
-                deleteFoodCouponStatement.executeUpdate();
+    /*---------------------------------------------------------------------
+    |  Method parseIds(command, from)
+    |
+    |  Purpose:  Parses the script arguments from index from onwards as IDs.
+    |
+    |  Throws:
+    |      IllegalArgumentException -- If there are none or one is not a
+    |                                  whole number.
+    *-------------------------------------------------------------------*/
+    private static int[] parseIds(String[] command, int from) {
+        if (command.length <= from) {
+            throw new IllegalArgumentException(command[0] + " needs at least one ID.");
+        }
+        int[] ids = new int[command.length - from];
+        for (int i = from; i < command.length; i++) {
+            ids[i - from] = parseId(command[i]);
+        }
+        return ids;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method tokenizeCommand(line)
+    |
+    |  Purpose:  Splits a script line into its whitespace-separated
+    |            arguments. Double quotes group an argument that contains
+    |            whitespace and "" inside quotes is a literal quote.
+    |
+    |  Throws:
+    |      IllegalArgumentException -- If a quote is not closed.
+    |
+    |  Returns:  String[] -- The command name followed by its arguments.
+    *-------------------------------------------------------------------*/
+    private static String[] tokenizeCommand(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder(); // argument being read
+        boolean inToken = false; // whether an argument has started
+        boolean quoted = false; // whether we are inside double quotes
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    token.append(c);
+                // "" inside quotes is a quote
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    token.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
             }
+        }
 
-            PreparedStatement preparedStatement = dbConn.prepareStatement("DELETE FROM Member WHERE MemberID = ?"); // prepare select statement
-            preparedStatement.setInt(1, memberId); // set memberID
-            int rowsAffected = preparedStatement.executeUpdate(); // get rows
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quote.");
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens.toArray(new String[0]);
+    }
 
-            // if there were rows returned
-            if (rowsAffected > 0) {
-                System.out.println("\nMember with ID " + memberId + " deleted successfully along with associated records.");
+    /*---------------------------------------------------------------------
+    |  Method appendJson(json, value)
+    |
+    |  Purpose:  Appends a value as JSON. Maps become objects, collections
+    |            become arrays, numbers and booleans are written as they are
+    |            and everything else is written as a string.
+    |
+    |  Parameters:
+    |      json -- Builder the JSON is appended to.
+    |      value -- Value to write.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            json.append(value);
+        } else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            // JSON has no NaN or infinity
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                json.append("null");
             } else {
-                System.out.println("\nNo member found with ID " + memberId + ".");
+                json.append(value);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        } else if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendJson(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                appendJson(json, entry.getValue());
+            }
+            json.append('}');
+        } else if (value instanceof Collection) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendJson(json, element);
+            }
+            json.append(']');
+        } else {
+            String text = value.toString();
+            json.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"':  json.append("\\\""); break;
+                    case '\\': json.append("\\\\"); break;
+                    case '\n': json.append("\\n"); break;
+                    case '\r': json.append("\\r"); break;
+                    case '\t': json.append("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            json.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            json.append(c);
+                        }
+                }
+            }
+            json.append('"');
         }
     }
 
-    /*
-     * Function: exchangeTickets()
-     * Arugments: Connection dbConn - The JDBC data connection.
-     *            int memberId - The ID of the member we want to delete.
-     *            int ticketCOunt - The number of tickets the member has
-     * Returns: None.
-     * 
-     * Pre-Condition: The JDBC database connection is valid.
-     * 
-     * Post-condition: None.
-     * 
-     * Puprose: This function is responsible for prompting the user to exchange tickets for prize(s).
-     */
-    private static void exchangeTickets(Connection dbConn, int memberId, int ticketCount) {
-        Scanner scanner = new Scanner(System.in); // intitialize new scanner
-        int currTickets = ticketCount; // get current number of tickets
+    /*---------------------------------------------------------------------
+    |  Class UnavailableException
+    |
+    |  Purpose:  Thrown when a command is refused for now rather than failed:
+    |            the gameplay buffer is full or closed, or the thread was
+    |            interrupted while it waited for the ingestor. The HTTP API
+    |            answers it with 503 so clients know to retry later.
+    *-------------------------------------------------------------------*/
+    private static final class UnavailableException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
 
-        try {
-            // while member still has tickets
-            while (currTickets > 0) {
-                System.out.println("There are still " + currTickets + " tickets left.");
-                Statement statement = dbConn.createStatement(); // creating new statement
+        UnavailableException(String message) {
+            super(message);
+        }
+    }
 
-                String query = "SELECT Prize.Name, Prize.TicketCost FROM Prize WHERE Prize.TicketCost <= " + currTickets; // select query for prizes
+    /*---------------------------------------------------------------------
+    |  Class HttpService
+    |
+    |  Purpose:  Serves the program's operations as a JSON API over HTTP on
+    |            the JDK's built-in server, so many terminals and kiosks can
+    |            use it at once. Each request is turned into the matching
+    |            script command and run by runCommand on a connection
+    |            borrowed from the pool, so the API, script mode and the
+    |            prompts share one implementation. Parameters come from the
+    |            query string or a form encoded (application/x-www-form-
+    |            urlencoded) body:
+    |
+    |                GET    /queries/a | /queries/b
+    |                GET    /queries/c/<memberId> | /queries/d/<gameId>
+    |                POST   /members           firstName lastName phone address
+    |                GET    /members/<id>
+    |                PATCH  /members/<id>      [phone] [address]
+    |                DELETE /members/<id>
+    |                GET    /members/<id>/coupons
+    |                POST   /members/<id>/coupons   couponIds (comma separated)
+    |                POST   /members/<id>/exchange
+    |                POST   /games             name tokenCost tickets
+    |                DELETE /games/<id>
+    |                POST   /prizes            name ticketCost
+    |                POST   /prizes/<id>/redeem    memberId
+    |                POST   /transactions      memberId type amount [date]
+    |                POST   /plays             memberId gameId score tickets
+    |                GET    /stats
+    |
+    |            A response is the JSON object script mode writes per command
+    |            (status, elapsedMicros and result or message) with status
+    |            200, or 400 for bad parameters, 404 for an unknown endpoint,
+    |            503 when a play is refused (UnavailableException) and 500
+    |            for any other failure. Only the commands that use the
+    |            database borrow a connection; a play is queued for the
+    |            ingestor without one, so a busy pool does not hold it up.
+    |
+    |            Requests run on virtual threads when the JDK has them (21 and
+    |            later), so thousands of clients waiting on the database cost
+    |            no platform threads; the connection pool bounds how many run
+    |            SQL at once. On older JDKs they run on a pool of
+    |            HTTP_THREADS platform threads.
+    |
+    |  Methods:  - start(pool, port): Starts serving and returns the server.
+    *-------------------------------------------------------------------*/
+    private static final class HttpService {
+        private static final int HTTP_THREADS = Integer.getInteger("prog4.http.threads", 64); /* platform threads without virtual threads */
+        private static final int HTTP_BACKLOG = Integer.getInteger("prog4.http.backlog", 1024); /* connections queued for accept */
+
+        private HttpService() {}
+
+        static HttpServer start(ConnectionPool pool, int port) throws IOException {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), HTTP_BACKLOG);
+            ExecutorService executor = requestExecutor();
+            server.setExecutor(executor);
+            server.createContext("/", exchange -> handle(pool, exchange));
+            server.start();
+
+            // stop cleanly on Ctrl-C or kill: finish the buffered plays before the pool goes away
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop(1);
+                executor.shutdown();
+                String ingested = closeGameplayIngestor();
+                if (ingested != null) {
+                    System.err.println(ingested);
+                }
+                System.err.println(pool.stats());
+                System.err.println(members.stats());
+                if (GAMEPLAY_COLUMNS) {
+                    System.err.println(gameplayColumns.stats());
+                }
+                System.err.println(metrics.dump());
+                pool.close();
+            }));
+            System.out.println("Serving the HTTP API on port " + server.getAddress().getPort() + " on "
+                               + (executor instanceof ThreadPoolExecutor ? HTTP_THREADS + " platform threads." : "virtual threads."));
+            return server;
+        }
 
-                ResultSet tables = statement.executeQuery(query); // get rows from query
-                List<String> availablePrizes = new ArrayList<>(); // initialize list for available prizes
-                Map<String, Integer> prizeCost = new HashMap<>(); // initialize map for prize cost of each prize
-                System.out.println("\nAvailable prizes: ");
-                System.out.println("-----------------------------------------------");
-                // iterate through valid rows
-                while (tables.next()) {
-                    String prizeName = tables.getString("Name"); // get prize name
-                    int ticketCost = tables.getInt("TicketCost"); // get prize cost
+        // a virtual thread per request where the JDK has them, a fixed pool of platform threads otherwise
+        private static ExecutorService requestExecutor() {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                return Executors.newFixedThreadPool(HTTP_THREADS);
+            }
+        }
 
-                    System.out.println("Prize: " + prizeName + ", Ticket cost: " + ticketCost);
-                    availablePrizes.add(prizeName.toLowerCase()); // add prize to available prizes
-                    prizeCost.put(prizeName.toLowerCase(), ticketCost); // add prize and prize cost to prizeCost
+        private static void handle(ConnectionPool pool, HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            Map<String, Object> record = new LinkedHashMap<>(); // the response object
+            int status = 200;
+            try {
+                Map<String, String> parameters = parameters(exchange);
+                String[] command = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), parameters);
+                Object result;
+                if (command == null) {
+                    status = 404;
+                    throw new IllegalArgumentException("No endpoint " + exchange.getRequestMethod() + " "
+                                                       + exchange.getRequestURI().getPath() + ".");
+                } else if (command[0].equals("stats")) {
+                    result = stats(pool);
+                } else if (command[0].equals("tickets-report")) {
+                    streamTicketsReport(pool, exchange);
+                    return;
+                } else if (command[0].equals("play") || command[0].equals("flush-plays")) {
+                    // the ingestor writes on its own connection
+                    record.put("command", command[0]);
+                    result = runCommand(null, command);
+                } else {
+                    record.put("command", command[0]);
+                    try (Connection dbConn = pool.borrow()) {
+                        result = runCommand(dbConn, command);
+                    }
+                }
+                record.put("status", "ok");
+                record.put("elapsedMicros", (System.nanoTime() - start) / 1000);
+                record.put("result", result);
+            } catch (SQLException | IOException | RuntimeException e) {
+                // an IOException here is from before the tickets report sent its headers, so a JSON error can still go out
+                if (status == 200) {
+                    status = e instanceof IllegalArgumentException ? 400 : e instanceof UnavailableException ? 503 : 500;
                 }
+                record.put("status", "error");
+                record.put("elapsedMicros", (System.nanoTime() - start) / 1000);
+                record.put("message", String.valueOf(e.getMessage()));
+            }
 
-                System.out.println("-----------------------------------------------");
+            StringBuilder json = new StringBuilder();
+            appendJson(json, record);
+            byte[] body = json.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
 
-                // not enough tickets to redeem any prizes
-                if (availablePrizes.isEmpty()) {
-                    System.out.println("You don't have enough tickets to redeem any prizes.");
-                    break;
-                } else {
-                    System.out.println("\nWhich prize would you like to redeem?");
-                    String prize = scanner.nextLine().trim(); // get prize choice from user
+        // the script command for a request, or null if no endpoint matches
+        private static String[] route(String method, String path, Map<String, String> parameters) {
+            String[] parts = path.replaceAll("^/+|/+$", "").split("/+");
+            String resource = parts[0];
+            String id = parts.length > 1 ? parts[1] : null; // the ID after the resource, if any
+            String action = parts.length > 2 ? parts[2] : null; // what to do with it, if anything
+            if (parts.length > 3) {
+                return null;
+            }
 
-                    if (prize == "e") {
-                        return;
+            switch (method + " " + resource) {
+                case "GET queries":
+                    if (id == null || (action == null) != (id.equals("a") || id.equals("b"))) {
+                        return null;
                     }
+                    return action == null ? new String[] {"query", id} : new String[] {"query", id, action};
 
-                    // if the prize choice is a valid choice
-                    if (availablePrizes.contains(prize.toLowerCase())) {
-                        int cost = prizeCost.get(prize.toLowerCase()); // get cost of prize
-                        System.out.println("\nYou redeemed: " + prize);
-                        currTickets -= cost; // decrement currTickets by cost of prize
-                    // exit
-                    } else {
-                        System.out.println("Invalid prize selection. Please choose from the available prizes.");
+                case "POST members":
+                    if (id == null) {
+                        return new String[] {"add-member", required(parameters, "firstName"), required(parameters, "lastName"),
+                                             required(parameters, "phone"), required(parameters, "address")};
                     }
-                }
+                    if ("exchange".equals(action)) {
+                        return new String[] {"exchange-tickets", id};
+                    }
+                    if ("coupons".equals(action)) {
+                        List<String> command = new ArrayList<>(Arrays.asList("use-coupons", id));
+                        command.addAll(Arrays.asList(required(parameters, "couponIds").split(",")));
+                        return command.toArray(new String[0]);
+                    }
+                    return null;
+
+                case "GET members":
+                    if (id == null) {
+                        return null;
+                    }
+                    return action == null ? new String[] {"member", id}
+                           : action.equals("coupons") ? new String[] {"coupons", id} : null;
+
+                case "PATCH members":
+                case "PUT members":
+                    return id == null || action != null ? null
+                           : new String[] {"edit-member", id, parameters.getOrDefault("phone", "-"),
+                                           parameters.getOrDefault("address", "-")};
+
+                case "DELETE members":
+                    return id == null || action != null ? null : new String[] {"delete-member", id};
+
+                case "POST games":
+                    return id != null ? null
+                           : new String[] {"add-game", required(parameters, "name"), required(parameters, "tokenCost"),
+                                           required(parameters, "tickets")};
+
+                case "GET games":
+                    return id == null ? new String[] {"game-stats"} : null;
+
+                case "GET reports":
+                    return "tickets".equals(id) && action == null ? new String[] {"tickets-report"} : null;
+
+                case "DELETE games":
+                    return id == null || action != null ? null : new String[] {"delete-game", id};
+
+                case "POST prizes":
+                    if (id == null) {
+                        return new String[] {"add-prize", required(parameters, "name"), required(parameters, "ticketCost")};
+                    }
+                    return "redeem".equals(action) ? new String[] {"delete-prize", id, required(parameters, "memberId")} : null;
+
+                case "POST transactions":
+                    if (id != null) {
+                        return null;
+                    }
+                    return parameters.containsKey("date")
+                           ? new String[] {"add-transaction", required(parameters, "memberId"), required(parameters, "type"),
+                                           required(parameters, "amount"), parameters.get("date")}
+                           : new String[] {"add-transaction", required(parameters, "memberId"), required(parameters, "type"),
+                                           required(parameters, "amount")};
+
+                case "POST plays":
+                    return id != null ? null
+                           : new String[] {"play", required(parameters, "memberId"), required(parameters, "gameId"),
+                                           required(parameters, "score"), required(parameters, "tickets")};
+
+                case "GET stats":
+                    return id != null ? null : new String[] {"stats"};
+
+                default:
+                    return null;
             }
-        } catch (SQLException e) {
-            System.err.println("Error in redeeming prize.");
-            e.printStackTrace();
-            System.exit(-1);
         }
-    }
 
-    /*
-     * Function: redeemCoupon()
-     * Arguments: Connection dbConn - The JDBC database connection.
-     *            int memberId - The ID of the member we want to delete.
-     * Returns: None.
-     * 
-     * Pre-condition: The JDBC database connection valid and the member exists.
-     * 
-     * Post-condition: None.
-     * 
-     * Purpose: This function is responsible for prompting the user to redeem their food coupons.
-     */
-    private static void redeemCoupon(Connection dbConn, int memberId) {
-        Scanner scanner = new Scanner(System.in); // set new scanner
+        private static String required(Map<String, String> parameters, String name) {
+            String value = parameters.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing parameter " + name + ".");
+            }
+            return value;
+        }
 
-        try {
-            while (true) {
-                // Retrieve unredeemed food coupons for the member
-                PreparedStatement selectStatement = dbConn.prepareStatement(
-                        "SELECT FoodCouponID, RedeemedFood FROM FoodCoupon WHERE MemberID = ? AND Used != 1"); // get all unused food coupon of the member
-                selectStatement.setInt(1, memberId); // set memberId
-                ResultSet resultSet = selectStatement.executeQuery(); // execute query
-    
-                // go through all rows returned from query
-                if (resultSet.next()) {
-                    int foodCouponID = resultSet.getInt("FoodCouponID"); // get foodCouponID
-                    String redeemedFood = resultSet.getString("RedeemedFood"); // get redeemed food
-    
-                    System.out.println("There is an unredeemed food coupon for " + redeemedFood + ". Redeem it? (y/n/e)");
-                    String redeemChoice = scanner.nextLine().trim(); // get users redeem choice
-    
-                    // user wants to redeem food coupon
-                    if (redeemChoice.equalsIgnoreCase("y")) {
-                        // update the food coupon to mark it as used
-                        PreparedStatement updateStatement = dbConn.prepareStatement(
-                                "UPDATE FoodCoupon SET Used = 1 WHERE FoodCouponID = ?");
-                        updateStatement.setInt(1, foodCouponID);
-                        updateStatement.executeUpdate();
-    
-                        System.out.println("\nYou redeemed a food coupon for " + redeemedFood + ".");
-                    // user doesn't want to redeem food coupon
-                    } else if (redeemChoice.equalsIgnoreCase("n")) {
-                        // update food coupon to mark as used anyways for while loop execution
-                        PreparedStatement updateStatement = dbConn.prepareStatement(
-                                "UPDATE FoodCoupon SET Used = 1 WHERE FoodCouponID = ?");
-                        updateStatement.setInt(1, foodCouponID);
-                        updateStatement.executeUpdate();
-                        System.out.println("\nFood coupon for " + redeemedFood + " will not be redeemed.");
-                    // exiy
-                    } else if (redeemChoice.equalsIgnoreCase("e")) {
-                        break;
-                    // invalid choice
-                    } else {
-                        System.out.println("Invalid choice. Please enter 'y' for yes or 'n' for no or 'e' to exit.");
-                    }
-                // no unredeemed food coupons
-                } else {
-                    System.out.println("\nNo unredeemed food coupons found for this member.");
-                    break;
+        // query string and form body parameters; the body wins when both have a name
+        private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+            Map<String, String> parameters = new HashMap<>();
+            decodeForm(exchange.getRequestURI().getRawQuery(), parameters);
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            decodeForm(new String(body, StandardCharsets.UTF_8), parameters);
+            return parameters;
+        }
+
+        private static void decodeForm(String form, Map<String, String> parameters) {
+            if (form == null || form.isEmpty()) {
+                return;
+            }
+            for (String pair : form.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+                String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+                parameters.put(name, value);
+            }
+        }
+
+        // the tickets report as CSV, sent in chunks while it is written. The rows are read (and summed) before the
+        // headers go out, so those failures still get a JSON error; once the 200 is sent a failure can only cut
+        // the response short, so the exchange is closed and the client sees a truncated body
+        private static void streamTicketsReport(ConnectionPool pool, HttpExchange exchange) throws SQLException, IOException {
+            Writer[] out = {null}; // the response body, once the headers are sent
+            try (Connection dbConn = pool.borrow()) {
+                writeTicketsReport(dbConn, () -> {
+                    exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+                    exchange.sendResponseHeaders(200, 0);
+                    out[0] = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+                    return out[0];
+                });
+                out[0].close();
+            } catch (SQLException | IOException | RuntimeException e) {
+                if (out[0] == null) {
+                    throw e;
                 }
+                System.err.println("The tickets report was cut short: " + e.getMessage());
+                exchange.close();
             }
-        } catch (SQLException e) {
-            System.err.println("Error redeeming food coupons.");
-            e.printStackTrace();
+        }
+
+        private static Map<String, Object> stats(ConnectionPool pool) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("pool", pool.stats());
+            stats.put("members", members.stats());
+            stats.put("gameplayColumns", GAMEPLAY_COLUMNS ? gameplayColumns.stats() : null);
+            stats.put("metrics", metrics.snapshot());
+            synchronized (Prog4.class) {
+                stats.put("gameplay", gameplayIngestor == null ? null : gameplayIngestor.stats());
+            }
+            return stats;
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method updateGame(connection)
+    |  Interface DatabaseAction
     |
-    |  Purpose:  Allows the user to choose how to update the Game table
-    |            (Add or Delete) and calls the respective method.
+    |  Purpose:  An operation that runs on a borrowed database connection.
+    *-------------------------------------------------------------------*/
+    @FunctionalInterface
+    private interface DatabaseAction {
+        void run(Connection dbConn) throws SQLException;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method withConnection(pool, action)
     |
-    |  Pre-condition:  The JDBC database connection is valid and points to
-    |                  the target database.
+    |  Purpose:  Borrows a connection from the pool, runs the action on it
+    |            and returns the connection to the pool, even if the action
+    |            fails.
     |
-    |  Post-condition: Updates the Game table according to the user's choice.
+    |  Pre-condition:  The connection pool is open.
+    |
+    |  Post-condition: The borrowed connection is back in the pool.
     |
     |  Parameters:
-    |      dbConn -- Connection object representing the database connection.
+    |      pool -- Pool the connection is borrowed from.
+    |      action -- Operation to run on the connection.
     |
     |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static void updateGame(Connection dbConn) {
-        Scanner scanner = new Scanner(System.in);
-    
-        // Prompt user for the action they want to perform
-        System.out.println("How would you like to update the Game table? (Add/Delete)");
-        String answer = scanner.nextLine();
-    
-        // Convert the user's input to lowercase for case-insensitive comparison
-        switch (answer.toLowerCase()) {
-            // If user wants to add a game
-            case "add":
-                // Call the method to add a game
-                addGame(dbConn);
-                break;
-    
-            // If user wants to delete a game
-            case "delete":
-                // Call the method to delete a game
-                deleteGame(dbConn);
-                break;
-    
-            // If user input is not recognized
-            default:
-                System.out.println("\nPlease choose a valid action (Add/Delete)");
+    private static void withConnection(ConnectionPool pool, DatabaseAction action) {
+        try (Connection dbConn = pool.borrow()) {
+            action.run(dbConn);
+        } catch (SQLException e) {
+            System.err.println("Could not complete the operation on a pooled connection.");
+            e.printStackTrace();
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method deleteGame(Connection dbConn)
+    |  Method promptUpdate(pool)
     |
-    |  Purpose:  Allows the user to delete an existing game entry from the
-    |            Game table in the database. The method prompts the user to
-    |            input the game ID, executes an SQL DELETE statement, and
-    |            prints a success message if the operation is successful.
+    |  Purpose:  Prompts the user to decide whether to update the database tables.
     |
-    |  Pre-condition:  Connection to the database is established.
+    |  Pre-condition:  The connection pool is open.
     |
-    |  Post-condition: The specified game entry is deleted from the Game
-    |                  table in the database if the operation is successful.
+    |  Post-condition: Allows the user to choose whether to update the tables.
     |
     |  Parameters:
-    |      dbConn -- Connection object representing the database connection.
+    |      pool -- Pool each update borrows its database connection from.
     |
     |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static void deleteGame(Connection dbConn) {
-        Scanner scanner = new Scanner(System.in);
+    private static void promptUpdate(ConnectionPool pool) {
+        Scanner scanner = new Scanner(System.in); // initialize new scanner for user input
 
-        // Prompt the user to enter the ID of the game to delete
-        System.out.println("Enter the ID of the game you want to delete:");
-        int gameID = scanner.nextInt();
-        scanner.nextLine(); 
+        // keep prompting user for input until they enter 'n'
+        while (true) {
+            System.out.println("\nWould you like to update the tables? (y/n)");
+            String answer = scanner.nextLine(); // get user input
 
-        try (Statement statement = dbConn.createStatement()) {
-            // Delete gameplay records associated with the game
-            String deleteGameplayQuery = "DELETE FROM Gameplay WHERE GameID = " + gameID;
-            int gameplayDeleted = statement.executeUpdate(deleteGameplayQuery);
+            switch (answer.toLowerCase()) {
+                // update tables
+                case "y":
+                    withConnection(pool, Prog4::update);
+                    break;
 
-            // Delete the game entry itself
-            String deleteGameQuery = "DELETE FROM Game WHERE GameID = " + gameID;
-            int gameDeleted = statement.executeUpdate(deleteGameQuery);
+                // don't update tables
+                case "n":
+                    return;
 
-            // Check if the game was deleted successfully
-            if (gameDeleted > 0) {
-                // Print success message along with the number of related gameplay records deleted
-                System.out.println("Game with ID " + gameID + " deleted successfully.");
-                System.out.println("Related gameplay records deleted: " + gameplayDeleted);
-            } else {
-                // Print message if no game was found with the provided ID
-                System.out.println("No game found with ID " + gameID);
+                // invalid input
+                default:
+                    System.out.println("\nPlease choose a valid answer (y/n)");
             }
-        } catch (SQLException e) {
-            // Print any SQL exceptions that occur during deletion
-            e.printStackTrace();
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method addGame(Connection dbConn)
+    |  Method update(connection)
     |
-    |  Purpose:  Allows the user to add a new game entry to the Game table
-    |            in the database. The method prompts the user to input the
-    |            name, token cost, and tickets earned for the new game,
-    |            executes an SQL INSERT statement, and prints a success
-    |            message if the operation is successful.
+    |  Purpose:  Allows the user to choose which table to update (Member, Game, or Prize)
+    |            and calls the respective update method.
     |
-    |  Pre-condition:  Connection to the database is established.
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
     |
-    |  Post-condition: A new game entry is added to the Game table in the
-    |                  database if the operation is successful.
+    |  Post-condition: Updates the chosen table in the database.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
     |
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
+    |
     |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static void addGame(Connection dbConn) {
-        // Get the ID for the new game by incrementing the last game ID
-        int newGameID = getLastGameID(dbConn) + 1;
-        Scanner scanner = new Scanner(System.in);
-    
-        // Prompt the user to enter the name of the new game
-        System.out.println("Enter the name of the new game:");
-        String name = scanner.nextLine();
-    
-        // Prompt the user to enter the token cost of the new game
-        System.out.println("Enter the token cost of the new game:");
-        int tokenCost = scanner.nextInt();
-        scanner.nextLine(); // Consume newline character
-    
-        // Prompt the user to enter the number of tickets earned by playing the new game
-        System.out.println("Enter the number of tickets earned by playing the new game:");
-        int tickets = scanner.nextInt();
-        scanner.nextLine(); // Consume newline character
-    
-        try (Statement statement = dbConn.createStatement()) {
-            // Construct the SQL INSERT query using the provided information
-            String query = String.format("INSERT INTO Game (GameID, Name, TokenCost, Tickets) VALUES (%d, '%s', %d, %d)", newGameID, name, tokenCost, tickets);
-            // Execute the SQL INSERT statement
-            int rowsAffected = statement.executeUpdate(query);
-            // Check if the insertion was successful and print appropriate message
-            if (rowsAffected > 0) {
-                System.out.println("New game added successfully.");
-            } else {
-                System.out.println("Failed to add new game.");
-            }
-        } catch (SQLException e) {
-            // Print any SQL exceptions that occur during insertion
-            e.printStackTrace();
+    private static void update(Connection dbConn) throws SQLException {
+        Scanner scanner = new Scanner(System.in); // initialize new scanner for user input
+        System.out.println("Which table would you like to update? (Member/Game/Prize)");
+        String answer = scanner.nextLine(); // get user input
+
+        switch (answer.toLowerCase()) {
+            // update member table
+            case "member":
+                updateMember(dbConn);
+                break;
+
+            // update game table
+            case "game":
+                updateGame(dbConn);
+                break;
+
+            // update prize table
+            case "prize":
+                updatePrize(dbConn);
+                break;
+
+            // invalid input
+            default:
+                System.out.println("\nPlease choose a valid table (Member/Game/Prize)");
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method updatePrize(connection)
+    |  Method updateMember(connection)
     |
-    |  Purpose:  Provides options to add, update, or delete prize information
-    |            in the Prize table of the database.
+    |  Purpose:  Allows the user to choose how to update the Member table
+    |            (Add, Update, or Delete) and calls the respective method.
     |
-    |  Pre-condition:  Connection to the database is established.
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
     |
-    |  Post-condition: Prize information is added, updated, or deleted in the
-    |                  Prize table based on user input.
+    |  Post-condition: Updates the Member table according to the user's choice.
     |
     |  Parameters:
-    |      connection -- Connection object representing the database connection.
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
     |
     |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static void updatePrize(Connection dbConn) {
-        // Create a scanner object to read user input
-        Scanner scanner = new Scanner(System.in);
-        
-        // Prompt the user to specify the action they want to perform on the Prize table
-        System.out.println("How would you like to update the Prize table? (Add/Delete)");
-        String answer = scanner.nextLine();
-    
-        // Switch statement to handle different actions based on user input
+    private static void updateMember(Connection dbConn) throws SQLException {
+        Scanner scanner = new Scanner(System.in); // initialize new scanner for user input
+        System.out.println("How would you like to update the Member table? (Add/Update/Delete)"); 
+        String answer = scanner.nextLine(); // ger user input
+
         switch (answer.toLowerCase()) {
-            // If the user chooses to add a prize
+            // add member
             case "add":
-                // Call the addPrize method to add a new prize
-                addPrize(dbConn);
+                addMember(dbConn);
                 break;
-    
-            // If the user chooses to delete a prize
+
+            // edit member
+            case "update":
+                editMember(dbConn);
+                break;
+
+            // delete member
             case "delete":
-                // Call the deletePrize method to delete an existing prize
-                deletePrize(dbConn);
+                deleteMember(dbConn);
                 break;
-    
-            // If the user inputs an invalid action
+
+            // invalid input
             default:
-                // Prompt the user to choose a valid action
-                System.out.println("\nPlease choose a valid action (Add/Delete)");
+                System.out.println("\nPlease choose a valid option (Add/Update/Delete)");
+                break;
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method deletePrize(Connection dbConn)
+    |  Method addMember(connection)
     |
-    |  Purpose:  Allows the user to delete an existing prize entry from the
-    |            Prize table in the database. The method prompts the user to
-    |            input the prize ID, executes an SQL DELETE statement, and
-    |            prints a success message if the operation is successful.
+    |  Purpose:  Adds a new member to the Member table in the database.
     |
-    |  Pre-condition:  Connection to the database is established.
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
     |
-    |  Post-condition: The specified prize entry is deleted from the Prize
-    |                  table in the database if the operation is successful.
+    |  Post-condition: Inserts a new row into the Member table with the
+    |                  provided member details.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
     |
-    |  Returns:  None.
-    *-------------------------------------------------------------------*/
-    private static void deletePrize(Connection dbConn) {
-        // Create a scanner object to read user input
-        Scanner scanner = new Scanner(System.in);
-        
-        // Prompt the user to enter the ID of the prize they want to delete
-        System.out.println("Enter the ID of the prize you want to delete:");
-        int prizeID = scanner.nextInt();
-    
-        // Prompt the user to enter the ID of the member who wants to redeem the prize
-        System.out.println("Enter the ID of the member who wants to redeem this prize:");
-        int memberID = scanner.nextInt();
-    
-        try (Statement statement = dbConn.createStatement()) {
-            // Check if the prize exists in the Prize table
-            ResultSet resultSet = statement.executeQuery("SELECT * FROM Prize WHERE PrizeID = " + prizeID);
-            if (resultSet.next()) {
-                // Get the ticket cost of the prize
-                int ticketCost = resultSet.getInt("TicketCost");
-    
-                // Check if the member exists and has enough tickets to redeem the prize
-                ResultSet memberResultSet = statement.executeQuery("SELECT TotalTickets FROM Member WHERE MemberID = " + memberID);
-                if (memberResultSet.next()) {
-                    int totalTickets = memberResultSet.getInt("TotalTickets");
-                    // If the member has enough tickets to redeem the prize
-                    if (totalTickets >= ticketCost) {
-                        // Update the member's total tickets after redeeming the prize
-                        int newTotalTickets = totalTickets - ticketCost;
-                        String updateQuery = "UPDATE Member SET TotalTickets = " + newTotalTickets + " WHERE MemberID = " + memberID;
-                        statement.executeUpdate(updateQuery);
-    
-                        // Delete the prize from the Prize table
-                        String deleteQuery = "DELETE FROM Prize WHERE PrizeID = " + prizeID;
-                        int rowsAffected = statement.executeUpdate(deleteQuery);
-                        if (rowsAffected > 0) {
-                            System.out.println("Prize with ID " + prizeID + " deleted successfully.");
-                        } else {
-                            System.out.println("No prize found with ID " + prizeID);
-                        }
-                    } else {
-                        System.out.println("Member with ID " + memberID + " does not have enough tickets to redeem this prize.");
-                    }
-                } else {
-                    System.out.println("Member with ID " + memberID + " does not exist.");
-                }
-            } else {
-                System.out.println("No prize found with ID " + prizeID);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /*---------------------------------------------------------------------
-    |  Method addPrize(Connection dbConn)
-    |
-    |  Purpose:  Allows the user to add a new prize entry to the Prize table
-    |            in the database. The method prompts the user to input the
-    |            name and ticket cost for the new prize, executes an SQL INSERT
-    |            statement, and prints a success message if the operation is
-    |            successful.
-    |
-    |  Pre-condition:  Connection to the database is established.
-    |
-    |  Post-condition: A new prize entry is added to the Prize table in the
-    |                  database if the operation is successful.
-    |
-    |  Parameters:
-    |      dbConn -- Connection object representing the database connection.
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
     |
     |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static void addPrize(Connection dbConn) {
-        // Get the ID for the new prize by incrementing the last prize ID in the database
-        int newPrizeID = getLastPrizeID(dbConn) + 1;
-        
-        // Create a scanner object to read user input
-        Scanner scanner = new Scanner(System.in);
-        
-        // Prompt the user to enter the name of the new prize
-        System.out.println("Enter the name of the new prize:");
-        String newName = scanner.nextLine();
-        
-        // Prompt the user to enter the ticket cost for the new prize
-        System.out.println("Enter the ticket cost for the new prize:");
-        int newTicketCost = scanner.nextInt();
-        
-        try (PreparedStatement preparedStatement = dbConn.prepareStatement("INSERT INTO Prize (PrizeID, Name, TicketCost) VALUES (?, ?, ?)")) {
-            // Set the parameters for the prepared statement
-            preparedStatement.setInt(1, newPrizeID);
-            preparedStatement.setString(2, newName);
-            preparedStatement.setInt(3, newTicketCost);
-            
-            // Execute the prepared statement and get the number of rows affected
-            int rowsAffected = preparedStatement.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("New prize added successfully.");
-            } else {
-                System.out.println("Failed to add new prize.");
-            }
+    private static void addMember(Connection dbConn) {
+        Scanner scanner = new Scanner(System.in); // initialize scanner for user input
+
+        System.out.println("Enter the new member's first name:");
+        String fName = scanner.nextLine(); // ger first name
+
+        System.out.println("Enter the new member's last name:");
+        String lName = scanner.nextLine(); // get last name
+
+        System.out.println("Enter the new member's phone number:");
+        String phoneNum = scanner.nextLine(); // get phone number
+
+        System.out.println("Enter the new member's address:");
+        String address = scanner.nextLine(); // get address
+
+        try {
+            int newMemberID = insertMember(dbConn, fName, lName, phoneNum, address); // add the member
+            System.out.println("\nSuccessfully added new member " + fName + " " + lName + " with ID " + newMemberID);
         } catch (SQLException e) {
+            System.err.println("\nCould not add new member.");
             e.printStackTrace();
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method getLastMemberID(connection)
+    |  Method insertMember(connection, fName, lName, phoneNum, address)
     |
-    |  Purpose:  Retrieves the last MemberID from the Member table in the
-    |            database.
+    |  Purpose:  Inserts a new member with the given details and default
+    |            account values into the Member table. This is the part of
+    |            addMember that does not prompt, shared with script mode.
     |
     |  Pre-condition:  The JDBC database connection is valid and points to
     |                  the target database.
     |
-    |  Post-condition: Returns the last MemberID from the Member table.
+    |  Post-condition: Inserts a new row into the Member table.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
+    |      fName -- First name of the new member.
+    |      lName -- Last name of the new member.
+    |      phoneNum -- Phone number of the new member.
+    |      address -- Address of the new member.
+    |
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
     |
-    |  Returns:  int -- The last MemberID from the Member table.
+    |  Returns:  int -- The MemberID of the new member.
     *-------------------------------------------------------------------*/
-    private static int getLastMemberID(Connection dbConn) {
-        try {
-            Statement statement = dbConn.createStatement(); // create statement
-            ResultSet tables = statement.executeQuery("SELECT MAX(MemberID) AS LastMemberID FROM Member"); // execute select statement
-
-            // if row was returned
-            if (tables.next()) {
-                int maxMemberID = tables.getInt("LastMemberID"); // getting last memberID
-                tables.close(); // close tables
-                statement.close(); // close statement
-                return maxMemberID; // return last ID
-            // no row returned
-            } else {
-                tables.close(); // close tables
-                statement.close(); // close statement
-                return 0; // return default ID
+    private static int insertMember(Connection dbConn, String fName, String lName, String phoneNum, String address) throws SQLException {
+        return metrics.time("addMember", () -> {
+            int newMemberID = nextId(dbConn, "Member"); // get new member id to add
+            String insert = "INSERT INTO Member VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"; // insert statement for member table
+
+            try (PreparedStatement statement = dbConn.prepareStatement(insert)) { // prepare insert statement
+                // set all attributes of member
+                statement.setInt(1, newMemberID);
+                statement.setString(2, fName);
+                statement.setString(3, lName);
+                statement.setString(4, phoneNum);
+                statement.setString(5, address);
+                statement.setInt(6, 0);
+                statement.setDouble(7, 0.00);
+                statement.setString(8, " ");
+                statement.setInt(9, 1);
+                statement.setDate(10, java.sql.Date.valueOf("2024-04-29"));
+                statement.setInt(11, 0);
+
+                // execute update
+                statement.executeUpdate();
             }
-        } catch (SQLException e) {
-            System.err.println("Couldn't get last member ID.");
-            e.printStackTrace();
-            return 0;
-        }
+
+            // write the new profile through to the member cache
+            Map<String, Object> member = new LinkedHashMap<>();
+            member.put("memberId", newMemberID);
+            member.put("firstName", fName);
+            member.put("lastName", lName);
+            member.put("telephoneNum", phoneNum);
+            member.put("address", address);
+            member.put("gameTokens", 0);
+            member.put("totalSpending", 0.0);
+            member.put("membershipTier", " ");
+            member.put("visitCount", 1);
+            member.put("lastVisitDate", "2024-04-29");
+            member.put("totalTickets", 0);
+            members.put(member);
+
+            return newMemberID;
+        });
     }
 
     /*---------------------------------------------------------------------
-    |  Method getLastGameID(Connection dbConn)
+    |  Method editMember(connection)
     |
-    |  Purpose:  Retrieves the maximum GameID from the Game table in the
-    |            database, allowing the insertion of a new game with an
-    |            incremented ID. Returns the last GameID value if it exists
-    |            or 0 if no game records are found in the database.
+    |  Purpose:  Allows the user to edit the details of an existing member
+    |            in the Member table of the database.
     |
-    |  Pre-condition:  Connection to the database is established.
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
     |
-    |  Post-condition: Returns the last GameID value from the Game table
-    |                  or 0 if no records are found.
+    |  Post-condition: Updates the details of the specified member in the
+    |                  Member table according to the user's input.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
     |
-    |  Returns:  The last GameID value from the Game table or 0 if no records
-    |            are found.
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
+    |
+    |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static int getLastGameID(Connection dbConn) {
+    private static void editMember(Connection dbConn) throws SQLException {
+        Scanner scanner = new Scanner(System.in); // initialize new scanner for user input
+
+        System.out.println("Enter the ID of the member you want to update:");
+        int memberId = scanner.nextInt(); // get memberID
+        scanner.nextLine();
+
+        // if member doesn't exist within table
+        if (!memberExists(dbConn, memberId)) {
+            System.out.println("Member with ID " + memberId + " does not exist.");
+            return;
+        }
+
+        System.out.println("What would you like to update for this member? (Phone number/Address/Both)");
+        String toChange = scanner.nextLine(); // get user input
+
+        String newPhoneNumber = null; // initialize new phone number
+        String newAddress = null; // initialize new address
+
+        switch (toChange.toLowerCase()) {
+            // changing phone number
+            case "phone number":
+                System.out.println("Enter the new phone number (###-###-####):");
+                newPhoneNumber = scanner.nextLine(); // get new phone number
+                break;
+
+            // changing address
+            case "address":
+                System.out.println("Enter the new address:");
+                newAddress = scanner.nextLine(); // get new address
+                break;
+
+            // changing both phone number and address
+            case "both":
+                System.out.println("Enter the new phone number (###-###-####):");
+                newPhoneNumber = scanner.nextLine(); // get new phone number
+                System.out.println("Enter the new address:");
+                newAddress = scanner.nextLine(); // get new address
+                break;
+
+            // invalid input
+            default:
+                System.out.println("\nPlease choose a valid option (Phone number/Address/Both)");
+        }
+
+        // no updates to be made
+        if (newPhoneNumber == null && newAddress == null) {
+            // If no updates are being made, just return
+            System.out.println("No updates to perform.");
+            return;
+        }
+
         try {
-            // Create a statement object to execute SQL queries
-            Statement statement = dbConn.createStatement();
-            
-            // Execute a query to get the maximum GameID from the Game table
-            ResultSet resultSet = statement.executeQuery("SELECT MAX(GameID) AS LastGameID FROM Game");
-            
-            // Check if the query returned any results
-            if (resultSet.next()) {
-                // Get the maximum GameID from the result set
-                int maxGameID = resultSet.getInt("LastGameID");
-                
-                // Close the result set and statement to release resources
-                resultSet.close();
-                statement.close();
-                
-                // Return the maximum GameID
-                return maxGameID;
-            } else {
-                // If no result is found, close the result set and statement and return 0
-                resultSet.close();
-                statement.close();
-                return 0;
-            }
+            int updatedRow = updateMemberContact(dbConn, memberId, newPhoneNumber, newAddress); // execute update
+            System.out.println("\n" + updatedRow + " row(s) updated successfully.");
         } catch (SQLException e) {
-            // Print an error message if an SQL exception occurs
-            System.err.println("Couldn't get last game ID.");
+            System.out.println("\nCould not update row(s).");
             e.printStackTrace();
-            return 0;
+            System.exit(-1);
         }
     }
 
     /*---------------------------------------------------------------------
-    |  Method getLastPrizeID(Connection dbConn)
+    |  Method updateMemberContact(connection, memberId, newPhoneNumber, newAddress)
     |
-    |  Purpose:  Retrieves the maximum PrizeID from the Prize table in the
-    |            database, allowing the insertion of a new prize with an
-    |            incremented ID. Returns the last PrizeID value if it exists
-    |            or 0 if no prize records are found in the database.
+    |  Purpose:  Updates the phone number and/or address of a member. This is
+    |            the part of editMember that does not prompt, shared with
+    |            script mode. The values are bound as parameters rather than
+    |            concatenated into the SQL.
     |
-    |  Pre-condition:  Connection to the database is established.
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
     |
-    |  Post-condition: Returns the last PrizeID value from the Prize table
-    |                  or 0 if no records are found.
+    |  Post-condition: The member's contact details are updated.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
+    |      memberId -- The ID of the member to update.
+    |      newPhoneNumber -- The new phone number, or null to keep the old one.
+    |      newAddress -- The new address, or null to keep the old one.
     |
-    |  Returns:  The last PrizeID value from the Prize table or 0 if no records
-    |            are found.
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
+    |
+    |  Returns:  int -- Number of rows updated.
     *-------------------------------------------------------------------*/
-    private static int getLastPrizeID(Connection dbConn) {
-        try {
-            // Create a statement object to execute SQL queries
-            Statement statement = dbConn.createStatement();
-            
-            // Execute a query to get the maximum PrizeID from the Prize table
-            ResultSet resultSet = statement.executeQuery("SELECT MAX(PrizeID) AS LastPrizeID FROM Prize");
-            
-            // Check if the query returned any results
-            if (resultSet.next()) {
-                // Get the maximum PrizeID from the result set
-                int maxPrizeID = resultSet.getInt("LastPrizeID");
-                
-                // Close the result set and statement to release resources
-                resultSet.close();
-                statement.close();
-                
-                // Return the maximum PrizeID
-                return maxPrizeID;
-            } else {
-                // If no result is found, close the result set and statement and return 0
-                resultSet.close();
-                statement.close();
+    private static int updateMemberContact(Connection dbConn, int memberId, String newPhoneNumber, String newAddress) throws SQLException {
+        return metrics.time("editMember", () -> {
+            // no updates to be made
+            if (newPhoneNumber == null && newAddress == null) {
                 return 0;
             }
-        } catch (SQLException e) {
-            // Print an error message if an SQL exception occurs
-            System.err.println("Couldn't get last prize ID.");
-            e.printStackTrace();
-            return 0;
-        }
+
+            String update = "UPDATE Member SET "; // initialize update statement
+            // phone number needs to be updated
+            if (newPhoneNumber != null) {
+                update += "TelephoneNum = ?";
+            }
+
+            // address needs to be updates
+            if (newAddress != null) {
+                if (newPhoneNumber != null) {
+                    update += ", ";
+                }
+
+                update += "Address = ?";
+            }
+            update += " WHERE MemberID = ?";
+
+            try (PreparedStatement statement = dbConn.prepareStatement(update)) { // prepare update statement
+                int index = 1; // next parameter to set
+                if (newPhoneNumber != null) {
+                    statement.setString(index++, newPhoneNumber);
+                }
+                if (newAddress != null) {
+                    statement.setString(index++, newAddress);
+                }
+                statement.setInt(index, memberId); // set memberID
+                int updated = statement.executeUpdate(); // execute update
+                if (updated > 0) {
+                    members.updateContact(memberId, newPhoneNumber, newAddress); // write through to the member cache
+                }
+                return updated;
+            }
+        });
     }
 
     /*---------------------------------------------------------------------
-    |  Method answerQueries(connection)
+    |  Method memberExists(connection, memberId)
     |
-    |  Purpose:  Continually prompts the user for input on queries and
-    |            executes the corresponding query method based on the user's
-    |            choice.
+    |  Purpose:  Checks whether a member with the given ID exists in the
+    |            Member table of the database.
     |
     |  Pre-condition:  The JDBC database connection is valid and points to
     |                  the target database.
     |
-    |  Post-condition: Executes the specified query method or exits the 
-    |                  program based on the user's choice.
+    |  Post-condition: Returns true if the member exists; otherwise, false.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
+    |      memberId -- The ID of the member to check for existence.
     |
-    |  Returns:  None.
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
+    |
+    |  Returns:  boolean -- True if the member exists; otherwise, false.
     *-------------------------------------------------------------------*/
-    private static void answerQueries(Connection dbConn) {
-        Scanner scanner = new Scanner(System.in);
-
-        // continually prompt user for input on queries
-        while (true) {
-            // printing out menu of queries to choose from
-            System.out.println("\nQueries:");
-            System.out.println("(a) List all games in the arcade and the names of the members who " + 
-                                "have the current high scores");
-            System.out.println("(b) Give the names and membership information of all members who " + 
-                                "have spent at least $100 on tokens in the past month");
-            System.out.println("(c) For a given member, list all arcade rewards that they can purchase " +  
-                                "with their tickets");
-            System.out.println("(d) Get total number of tickets for a given gameID"); 
-            System.out.println("(u) Update"); 
-            System.out.println("(e) Exit\n");
-
-            // prompting input from user
-            System.out.println("Enter your query of choice (a, b, c, d, u or e)");
-            String query = scanner.nextLine();
-
-            switch (query.toLowerCase()) {
-                // call queryA() for query a
-                case "a":
-                    queryA(dbConn);
-                    break;
-
-                // call queryB() for query b
-                case "b":
-                    queryB(dbConn);
-                    break;
-
-                // call queryC() for query c
-                case "c":
-                    queryC(dbConn);
-                    break;
-
-                // call queryD() for query d
-                case "d":
-                    queryD(dbConn);
-                    break;
-
-                case "u":
-                    try {
-                        update(dbConn);
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
-                    break;
-                // exit if user chose e
-                case "e":
-                    scanner.close();
-                    System.out.println("\n***Exiting***");
-                    System.exit(0);
-
-                // invalid input
-                default:
-                    System.out.println("\nPlease choose a valid query (a, b, c, d, u or e)");
-            }
-        }
+    private static boolean memberExists(Connection dbConn, int memberId) throws SQLException {
+        return members.get(dbConn, memberId) != null; // served from the member cache when it can be
     }
 
     /*---------------------------------------------------------------------
-    |  Method queryA(connection)
-    |
-    |  Purpose:  Retrieves all games in the arcade along with the names of
-    |            members who have the current high scores for each game.
-    |            The method constructs and executes an SQL query to fetch
-    |            this information from the database and prints the results.
-    |
-    |  Pre-condition:  Connection to the database is established.
+    |  Method getMember(connection, memberId)
     |
-    |  Post-condition: List of games and high scorers is displayed.
+    |  Purpose:  Returns a member's profile, from the member cache if it is
+    |            there and from the Member table otherwise.
     |
     |  Parameters:
-    |      connection -- Connection object representing the database connection.
+    |      dbConn -- Connection object representing the database connection.
+    |      memberId -- The ID of the member.
     |
-    |  Returns:  None.
+    |  Throws:
+    |      SQLException -- If the member has to be read and the read fails.
+    |
+    |  Returns:  Map<String, Object> -- A copy of the profile with the keys
+    |            of readMember, or null if there is no such member.
     *-------------------------------------------------------------------*/
-    private static void queryA(Connection dbConn) {
-        try (Statement statement = dbConn.createStatement()) {
-            // SQL query to select game name, member first name, member last name, and score from the database
-            String query = "SELECT Game.Name, Member.Fname, Member.Lname, Gameplay.Score " +
-                           "FROM Game, Member, Gameplay " +
-                           "WHERE Game.GameID = Gameplay.GameID AND Member.MemberID = Gameplay.MemberID " +
-                           "AND Gameplay.Score = (SELECT MAX(Score) FROM Gameplay WHERE Gameplay.GameID = Game.GameID)";
-            
-            // Execute the query and get the result set
-            ResultSet rs = statement.executeQuery(query);
-    
-            // Print the header for the result
-            System.out.println("\nGames in arcade and current high scores:");
-            System.out.println("--------------------------------------------");
-    
-            // Iterate over the result set and print each row
-            while (rs.next()) {
-                // Print the game name, member first name, member last name, and score
-                System.out.println("Game: " + rs.getString("Name") + " High Score: " + rs.getString("Fname") + " " +
-                                   rs.getString("Lname") + " with a score of " + rs.getInt("Score"));
-            }
-            // Print the footer for the result
-            System.out.println("--------------------------------------------");
-        } catch (SQLException e) {
-            // Print any SQL exceptions that occur
-            e.printStackTrace();
-        }
+    private static Map<String, Object> getMember(Connection dbConn, int memberId) throws SQLException {
+        return metrics.time("getMember", () -> {
+            Map<String, Object> member = members.get(dbConn, memberId);
+            return member == null ? null : new LinkedHashMap<>(member);
+        });
     }
 
     /*---------------------------------------------------------------------
-    |  Method queryB(connection)
+    |  Method deleteMember(connection)
     |
-    |  Purpose:  Retrieves the names and membership information of all members
-    |            who have spent at least $100 on tokens in the past month.
-    |            The method constructs and executes an SQL query to fetch
-    |            this information from the database and prints the results.
+    |  Purpose:  Deletes a member from the Member table in the database
+    |            based on the provided Member ID.
     |
     |  Pre-condition:  Connection to the database is established.
     |
-    |  Post-condition: List of qualifying members and their information is displayed.
+    |  Post-condition: The specified member is deleted from the Member table
+    |                  if it exists.
     |
     |  Parameters:
     |      connection -- Connection object representing the database connection.
     |
     |  Returns:  None.
     *-------------------------------------------------------------------*/
-    private static void queryB(Connection dbConn) {
-        try (Statement statement = dbConn.createStatement()) {
-            // SQL query to select member information of members who have spent at least $100 on tokens in the past month
-            String query = "SELECT MemberID, Fname, Lname, TelephoneNum, Address, GameTokens, TotalSpending, " +
-                           "MembershipTier, VisitCount, LastVisitDate, TotalTickets " +
-                           "FROM Member " +
-                           "WHERE TotalSpending >= 100.00";
-    
-            // Execute the query and get the result set
-            ResultSet resultSet = statement.executeQuery(query);
-    
-            // Print the header for the result
-            System.out.println("\nNames and membership information of all members who have spent at least $100 on tokens in the past month:");
-            System.out.println("------------------------------------------------------------");
-    
-            // Iterate over the result set and print each member's information
-            while (resultSet.next()) {
-                // Retrieve member information from the result set
-                int memberID = resultSet.getInt("MemberID");
-                String firstName = resultSet.getString("Fname");
-                String lastName = resultSet.getString("Lname");
-                String telephoneNum = resultSet.getString("TelephoneNum");
-                String address = resultSet.getString("Address");
-                int gameTokens = resultSet.getInt("GameTokens");
-                double totalSpending = resultSet.getDouble("TotalSpending");
-                String membershipTier = resultSet.getString("MembershipTier");
-                int visitCount = resultSet.getInt("VisitCount");
-                String lastVisitDate = resultSet.getString("LastVisitDate");
-                int totalTickets = resultSet.getInt("TotalTickets");
-    
-                // Print member information
-                System.out.println("Member ID: " + memberID);
-                System.out.println("Name: " + firstName + " " + lastName);
-                System.out.println("Telephone Number: " + telephoneNum);
-                System.out.println("Address: " + address);
-                System.out.println("Game Tokens: " + gameTokens);
-                System.out.println("Total Spending: $" + totalSpending);
-                System.out.println("Membership Tier: " + membershipTier);
-                System.out.println("Visit Count: " + visitCount);
-                System.out.println("Last Visit Date: " + lastVisitDate);
-                System.out.println("Total Tickets: " + totalTickets);
-                System.out.println("--------------------------------------------");
-            }
+    private static void deleteMember(Connection dbConn) throws SQLException {
+        Scanner scanner = new Scanner(System.in); // initiialize scanner for user input
     
-            // Print the footer for the result
-            System.out.println("--------------------------------------------");
-        } catch (SQLException e) {
-            // Print any SQL exceptions that occur
-            e.printStackTrace();
+        System.out.println("Enter the Member ID of the member you want to delete:");
+        int memberId = scanner.nextInt(); // get memberID
+        scanner.nextLine(); // consume newline character
+
+        // member doesn't exist within database
+        if (!memberExists(dbConn, memberId)) {
+            System.out.println("\nThere is no member in the database with the MemberID " + memberId);
+            return;
         }
-    }
+    
+        try {
+            int ticketCount = (Integer) getMember(dbConn, memberId).get("totalTickets"); // number of tickets the member has
 
-    /*---------------------------------------------------------------------
-    |  Method queryC(connection)
-    |
-    |  Purpose:  Retrieves available rewards for a given member ID based
-    |            on the total tickets earned by the member.
+            // tickets available
+            if (ticketCount > 0) {
+                System.out.println("\nThere are still " + ticketCount + " remaining tickets. Exchange them for a prize? (y/n/e)");
+                String exchangeChoice = scanner.nextLine().trim(); // get exchange choice
+
+                // user wants to exchange tickets
+                if (exchangeChoice.equalsIgnoreCase("y")) {
+                    exchangeTickets(dbConn, memberId, ticketCount);
+                // user doesn't want to exchange tickers
+                } else if (exchangeChoice.equalsIgnoreCase("n")) {
+                    System.out.println("\nTickets will not be exchanged for a prize.");
+                // user wants to exit
+                } else if (exchangeChoice.equalsIgnoreCase("e")) {
+                    return;
+                // invalid input
+                } else {
+                    System.out.println("Invalid choice. Please enter 'y' for yes or 'n' for no or 'e' to exit.");
+                }
+            }
+
+            redeemCoupon(dbConn, memberId); // redeeming food coupons
+
+            Map<String, Integer> removed = removeMember(dbConn, memberId); // rows deleted from each table
+
+            // if there were associated records
+            if (removed.get("Gameplay") > 0) {
+                System.out.println("This member had " + removed.get("Gameplay") + " associated record(s) in Gameplay table. Deleted Gameplay records.");
+            }
+            if (removed.get("FoodCoupon") > 0) {
+                System.out.println("This member had " + removed.get("FoodCoupon") + " associated record(s) in FoodCoupon table. Deleted FoodCoupon records.");
+            }
+            if (removed.get("Transaction") > 0) {
+                System.out.println("This member had " + removed.get("Transaction") + " associated record(s) in Transaction table. Deleted Transaction records.");
+            }
+
+            // if there were rows returned
+            if (removed.get("Member") > 0) {
+                System.out.println("\nMember with ID " + memberId + " deleted successfully along with associated records.");
+            } else {
+                System.out.println("\nNo member found with ID " + memberId + ".");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method removeMember(connection, memberId)
+    |
+    |  Purpose:  Deletes a member and their Gameplay, FoodCoupon and
+    |            Transaction records in one transaction. This is the part of
+    |            deleteMember that does not prompt, shared with script mode.
     |
     |  Pre-condition:  The JDBC database connection is valid and points to
     |                  the target database.
     |
-    |  Post-condition: Displays available rewards for the specified member
-    |                  ID along with their ticket costs.
+    |  Post-condition: The member and their associated records are deleted.
     |
     |  Parameters:
     |      dbConn -- Connection object representing the database connection.
+    |      memberId -- The ID of the member to delete.
     |
-    |  Returns:  None.
+    |  Throws:
+    |      SQLException -- If an SQL exception occurs during database operations.
+    |
+    |  Returns:  Map<String, Integer> -- Rows deleted from the Gameplay,
+    |            FoodCoupon, Transaction and Member tables.
     *-------------------------------------------------------------------*/
-    private static void queryC(Connection dbConn) {
-        Scanner scanner = new Scanner(System.in); // initialize scanner for user input
-        System.out.println("Enter member ID to view available rewards:");
-        int memberId = scanner.nextInt(); // get memberID
+    private static Map<String, Integer> removeMember(Connection dbConn, int memberId) throws SQLException {
+        return removeMembers(dbConn, new int[] {memberId});
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method removeMembers(connection, memberIds)
+    |
+    |  Purpose:  Deletes many members and all of their Gameplay, FoodCoupon,
+    |            Transaction and GameTickets rows in one transaction (see
+    |            inTransaction). The IDs go in IN lists of up to 1000 (see
+    |            executeInChunks), one DELETE per table per chunk, so removing
+    |            thousands of members takes a handful of statements instead
+    |            of several per member. The in-memory caches forget the
+    |            members only once the deletes are committed (see
+    |            afterCommit), which is after the caller's commit when the
+    |            deletes join its transaction.
+    |
+    |  Pre-condition:  The JDBC database connection is valid.
+    |
+    |  Post-condition: The members and their associated records are deleted.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      memberIds -- The IDs of the members to delete.
+    |
+    |  Throws:
+    |      SQLException -- If a delete fails; nothing is deleted then.
+    |
+    |  Returns:  Map<String, Integer> -- Rows deleted from the Gameplay,
+    |            FoodCoupon, Transaction and Member tables.
+    *-------------------------------------------------------------------*/
+    private static Map<String, Integer> removeMembers(Connection dbConn, int[] memberIds) throws SQLException {
+        return metrics.time("deleteMembers", () -> {
+            // children first, so no foreign key is left pointing at a deleted member
+            String[] tables = {"GameTickets", "Gameplay", "FoodCoupon", "Transaction", "Member"};
+            Map<String, Integer> removed = inTransaction(dbConn, () -> {
+                Map<String, Integer> counts = new LinkedHashMap<>(); // rows deleted from each table
+                for (String table : tables) {
+                    counts.put(table, executeInChunks(dbConn, "DELETE FROM " + table + " WHERE MemberID IN", new int[0], memberIds));
+                }
+                return counts;
+            });
+            removed.remove("GameTickets"); // derived totals, not reported
 
+            IntHashSet deleted = new IntHashSet(); // members the caches must forget
+            for (int memberId : memberIds) {
+                deleted.add(memberId);
+            }
+            afterCommit(dbConn, () -> {
+                leaderboard.removeMembers(deleted);
+                tokenSpending.removeMembers(deleted);
+                members.removeAll(deleted);
+                gameplayColumns.removeMembers(deleted);
+            });
+            return removed;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Interface TransactionWork
+    |
+    |  Purpose:  Database work that runs inside inTransaction and returns a
+    |            result.
+    *-------------------------------------------------------------------*/
+    @FunctionalInterface
+    private interface TransactionWork<T> {
+        T run() throws SQLException;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method inTransaction(connection, work)
+    |
+    |  Purpose:  Runs the work as one transaction. If the connection is in
+    |            auto-commit mode the work is committed when it returns and
+    |            rolled back if it throws. If a transaction is already open
+    |            the work joins it and the caller commits. Actions the work
+    |            hands to afterCommit run after the commit of the outermost
+    |            inTransaction and are dropped on rollback.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the work runs on.
+    |      work -- The statements to run.
+    |
+    |  Throws:
+    |      SQLException -- If the work fails; its changes are rolled back.
+    |
+    |  Returns:  T -- The result of the work.
+    *-------------------------------------------------------------------*/
+    private static <T> T inTransaction(Connection dbConn, TransactionWork<T> work) throws SQLException {
+        boolean autoCommit = dbConn.getAutoCommit(); // whether this method owns the transaction
+        if (!autoCommit) {
+            return work.run();
+        }
+
+        List<Runnable> actions = new ArrayList<>(); // cache updates waiting on the commit
+        commitActions.put(dbConn, actions);
+        dbConn.setAutoCommit(false);
+        T result;
         try {
-            Statement statement = dbConn.createStatement(); // create statement
+            result = work.run();
+            dbConn.commit();
+        } catch (SQLException | RuntimeException e) {
+            dbConn.rollback();
+            throw e;
+        } finally {
+            commitActions.remove(dbConn);
+            dbConn.setAutoCommit(true);
+        }
 
-            String query = "SELECT Prize.Name, Prize.TicketCost FROM Prize WHERE Prize.TicketCost <= " + 
-                            "(SELECT Member.TotalTickets FROM Member WHERE Member.MemberID = " + memberId + ")"; // select statement
+        for (Runnable action : actions) {
+            action.run();
+        }
+        return result;
+    }
 
-            ResultSet tables = statement.executeQuery(query); /// execute select statement
-            System.out.println("\nAvailable rewards for member ID " + memberId + ":");
-            System.out.println("-----------------------------------------------");
-            // iterate through every row returned
-            while (tables.next()) {
-                String prizeName = tables.getString("Name"); // get prize name
-                int ticketCost = tables.getInt("TicketCost"); // ge tticket cost
+    /*---------------------------------------------------------------------
+    |  Method afterCommit(connection, action)
+    |
+    |  Purpose:  Runs an update of the in-memory caches once the changes it
+    |            mirrors are committed. In auto-commit mode they already
+    |            are, so the action runs at once. Inside inTransaction it
+    |            waits for that transaction's commit, and never runs if the
+    |            transaction rolls back, so no cache shows rows that another
+    |            connection cannot see yet or that never existed.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the changes were made on.
+    |      action -- The cache update.
+    |
+    |  Throws:
+    |      SQLException -- If the connection's commit mode cannot be read.
+    |      IllegalStateException -- If the caller opened the transaction
+    |                               itself instead of through inTransaction,
+    |                               so there is no commit to wait for.
+    *-------------------------------------------------------------------*/
+    private static void afterCommit(Connection dbConn, Runnable action) throws SQLException {
+        if (dbConn.getAutoCommit()) {
+            action.run();
+            return;
+        }
+
+        List<Runnable> actions = commitActions.get(dbConn); // the open inTransaction's waiting updates
+        if (actions == null) {
+            throw new IllegalStateException("Cache updates need the transaction to be opened by inTransaction.");
+        }
+        actions.add(action);
+    }
 
-                System.out.println("Prize: " + prizeName + ", Ticket cost: " + ticketCost); // print result
+    /*---------------------------------------------------------------------
+    |  Method executeInChunks(connection, statementPrefix, leading, ids)
+    |
+    |  Purpose:  Runs statementPrefix followed by an IN list of the IDs, in
+    |            chunks of up to 1000 IDs (the most Oracle allows in a list).
+    |            Short chunks are padded to 1, 10, 100 or 1000 IDs by
+    |            repeating the last one, so only four statement texts are
+    |            ever prepared and the statement cache keeps them.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the statements run on.
+    |      statementPrefix -- SQL up to and including IN, e.g.
+    |                         "DELETE FROM Member WHERE MemberID IN".
+    |      leading -- Values of the ? placeholders in statementPrefix.
+    |      ids -- The IDs to put in the IN list.
+    |
+    |  Throws:
+    |      SQLException -- If a statement fails.
+    |
+    |  Returns:  int -- Total rows changed.
+    *-------------------------------------------------------------------*/
+    private static int executeInChunks(Connection dbConn, String statementPrefix, int[] leading, int[] ids) throws SQLException {
+        int changed = 0; // rows changed by every chunk
+        for (int start = 0; start < ids.length; start += 1000) {
+            int count = Math.min(1000, ids.length - start); // IDs in this chunk
+            int padded = count == 1 ? 1 : count <= 10 ? 10 : count <= 100 ? 100 : 1000; // IN list length
+
+            try (PreparedStatement statement = dbConn.prepareStatement(
+                    statementPrefix + " (" + String.join(", ", Collections.nCopies(padded, "?")) + ")")) {
+                for (int i = 0; i < leading.length; i++) {
+                    statement.setInt(i + 1, leading[i]);
+                }
+                for (int i = 0; i < padded; i++) {
+                    statement.setInt(leading.length + i + 1, ids[start + Math.min(i, count - 1)]);
+                }
+                changed += statement.executeUpdate();
+            }
+        }
+        return changed;
+    }
+
+    /*
+     * Function: exchangeTickets()
+     * Arugments: Connection dbConn - The JDBC data connection.
+     *            int memberId - The ID of the member we want to delete.
+     *            int ticketCOunt - The number of tickets the member has
+     * Returns: None.
+     * 
+     * Pre-Condition: The JDBC database connection is valid.
+     * 
+     * Post-condition: The redeemed prizes are deleted, logged and paid for
+     *                 from the member's tickets.
+     * 
+     * Puprose: This function is responsible for prompting the user to exchange tickets for prize(s),
+     *          one at a time by name (see redeemPrize) or all at once with "best" (see exchangeAllTickets).
+     */
+    private static void exchangeTickets(Connection dbConn, int memberId, int ticketCount) {
+        Scanner scanner = new Scanner(System.in); // intitialize new scanner
+        int currTickets = ticketCount; // get current number of tickets
+
+        try {
+            // while member still has tickets
+            while (currTickets > 0) {
+                System.out.println("There are still " + currTickets + " tickets left.");
+                PrizeCatalog catalog = PrizeCatalog.get(dbConn); // prizes sorted by cost
+                int affordable = catalog.affordable(currTickets); // prizes the remaining tickets cover
+
+                Map<String, Integer> prizeEntries = new HashMap<>(); // initialize map for catalog entry of each prize
+                System.out.println("\nAvailable prizes: ");
+                System.out.println("-----------------------------------------------");
+                // iterate through the affordable prizes
+                for (int i = 0; i < affordable; i++) {
+                    String prizeName = catalog.names[i]; // get prize name
+                    int ticketCost = catalog.costs[i]; // get prize cost
+
+                    System.out.println("Prize: " + prizeName + ", Ticket cost: " + ticketCost);
+                    prizeEntries.putIfAbsent(prizeName.toLowerCase(), i); // cheapest prize of each name
+                }
+
+                System.out.println("-----------------------------------------------");
+
+                // not enough tickets to redeem any prizes
+                if (prizeEntries.isEmpty()) {
+                    System.out.println("You don't have enough tickets to redeem any prizes.");
+                    break;
+                }
+
+                System.out.println("\nWhich prize would you like to redeem? ('best' spends as many tickets as possible, 'e' exits)");
+                String prize = scanner.nextLine().trim(); // get prize choice from user
+
+                if (prize.equalsIgnoreCase("e")) {
+                    return;
+                }
+
+                // the basket that leaves the fewest tickets unspent
+                if (prize.equalsIgnoreCase("best")) {
+                    Map<String, Object> exchange = exchangeAllTickets(dbConn, memberId);
+                    for (Object redeemed : (List<?>) exchange.get("prizes")) {
+                        System.out.println("\nYou redeemed: " + ((Map<?, ?>) redeemed).get("name"));
+                    }
+                    currTickets = (Integer) exchange.get("ticketsLeft");
+                    System.out.println("\n" + exchange.get("ticketsSpent") + " tickets spent, " + currTickets + " left.");
+                    break;
+                }
+
+                // if the prize choice is a valid choice
+                Integer entry = prizeEntries.get(prize.toLowerCase());
+                if (entry == null) {
+                    System.out.println("Invalid prize selection. Please choose from the available prizes.");
+                    continue;
+                }
+                int cost = catalog.costs[entry]; // get cost of prize
+                switch (redeemPrize(dbConn, catalog.ids[entry], memberId)) {
+                    case REDEEMED:
+                        System.out.println("\nYou redeemed: " + prize);
+                        currTickets -= cost; // decrement currTickets by cost of prize
+                        break;
+                    case NOT_ENOUGH_TICKETS:
+                        System.out.println("\nNot enough tickets left for " + prize + ".");
+                        break;
+                    default:
+                        System.out.println("\n" + prize + " was just redeemed by someone else.");
+                        break;
+                }
             }
-            System.out.println("-----------------------------------------------");
         } catch (SQLException e) {
-            System.err.println("Error in calculating query c.");
+            System.err.println("Error in redeeming prize.");
             e.printStackTrace();
             System.exit(-1);
         }
     }
 
+    /*
+     * Function: redeemCoupon()
+     * Arguments: Connection dbConn - The JDBC database connection.
+     *            int memberId - The ID of the member we want to delete.
+     * Returns: None.
+     * 
+     * Pre-condition: The JDBC database connection valid and the member exists.
+     * 
+     * Post-condition: None.
+     * 
+     * Purpose: This function is responsible for prompting the user to redeem their food coupons.
+     */
+    private static void redeemCoupon(Connection dbConn, int memberId) {
+        Scanner scanner = new Scanner(System.in); // set new scanner
+
+        try {
+            // every unused coupon of the member, read once up front
+            Map<Integer, String> coupons = loadUnusedCoupons(dbConn, memberId);
+            if (coupons.isEmpty()) {
+                System.out.println("\nNo unredeemed food coupons found for this member.");
+                return;
+            }
+
+            int[] decided = new int[coupons.size()]; // coupons answered y or n, marked used together at the end
+            int decidedCount = 0;
+            for (Map.Entry<Integer, String> coupon : coupons.entrySet()) {
+                String redeemedFood = coupon.getValue(); // food of this coupon
+                String redeemChoice = null; // users redeem choice
+                while (redeemChoice == null) {
+                    System.out.println("There is an unredeemed food coupon for " + redeemedFood + ". Redeem it? (y/n/e)");
+                    redeemChoice = scanner.nextLine().trim();
+                    if (!redeemChoice.equalsIgnoreCase("y") && !redeemChoice.equalsIgnoreCase("n")
+                            && !redeemChoice.equalsIgnoreCase("e")) {
+                        System.out.println("Invalid choice. Please enter 'y' for yes or 'n' for no or 'e' to exit.");
+                        redeemChoice = null;
+                    }
+                }
+
+                // exit, leaving this and the remaining coupons unused
+                if (redeemChoice.equalsIgnoreCase("e")) {
+                    break;
+                }
+
+                // a declined coupon is marked used as well, so it is not offered again
+                decided[decidedCount++] = coupon.getKey();
+                if (redeemChoice.equalsIgnoreCase("y")) {
+                    System.out.println("\nYou redeemed a food coupon for " + redeemedFood + ".");
+                } else {
+                    System.out.println("\nFood coupon for " + redeemedFood + " will not be redeemed.");
+                }
+            }
+
+            markCouponsUsed(dbConn, memberId, Arrays.copyOf(decided, decidedCount));
+            if (decidedCount == coupons.size()) {
+                System.out.println("\nNo unredeemed food coupons found for this member.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error redeeming food coupons.");
+            e.printStackTrace();
+        }
+    }
+
     /*---------------------------------------------------------------------
-    | Method queryD(connection)
+    |  Method loadUnusedCoupons(connection, memberId)
     |
-    | Purpose: Retrieves the total number of tickets earned by each member
-    | for a specific game.
-    | The method prompts the user to input the Game ID, then constructs
-    | and executes an SQL query to fetch this information from the database
-    | and prints the results.
+    |  Purpose:  Reads every unused food coupon of a member in one query.
     |
-    | Pre-condition: Connection to the database is established.
+    |  Parameters:
+    |      dbConn -- Connection the query runs on.
+    |      memberId -- The member whose coupons are read.
     |
-    | Post-condition: Total tickets earned by each member for the specified game
-    | are displayed.
+    |  Throws:
+    |      SQLException -- If the query fails.
     |
-    | Parameters:
-    | connection -- Connection object representing the database connection.
+    |  Returns:  Map<Integer, String> -- RedeemedFood by FoodCouponID, in
+    |            FoodCouponID order.
+    *-------------------------------------------------------------------*/
+    private static Map<Integer, String> loadUnusedCoupons(Connection dbConn, int memberId) throws SQLException {
+        return metrics.time("listCoupons", () -> {
+            Map<Integer, String> coupons = new LinkedHashMap<>(); // unused coupons in ID order
+            try (PreparedStatement statement = dbConn.prepareStatement(
+                    "SELECT FoodCouponID, RedeemedFood FROM FoodCoupon " +
+                    "WHERE MemberID = ? AND Used != 1 ORDER BY FoodCouponID")) {
+                statement.setInt(1, memberId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        coupons.put(resultSet.getInt("FoodCouponID"), resultSet.getString("RedeemedFood"));
+                    }
+                }
+            }
+            return coupons;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method markCouponsUsed(connection, memberId, couponIds)
     |
-    | Returns: None.
+    |  Purpose:  Marks a set of a member's food coupons used with one
+    |            UPDATE per 1000 coupons (see executeInChunks), all in one
+    |            transaction. Coupons that belong to another member or are
+    |            already used are left alone.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the update runs on.
+    |      memberId -- The member the coupons must belong to.
+    |      couponIds -- The coupons to mark used.
+    |
+    |  Throws:
+    |      SQLException -- If the update fails; no coupon is changed.
+    |
+    |  Returns:  int -- The number of coupons marked used.
     *-------------------------------------------------------------------*/
-    private static void queryD(Connection dbConn) {
-        Scanner scanner = new Scanner(System.in);
-    
-        // Prompt the user to enter the Game ID
-        System.out.println("Enter Game ID:");
-        int gameId = scanner.nextInt();
-    
-        try {
-            // Create a statement for executing SQL queries
-            Statement statement = dbConn.createStatement();
-    
-            // SQL query to select the total tickets earned by each member for the specified Game ID
-            String query = "SELECT MemberID, SUM(TicketsEarned) AS TotalTicketsEarned FROM Gameplay WHERE GameID = " + gameId + " GROUP BY MemberID";
-    
-            // Execute the query and get the result set
-            ResultSet resultSet = statement.executeQuery(query);
-    
-            // Print the header for the result
-            System.out.println("\nTotal tickets earned by each member for Game ID " + gameId + ":");
-            System.out.println("-----------------------------------------------");
-    
-            // Iterate over the result set and print each member's total tickets earned
-            while (resultSet.next()) {
-                int memberId = resultSet.getInt("MemberID");
-                int totalTicketsEarned = resultSet.getInt("TotalTicketsEarned");
-    
-                System.out.println("Member ID: " + memberId + ", Total Tickets Earned: " + totalTicketsEarned);
+    private static int markCouponsUsed(Connection dbConn, int memberId, int[] couponIds) throws SQLException {
+        return metrics.time("redeemCoupons", () -> {
+            if (couponIds.length == 0) {
+                return 0;
             }
-    
-            // Print the footer for the result
-            System.out.println("-----------------------------------------------");
-        } catch (SQLException e) {
-            // Print error message if there is an SQL exception
-            System.err.println("Error in executing query d.");
-            e.printStackTrace();
+            return inTransaction(dbConn, () -> executeInChunks(dbConn,
+                    "UPDATE FoodCoupon SET Used = 1 WHERE MemberID = ? AND Used != 1 AND FoodCouponID IN",
+                    new int[] {memberId}, couponIds));
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method expireCoupons(connection, memberIds)
+    |
+    |  Purpose:  Marks every unused food coupon of the given members used,
+    |            with one UPDATE per 1000 members, all in one transaction.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the update runs on.
+    |      memberIds -- The members whose coupons expire.
+    |
+    |  Throws:
+    |      SQLException -- If the update fails; no coupon is changed.
+    |
+    |  Returns:  int -- The number of coupons expired.
+    *-------------------------------------------------------------------*/
+    private static int expireCoupons(Connection dbConn, int[] memberIds) throws SQLException {
+        return metrics.time("expireCoupons", () -> {
+            if (memberIds.length == 0) {
+                return 0;
+            }
+            return inTransaction(dbConn, () -> executeInChunks(dbConn,
+                    "UPDATE FoodCoupon SET Used = 1 WHERE Used != 1 AND MemberID IN", new int[0], memberIds));
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method updateGame(connection)
+    |
+    |  Purpose:  Allows the user to choose how to update the Game table
+    |            (Add or Delete) and calls the respective method.
+    |
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
+    |
+    |  Post-condition: Updates the Game table according to the user's choice.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void updateGame(Connection dbConn) {
+        Scanner scanner = new Scanner(System.in);
+    
+        // Prompt user for the action they want to perform
+        System.out.println("How would you like to update the Game table? (Add/Delete)");
+        String answer = scanner.nextLine();
+    
+        // Convert the user's input to lowercase for case-insensitive comparison
+        switch (answer.toLowerCase()) {
+            // If user wants to add a game
+            case "add":
+                // Call the method to add a game
+                addGame(dbConn);
+                break;
+    
+            // If user wants to delete a game
+            case "delete":
+                // Call the method to delete a game
+                deleteGame(dbConn);
+                break;
+    
+            // If user input is not recognized
+            default:
+                System.out.println("\nPlease choose a valid action (Add/Delete)");
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method deleteGame(Connection dbConn)
+    |
+    |  Purpose:  Allows the user to delete an existing game entry from the
+    |            Game table in the database. The method prompts the user to
+    |            input the game ID, executes an SQL DELETE statement, and
+    |            prints a success message if the operation is successful.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: The specified game entry is deleted from the Game
+    |                  table in the database if the operation is successful.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void deleteGame(Connection dbConn) {
+        Scanner scanner = new Scanner(System.in);
+
+        // Prompt the user to enter the ID of the game to delete
+        System.out.println("Enter the ID of the game you want to delete:");
+        int gameID = scanner.nextInt();
+        scanner.nextLine(); 
+
+        try {
+            Map<String, Integer> removed = removeGame(dbConn, gameID);
+
+            // Check if the game was deleted successfully
+            if (removed.get("Game") > 0) {
+                // Print success message along with the number of related gameplay records deleted
+                System.out.println("Game with ID " + gameID + " deleted successfully.");
+                System.out.println("Related gameplay records deleted: " + removed.get("Gameplay"));
+            } else {
+                // Print message if no game was found with the provided ID
+                System.out.println("No game found with ID " + gameID);
+            }
+        } catch (SQLException e) {
+            // Print any SQL exceptions that occur during deletion
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method removeGame(Connection dbConn, int gameID)
+    |
+    |  Purpose:  Deletes a game and its gameplay records in one transaction
+    |            (see inTransaction). This is the part of deleteGame that does
+    |            not prompt, shared with script mode. The in-memory caches
+    |            forget the game only once the deletes are committed (see
+    |            afterCommit).
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: The game and its gameplay records are deleted.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      gameID -- The ID of the game to delete.
+    |
+    |  Throws:
+    |      SQLException -- If a delete fails; nothing is deleted then.
+    |
+    |  Returns:  Map<String, Integer> -- Rows deleted from the Gameplay and
+    |            Game tables.
+    *-------------------------------------------------------------------*/
+    private static Map<String, Integer> removeGame(Connection dbConn, int gameID) throws SQLException {
+        return metrics.time("deleteGame", () -> {
+            Map<String, Integer> removed = inTransaction(dbConn, () -> {
+                Map<String, Integer> counts = new LinkedHashMap<>(); // rows deleted from each table
+
+                // Delete gameplay records associated with the game
+                try (PreparedStatement statement = dbConn.prepareStatement("DELETE FROM Gameplay WHERE GameID = ?")) {
+                    statement.setInt(1, gameID);
+                    counts.put("Gameplay", statement.executeUpdate());
+                }
+
+                // Delete the game entry itself
+                try (PreparedStatement statement = dbConn.prepareStatement("DELETE FROM Game WHERE GameID = ?")) {
+                    statement.setInt(1, gameID);
+                    counts.put("Game", statement.executeUpdate());
+                }
+
+                // the game's totals go with its gameplay
+                try (PreparedStatement statement = dbConn.prepareStatement("DELETE FROM GameTickets WHERE GameID = ?")) {
+                    statement.setInt(1, gameID);
+                    statement.executeUpdate();
+                }
+                return counts;
+            });
+
+            afterCommit(dbConn, () -> {
+                leaderboard.removeGame(gameID);
+                gameplayColumns.removeGame(gameID);
+            });
+            return removed;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method addGame(Connection dbConn)
+    |
+    |  Purpose:  Allows the user to add a new game entry to the Game table
+    |            in the database. The method prompts the user to input the
+    |            name, token cost, and tickets earned for the new game,
+    |            executes an SQL INSERT statement, and prints a success
+    |            message if the operation is successful.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: A new game entry is added to the Game table in the
+    |                  database if the operation is successful.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void addGame(Connection dbConn) {
+        Scanner scanner = new Scanner(System.in);
+    
+        // Prompt the user to enter the name of the new game
+        System.out.println("Enter the name of the new game:");
+        String name = scanner.nextLine();
+    
+        // Prompt the user to enter the token cost of the new game
+        System.out.println("Enter the token cost of the new game:");
+        int tokenCost = scanner.nextInt();
+        scanner.nextLine(); // Consume newline character
+    
+        // Prompt the user to enter the number of tickets earned by playing the new game
+        System.out.println("Enter the number of tickets earned by playing the new game:");
+        int tickets = scanner.nextInt();
+        scanner.nextLine(); // Consume newline character
+    
+        try {
+            insertGame(dbConn, name, tokenCost, tickets);
+            System.out.println("New game added successfully.");
+        } catch (SQLException e) {
+            // Print any SQL exceptions that occur during insertion
+            System.out.println("Failed to add new game.");
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method insertGame(Connection dbConn, String name, int tokenCost, int tickets)
+    |
+    |  Purpose:  Inserts a new game with the next free GameID. This is the
+    |            part of addGame that does not prompt, shared with script
+    |            mode. The values are bound as parameters so names with
+    |            quotes are stored as typed.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: A new game entry is added to the Game table.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      name -- Name of the new game.
+    |      tokenCost -- Tokens it costs to play the game.
+    |      tickets -- Tickets earned by playing the game.
+    |
+    |  Returns:  int -- The GameID of the new game.
+    *-------------------------------------------------------------------*/
+    private static int insertGame(Connection dbConn, String name, int tokenCost, int tickets) throws SQLException {
+        return metrics.time("addGame", () -> {
+            // Get the ID for the new game by incrementing the last game ID
+            int newGameID = nextId(dbConn, "Game");
+
+            try (PreparedStatement statement = dbConn.prepareStatement("INSERT INTO Game (GameID, Name, TokenCost, Tickets) VALUES (?, ?, ?, ?)")) {
+                // Set the parameters using the provided information
+                statement.setInt(1, newGameID);
+                statement.setString(2, name);
+                statement.setInt(3, tokenCost);
+                statement.setInt(4, tickets);
+                statement.executeUpdate();
+            }
+
+            leaderboard.addGame(newGameID, name);
+            return newGameID;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method updatePrize(connection)
+    |
+    |  Purpose:  Provides options to add, update, or delete prize information
+    |            in the Prize table of the database.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: Prize information is added, updated, or deleted in the
+    |                  Prize table based on user input.
+    |
+    |  Parameters:
+    |      connection -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void updatePrize(Connection dbConn) {
+        // Create a scanner object to read user input
+        Scanner scanner = new Scanner(System.in);
+        
+        // Prompt the user to specify the action they want to perform on the Prize table
+        System.out.println("How would you like to update the Prize table? (Add/Delete)");
+        String answer = scanner.nextLine();
+    
+        // Switch statement to handle different actions based on user input
+        switch (answer.toLowerCase()) {
+            // If the user chooses to add a prize
+            case "add":
+                // Call the addPrize method to add a new prize
+                addPrize(dbConn);
+                break;
+    
+            // If the user chooses to delete a prize
+            case "delete":
+                // Call the deletePrize method to delete an existing prize
+                deletePrize(dbConn);
+                break;
+    
+            // If the user inputs an invalid action
+            default:
+                // Prompt the user to choose a valid action
+                System.out.println("\nPlease choose a valid action (Add/Delete)");
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method deletePrize(Connection dbConn)
+    |
+    |  Purpose:  Allows the user to delete an existing prize entry from the
+    |            Prize table in the database. The method prompts the user to
+    |            input the prize ID, executes an SQL DELETE statement, and
+    |            prints a success message if the operation is successful.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: The specified prize entry is deleted from the Prize
+    |                  table in the database if the operation is successful.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void deletePrize(Connection dbConn) {
+        // Create a scanner object to read user input
+        Scanner scanner = new Scanner(System.in);
+        
+        // Prompt the user to enter the ID of the prize they want to delete
+        System.out.println("Enter the ID of the prize you want to delete:");
+        int prizeID = scanner.nextInt();
+    
+        // Prompt the user to enter the ID of the member who wants to redeem the prize
+        System.out.println("Enter the ID of the member who wants to redeem this prize:");
+        int memberID = scanner.nextInt();
+    
+        try {
+            // Print the outcome of the redemption
+            switch (redeemPrize(dbConn, prizeID, memberID)) {
+                case REDEEMED:
+                    System.out.println("Prize with ID " + prizeID + " deleted successfully.");
+                    break;
+
+                case NOT_ENOUGH_TICKETS:
+                    System.out.println("Member with ID " + memberID + " does not have enough tickets to redeem this prize.");
+                    break;
+
+                case NO_MEMBER:
+                    System.out.println("Member with ID " + memberID + " does not exist.");
+                    break;
+
+                default:
+                    System.out.println("No prize found with ID " + prizeID);
+                    break;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Enum RedeemResult
+    |
+    |  Purpose:  Outcome of redeeming a prize for a member with redeemPrize.
+    *-------------------------------------------------------------------*/
+    private enum RedeemResult {
+        REDEEMED, NO_PRIZE, NO_MEMBER, NOT_ENOUGH_TICKETS
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method redeemPrize(Connection dbConn, int prizeID, int memberID)
+    |
+    |  Purpose:  Redeems a prize for a member: the prize's ticket cost is
+    |            taken from the member's tickets and the prize is deleted.
+    |            This is the part of deletePrize that does not prompt,
+    |            shared with script mode.
+    |
+    |            Both changes happen in one transaction (see inTransaction).
+    |            The prize row is locked while it is read, and the tickets
+    |            are taken with a conditional UPDATE that only matches while
+    |            the member still has enough of them, so two redemptions at
+    |            once can neither lose an update nor overdraw the member nor
+    |            hand out the same prize twice. A transaction the database
+    |            aborts (a deadlock or a serialization failure) is retried
+    |            (see inRetriedTransaction). The redemption is logged in
+    |            PrizeRedemption.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: If the member has enough tickets, their tickets are
+    |                  reduced and the prize is deleted.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      prizeID -- The ID of the prize to redeem.
+    |      memberID -- The ID of the member redeeming the prize.
+    |
+    |  Returns:  RedeemResult -- Whether the prize was redeemed, and why not.
+    *-------------------------------------------------------------------*/
+    private static RedeemResult redeemPrize(Connection dbConn, int prizeID, int memberID) throws SQLException {
+        return metrics.time("redeemPrize", () -> {
+            RedeemResult result = inRetriedTransaction(dbConn, () -> redeemPrizeOnce(dbConn, prizeID, memberID));
+            if (result == RedeemResult.REDEEMED) {
+                PrizeCatalog.invalidate();
+                members.remove(memberID); // the cached ticket balance is out of date
+            }
+            return result;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method inRetriedTransaction(connection, work)
+    |
+    |  Purpose:  Runs the work as one transaction (see inTransaction) and,
+    |            if the database aborts it because of other transactions
+    |            (see isTransientFailure), runs it again up to REDEEM_RETRIES
+    |            times after a short random backoff that grows with each
+    |            attempt. Work that joins a transaction the caller opened is
+    |            not retried; the caller must roll back and retry it.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the work runs on.
+    |      work -- The statements to run; they must be safe to run again.
+    |
+    |  Throws:
+    |      SQLException -- If the work fails for good.
+    |
+    |  Returns:  T -- The result of the work.
+    *-------------------------------------------------------------------*/
+    private static <T> T inRetriedTransaction(Connection dbConn, TransactionWork<T> work) throws SQLException {
+        boolean retryable = dbConn.getAutoCommit(); // a joined transaction is the caller's to retry
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return inTransaction(dbConn, work);
+            } catch (SQLException e) {
+                if (!retryable || attempt >= REDEEM_RETRIES || !isTransientFailure(e)) {
+                    throw e;
+                }
+            }
+
+            // back off a random few milliseconds, longer each attempt, so the competing transactions spread out
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(5, 20) * (attempt + 1L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while retrying a transaction.", e);
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method redeemPrizeOnce(Connection dbConn, int prizeID, int memberID)
+    |
+    |  Purpose:  One attempt of redeemPrize, run inside its transaction.
+    |
+    |  Returns:  RedeemResult -- Whether the prize was redeemed, and why not.
+    *-------------------------------------------------------------------*/
+    private static RedeemResult redeemPrizeOnce(Connection dbConn, int prizeID, int memberID) throws SQLException {
+        // lock the prize so nobody else redeems it before this transaction ends
+        int ticketCost; // ticket cost of the prize
+        String name; // name of the prize
+        try (PreparedStatement statement = dbConn.prepareStatement(
+                "SELECT Name, TicketCost FROM Prize WHERE PrizeID = ? FOR UPDATE")) {
+            statement.setInt(1, prizeID);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return RedeemResult.NO_PRIZE;
+                }
+                name = resultSet.getString("Name");
+                ticketCost = resultSet.getInt("TicketCost");
+            }
+        }
+
+        // take the tickets only if the member still has enough of them
+        try (PreparedStatement statement = dbConn.prepareStatement(
+                "UPDATE Member SET TotalTickets = TotalTickets - ? WHERE MemberID = ? AND TotalTickets >= ?")) {
+            statement.setInt(1, ticketCost);
+            statement.setInt(2, memberID);
+            statement.setInt(3, ticketCost);
+            if (statement.executeUpdate() == 0) {
+                try (PreparedStatement memberStatement = dbConn.prepareStatement(
+                        "SELECT 1 FROM Member WHERE MemberID = ?")) {
+                    memberStatement.setInt(1, memberID);
+                    try (ResultSet resultSet = memberStatement.executeQuery()) {
+                        return resultSet.next() ? RedeemResult.NOT_ENOUGH_TICKETS : RedeemResult.NO_MEMBER;
+                    }
+                }
+            }
+        }
+
+        try (PreparedStatement statement = dbConn.prepareStatement("DELETE FROM Prize WHERE PrizeID = ?")) {
+            statement.setInt(1, prizeID);
+            statement.executeUpdate();
+        }
+        logRedemptions(dbConn, memberID, new int[] {prizeID}, new String[] {name}, new int[] {ticketCost});
+        return RedeemResult.REDEEMED;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method logRedemptions(dbConn, memberId, prizeIds, names, costs)
+    |
+    |  Purpose:  Records redeemed prizes in PrizeRedemption with one JDBC
+    |            batch, dated today. The rows are kept after the prize and
+    |            the member are deleted, as the history of what was handed
+    |            out.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the inserts run on, inside the redemption's
+    |                transaction.
+    |      memberId -- The member the prizes went to.
+    |      prizeIds, names, costs -- PrizeID, Name and TicketCost of each
+    |                                prize.
+    |
+    |  Throws:
+    |      SQLException -- If an insert fails.
+    *-------------------------------------------------------------------*/
+    private static void logRedemptions(Connection dbConn, int memberId, int[] prizeIds, String[] names, int[] costs) throws SQLException {
+        java.sql.Date today = java.sql.Date.valueOf(LocalDate.now());
+        try (PreparedStatement statement = dbConn.prepareStatement(
+                "INSERT INTO PrizeRedemption (MemberID, PrizeID, Name, TicketCost, RedeemedOn) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < prizeIds.length; i++) {
+                statement.setInt(1, memberId);
+                statement.setInt(2, prizeIds[i]);
+                statement.setString(3, names[i]);
+                statement.setInt(4, costs[i]);
+                statement.setDate(5, today);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method exchangeAllTickets(Connection dbConn, int memberID)
+    |
+    |  Purpose:  Spends as many of a member's tickets as possible on prizes:
+    |            the basket of prizes whose costs add up closest to the
+    |            member's balance without going over (see
+    |            PrizeCatalog.basket) is redeemed in one transaction. The
+    |            basket is chosen from the balance read without a lock; then
+    |            its prizes are locked before the member, the order
+    |            redeemPrize locks them in, so the two cannot deadlock. The
+    |            tickets are taken, the prizes are deleted and logged in
+    |            PrizeRedemption together. If another terminal redeemed one
+    |            of the prizes first, or the balance changed before the
+    |            member was locked, the catalog is reloaded and the basket
+    |            chosen again (see inRetriedTransaction).
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      memberID -- The ID of the member exchanging tickets.
+    |
+    |  Throws:
+    |      SQLException -- If the member does not exist or the exchange
+    |                      fails; nothing is changed.
+    |
+    |  Returns:  Map<String, Object> -- prizes (prizeId, name and ticketCost
+    |            of each prize redeemed), ticketsSpent and ticketsLeft.
+    *-------------------------------------------------------------------*/
+    private static Map<String, Object> exchangeAllTickets(Connection dbConn, int memberID) throws SQLException {
+        return metrics.time("exchangeTickets", () -> {
+            PrizeCatalog.get(dbConn); // load the catalog and its basket table before the transaction
+            Map<String, Object> exchange = inRetriedTransaction(dbConn, () -> {
+                // a retry after a stale catalog reloads it here, before any row is locked again
+                PrizeCatalog catalog = PrizeCatalog.get(dbConn);
+
+                // choose the basket from the balance as it is now; it is checked again once the prizes are locked
+                int tickets = readTickets(dbConn, memberID, false); // the member's ticket balance
+
+                int[] basket = catalog.basket(tickets); // catalog entries to redeem
+                int[] prizeIds = new int[basket.length];
+                String[] names = new String[basket.length];
+                int[] costs = new int[basket.length];
+                int spent = 0;
+                List<Map<String, Object>> prizes = new ArrayList<>();
+                for (int i = 0; i < basket.length; i++) {
+                    prizeIds[i] = catalog.ids[basket[i]];
+                    names[i] = catalog.names[basket[i]];
+                    costs[i] = catalog.costs[basket[i]];
+                    spent += costs[i];
+
+                    Map<String, Object> prize = new LinkedHashMap<>();
+                    prize.put("prizeId", prizeIds[i]);
+                    prize.put("name", names[i]);
+                    prize.put("ticketCost", costs[i]);
+                    prizes.add(prize);
+                }
+
+                if (basket.length > 0) {
+                    // prizes first, then the member, as redeemPrize locks them; a prize already redeemed
+                    // elsewhere means the catalog is stale: reload it and choose again
+                    if (lockPrizes(dbConn, prizeIds) != basket.length) {
+                        PrizeCatalog.invalidate();
+                        throw new SQLTransientException("The prize catalog changed during the exchange.");
+                    }
+                    if (readTickets(dbConn, memberID, true) != tickets) {
+                        throw new SQLTransientException("The member's tickets changed during the exchange.");
+                    }
+
+                    executeInChunks(dbConn, "DELETE FROM Prize WHERE PrizeID IN", new int[0], prizeIds);
+                    try (PreparedStatement statement = dbConn.prepareStatement(
+                            "UPDATE Member SET TotalTickets = TotalTickets - ? WHERE MemberID = ?")) {
+                        statement.setInt(1, spent);
+                        statement.setInt(2, memberID);
+                        statement.executeUpdate();
+                    }
+                    logRedemptions(dbConn, memberID, prizeIds, names, costs);
+                }
+
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("prizes", prizes);
+                result.put("ticketsSpent", spent);
+                result.put("ticketsLeft", tickets - spent);
+                return result;
+            });
+
+            if (!((List<?>) exchange.get("prizes")).isEmpty()) {
+                PrizeCatalog.invalidate();
+                members.remove(memberID); // the cached ticket balance is out of date
+            }
+            return exchange;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method readTickets(Connection dbConn, int memberID, boolean lock)
+    |
+    |  Purpose:  Reads a member's ticket balance for exchangeAllTickets,
+    |            locking the member row with FOR UPDATE if asked to.
+    |
+    |  Throws:
+    |      SQLException -- If the member does not exist.
+    |
+    |  Returns:  int -- The member's TotalTickets.
+    *-------------------------------------------------------------------*/
+    private static int readTickets(Connection dbConn, int memberID, boolean lock) throws SQLException {
+        try (PreparedStatement statement = dbConn.prepareStatement(
+                "SELECT TotalTickets FROM Member WHERE MemberID = ?" + (lock ? " FOR UPDATE" : ""))) {
+            statement.setInt(1, memberID);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("There is no member with the MemberID " + memberID + ".");
+                }
+                return resultSet.getInt("TotalTickets");
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method lockPrizes(Connection dbConn, int[] prizeIds)
+    |
+    |  Purpose:  Locks the Prize rows of the IDs with SELECT ... FOR UPDATE,
+    |            in chunks of up to 1000 IDs padded like executeInChunks.
+    |            The IDs are locked in ascending order, so two exchanges
+    |            sharing prizes take their locks in the same order.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the locks are taken on, inside the
+    |                exchange's transaction.
+    |      prizeIds -- The distinct IDs of the prizes to lock.
+    |
+    |  Throws:
+    |      SQLException -- If a statement fails.
+    |
+    |  Returns:  int -- Number of prizes that still exist and were locked.
+    *-------------------------------------------------------------------*/
+    private static int lockPrizes(Connection dbConn, int[] prizeIds) throws SQLException {
+        int[] ids = prizeIds.clone();
+        Arrays.sort(ids);
+        int locked = 0; // prizes found by every chunk
+        for (int start = 0; start < ids.length; start += 1000) {
+            int count = Math.min(1000, ids.length - start); // IDs in this chunk
+            int padded = count == 1 ? 1 : count <= 10 ? 10 : count <= 100 ? 100 : 1000; // IN list length
+
+            try (PreparedStatement statement = dbConn.prepareStatement("SELECT PrizeID FROM Prize WHERE PrizeID IN ("
+                    + String.join(", ", Collections.nCopies(padded, "?")) + ") ORDER BY PrizeID FOR UPDATE")) {
+                for (int i = 0; i < padded; i++) {
+                    statement.setInt(i + 1, ids[start + Math.min(i, count - 1)]);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        locked++;
+                    }
+                }
+            }
+        }
+        return locked;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method isTransientFailure(SQLException e)
+    |
+    |  Purpose:  Tells whether the database aborted a transaction only
+    |            because of other transactions, so running it again may
+    |            succeed: a deadlock (ORA-00060), a serialization failure
+    |            (ORA-08177), a lock wait timeout (ORA-30006), or anything
+    |            the driver reports as transient or rolled back.
+    |
+    |  Returns:  boolean -- true if the transaction is worth retrying.
+    *-------------------------------------------------------------------*/
+    private static boolean isTransientFailure(SQLException e) {
+        if (e instanceof SQLTransientException) { // includes SQLTransactionRollbackException
+            return true;
+        }
+        int code = e.getErrorCode(); // vendor error number
+        return code == 60 || code == 8177 || code == 30006
+               || (e.getSQLState() != null && e.getSQLState().startsWith("40"));
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method addPrize(Connection dbConn)
+    |
+    |  Purpose:  Allows the user to add a new prize entry to the Prize table
+    |            in the database. The method prompts the user to input the
+    |            name and ticket cost for the new prize, executes an SQL INSERT
+    |            statement, and prints a success message if the operation is
+    |            successful.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: A new prize entry is added to the Prize table in the
+    |                  database if the operation is successful.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void addPrize(Connection dbConn) {
+        // Create a scanner object to read user input
+        Scanner scanner = new Scanner(System.in);
+        
+        // Prompt the user to enter the name of the new prize
+        System.out.println("Enter the name of the new prize:");
+        String newName = scanner.nextLine();
+        
+        // Prompt the user to enter the ticket cost for the new prize
+        System.out.println("Enter the ticket cost for the new prize:");
+        int newTicketCost = scanner.nextInt();
+        
+        try {
+            insertPrize(dbConn, newName, newTicketCost);
+            System.out.println("New prize added successfully.");
+        } catch (SQLException e) {
+            System.out.println("Failed to add new prize.");
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method insertPrize(Connection dbConn, String name, int ticketCost)
+    |
+    |  Purpose:  Inserts a new prize with the next free PrizeID. This is the
+    |            part of addPrize that does not prompt, shared with script
+    |            mode.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: A new prize entry is added to the Prize table.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      name -- Name of the new prize.
+    |      ticketCost -- Tickets it costs to redeem the prize.
+    |
+    |  Returns:  int -- The PrizeID of the new prize.
+    *-------------------------------------------------------------------*/
+    private static int insertPrize(Connection dbConn, String name, int ticketCost) throws SQLException {
+        return metrics.time("addPrize", () -> {
+            // Get the ID for the new prize by incrementing the last prize ID in the database
+            int newPrizeID = nextId(dbConn, "Prize");
+
+            try (PreparedStatement preparedStatement = dbConn.prepareStatement("INSERT INTO Prize (PrizeID, Name, TicketCost) VALUES (?, ?, ?)")) {
+                // Set the parameters for the prepared statement
+                preparedStatement.setInt(1, newPrizeID);
+                preparedStatement.setString(2, name);
+                preparedStatement.setInt(3, ticketCost);
+                preparedStatement.executeUpdate();
+            }
+
+            PrizeCatalog.invalidate();
+            return newPrizeID;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method insertTransaction(Connection dbConn, int memberId, String type,
+    |                           double amount, LocalDate date)
+    |
+    |  Purpose:  Records a purchase in the Transaction table and, for token
+    |            purchases, adds it to the 30 day token spending of query b.
+    |            The type is stored as spelled by transactionType, the same
+    |            spelling the token spending window reloads by.
+    |
+    |  Pre-condition:  The JDBC database connection is valid and the member
+    |                  exists.
+    |
+    |  Post-condition: The transaction is inserted.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      memberId -- The member making the purchase.
+    |      type -- Token or Ticket.
+    |      amount -- Amount paid in dollars.
+    |      date -- Date of the purchase.
+    |
+    |  Throws:
+    |      SQLException -- If the insert fails.
+    |      IllegalArgumentException -- If the type is not Token or Ticket.
+    |
+    |  Returns:  int -- The TransactionID of the new transaction.
+    *-------------------------------------------------------------------*/
+    private static int insertTransaction(Connection dbConn, int memberId, String type, double amount, LocalDate date) throws SQLException {
+        String storedType = transactionType(type); // Token or Ticket, as stored
+        return metrics.time("addTransaction", () -> {
+            int newTransactionID = nextId(dbConn, "Transaction"); // ID of the new transaction
+
+            try (PreparedStatement statement = dbConn.prepareStatement(
+                    "INSERT INTO Transaction (TransactionID, MemberID, Type, Amount, \"Date\") VALUES (?, ?, ?, ?, ?)")) {
+                statement.setInt(1, newTransactionID);
+                statement.setInt(2, memberId);
+                statement.setString(3, storedType);
+                statement.setDouble(4, amount);
+                statement.setDate(5, java.sql.Date.valueOf(date));
+                statement.executeUpdate();
+            }
+
+            if (storedType.equals("Token")) {
+                tokenSpending.record(memberId, Math.round(amount * 100), date);
+            }
+            return newTransactionID;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method transactionType(type)
+    |
+    |  Purpose:  Spells a transaction type the way the Transaction table
+    |            stores it: "Token" or "Ticket", whatever the case of the
+    |            input. insertTransaction and the Transaction import both
+    |            store this spelling, so the token spending window can reload
+    |            with Type = 'Token' and count exactly what record counted.
+    |
+    |  Parameters:
+    |      type -- Transaction type as given.
+    |
+    |  Throws:
+    |      IllegalArgumentException -- If the type is not Token or Ticket.
+    |
+    |  Returns:  String -- "Token" or "Ticket".
+    *-------------------------------------------------------------------*/
+    private static String transactionType(String type) {
+        if (type.equalsIgnoreCase("Token")) {
+            return "Token";
+        }
+        if (type.equalsIgnoreCase("Ticket")) {
+            return "Ticket";
+        }
+        throw new IllegalArgumentException("Transaction type must be Token or Ticket, not " + type + ".");
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method createSequences(connection)
+    |
+    |  Purpose:  Creates the sequences new IDs are drawn from, if they do not
+    |            exist yet: MemberSeq, GameSeq, PrizeSeq, TransactionSeq and
+    |            GameplaySeq.
+    |            Each starts after the largest ID already in its table and
+    |            counts up by ID_BLOCK_SIZE, so every NEXTVAL reserves a
+    |            block of that many IDs for the IdAllocator. The sequences
+    |            that exist are found through the database metadata, so no
+    |            Oracle dictionary view is read.
+    |
+    |  Pre-condition:  The tables exist and hold their imported rows.
+    |
+    |  Post-condition: Every sequence exists.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void createSequences(Connection dbConn) {
+        for (String tableName : SEQUENCE_TABLES) {
+            String sequence = tableName + "Seq"; // name of the table's sequence
+            if (sequenceExists(dbConn, sequence)) {
+                continue;
+            }
+
+            try (Statement statement = dbConn.createStatement()) {
+                int start = 1; // first ID after the rows already in the table
+                try (ResultSet last = statement.executeQuery("SELECT MAX(" + tableName + "ID) FROM " + tableName)) {
+                    if (last.next()) {
+                        start = last.getInt(1) + 1;
+                    }
+                }
+
+                statement.execute("CREATE SEQUENCE " + sequence + " START WITH " + start +
+                                  " INCREMENT BY " + ID_BLOCK_SIZE + " NOCACHE");
+                System.out.println("Sequence " + sequence + " created starting at " + start + ".");
+            } catch (SQLException e) {
+                System.err.println("Could not create sequence " + sequence + ".");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method sequenceExists(connection, sequenceName)
+    |
+    |  Purpose:  Checks if the current schema has a sequence with the given
+    |            name, through the SEQUENCE table type of the metadata. The
+    |            names are matched without regard to case, like indexExists.
+    |
+    |  Returns:  boolean -- True if the sequence exists, false otherwise.
+    *-------------------------------------------------------------------*/
+    private static boolean sequenceExists(Connection dbConn, String sequenceName) {
+        try {
+            DatabaseMetaData metadata = dbConn.getMetaData();
+            String schema = dbConn.getSchema(); // other schemas' sequences of the same name do not count
+            for (String name : new String[] {sequenceName, sequenceName.toUpperCase(), sequenceName.toLowerCase()}) {
+                try (ResultSet sequences = metadata.getTables(null, schema, name, new String[] {"SEQUENCE"})) {
+                    if (sequences.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            System.err.println("Could not check to see if sequence " + sequenceName + " exists.");
+            return false;
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method dropSequences(connection)
+    |
+    |  Purpose:  Drops the ID sequences that exist and forgets every block
+    |            reserved from them.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void dropSequences(Connection dbConn) {
+        for (String tableName : SEQUENCE_TABLES) {
+            try (Statement statement = dbConn.createStatement()) {
+                statement.execute("DROP SEQUENCE " + tableName + "Seq");
+                System.out.println("Dropped sequence: " + tableName + "Seq");
+            } catch (SQLException e) {
+                // the sequence was never created
+            }
+        }
+        ids.clear();
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method nextId(connection, tableName)
+    |
+    |  Purpose:  Returns a new ID for a row of the table from the table's
+    |            IdAllocator.
+    |
+    |  Parameters:
+    |      dbConn -- Connection used if a new block must be reserved.
+    |      tableName -- Member, Game, Prize, Transaction or Gameplay.
+    |
+    |  Throws:
+    |      SQLException -- If a block cannot be reserved.
+    |
+    |  Returns:  int -- An ID no other caller, in this or another process,
+    |            will be given.
+    *-------------------------------------------------------------------*/
+    private static int nextId(Connection dbConn, String tableName) throws SQLException {
+        return ids.computeIfAbsent(tableName, IdAllocator::new).next(dbConn);
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class IdAllocator
+    |
+    |  Purpose:  Hands out the IDs of one table from blocks reserved from
+    |            its sequence. One NEXTVAL returns the first ID of a block of
+    |            ID_BLOCK_SIZE IDs, the sequence's INCREMENT BY, which are then
+    |            handed out from memory, so most inserts need no round trip
+    |            for their ID.
+    |            Sequences never give the same value twice, so terminals
+    |            adding rows at the same time never collide. IDs of a block
+    |            that is not used up before the program exits are skipped.
+    |
+    |  Methods:  - next(dbConn): The next ID, reserving a new block if the
+    |              current one is used up.
+    *-------------------------------------------------------------------*/
+    private static final class IdAllocator {
+        private final String sequence; /* sequence the blocks come from */
+        private int next = 0; /* next ID to hand out */
+        private int limit = 0; /* first ID past the current block */
+
+        IdAllocator(String tableName) {
+            this.sequence = tableName + "Seq";
+        }
+
+        synchronized int next(Connection dbConn) throws SQLException {
+            if (next == limit) {
+                reserve(dbConn);
+            }
+            return next++;
+        }
+
+        private void reserve(Connection dbConn) throws SQLException {
+            try (Statement statement = dbConn.createStatement();
+                 ResultSet block = statement.executeQuery("SELECT " + sequence + ".NEXTVAL FROM dual")) {
+                block.next();
+                next = block.getInt(1);
+                limit = next + ID_BLOCK_SIZE;
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method answerQueries(pool)
+    |
+    |  Purpose:  Continually prompts the user for input on queries and
+    |            executes the corresponding query method based on the user's
+    |            choice. Each query borrows its own connection from the pool.
+    |
+    |  Pre-condition:  The connection pool is open.
+    |
+    |  Post-condition: Executes the specified query method or exits the 
+    |                  program based on the user's choice.
+    |
+    |  Parameters:
+    |      pool -- Pool each query borrows its database connection from.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void answerQueries(ConnectionPool pool) {
+        Scanner scanner = new Scanner(System.in);
+
+        // continually prompt user for input on queries
+        while (true) {
+            // printing out menu of queries to choose from
+            System.out.println("\nQueries:");
+            System.out.println("(a) List all games in the arcade and the names of the members who " + 
+                                "have the current high scores");
+            System.out.println("(b) Give the names and membership information of all members who " + 
+                                "have spent at least $100 on tokens in the past month");
+            System.out.println("(c) For a given member, list all arcade rewards that they can purchase " +  
+                                "with their tickets");
+            System.out.println("(d) Get total number of tickets for a given gameID"); 
+            System.out.println("(r) Rebuild the ticket totals used by query d"); 
+            System.out.println("(u) Update"); 
+            System.out.println("(e) Exit\n");
+
+            // prompting input from user
+            System.out.println("Enter your query of choice (a, b, c, d, r, u or e)");
+            String query = scanner.nextLine();
+
+            switch (query.toLowerCase()) {
+                // call queryA() for query a
+                case "a":
+                    withConnection(pool, Prog4::queryA);
+                    break;
+
+                // call queryB() for query b
+                case "b":
+                    withConnection(pool, Prog4::queryB);
+                    break;
+
+                // call queryC() for query c
+                case "c":
+                    withConnection(pool, Prog4::queryC);
+                    break;
+
+                // call queryD() for query d
+                case "d":
+                    withConnection(pool, Prog4::queryD);
+                    break;
+
+                // recompute GameTickets from Gameplay
+                case "r":
+                    withConnection(pool, Prog4::rebuildTicketTotals);
+                    break;
+
+                case "u":
+                    withConnection(pool, Prog4::update);
+                    break;
+                // exit if user chose e
+                case "e":
+                    scanner.close();
+                    String ingested = closeGameplayIngestor(); // writes the plays still buffered
+                    if (ingested != null) {
+                        System.out.println("\n" + ingested);
+                    }
+                    System.out.println("\n" + pool.stats());
+                    System.out.println(members.stats());
+                    if (GAMEPLAY_COLUMNS) {
+                        System.out.println(gameplayColumns.stats());
+                    }
+                    System.out.println(metrics.dump());
+                    pool.close();
+                    System.out.println("\n***Exiting***");
+                    System.exit(0);
+
+                // invalid input
+                default:
+                    System.out.println("\nPlease choose a valid query (a, b, c, d, r, u or e)");
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method queryA(connection)
+    |
+    |  Purpose:  Retrieves all games in the arcade along with the names of
+    |            members who have the current high scores for each game.
+    |            The method constructs and executes an SQL query to fetch
+    |            this information from the database and prints the results.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: List of games and high scorers is displayed.
+    |
+    |  Parameters:
+    |      connection -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void queryA(Connection dbConn) {
+        try {
+            List<Map<String, Object>> rows = getHighScores(dbConn);
+    
+            // Print the header for the result
+            System.out.println("\nGames in arcade and current high scores:");
+            System.out.println("--------------------------------------------");
+    
+            // Iterate over the rows and print each one
+            for (Map<String, Object> row : rows) {
+                // Print the game name, member first name, member last name, and score
+                System.out.println("Game: " + row.get("game") + " High Score: " + row.get("firstName") + " " +
+                                   row.get("lastName") + " with a score of " + row.get("score"));
+            }
+            // Print the footer for the result
+            System.out.println("--------------------------------------------");
+        } catch (SQLException e) {
+            // Print any SQL exceptions that occur
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method getHighScores(connection)
+    |
+    |  Purpose:  Runs query a and returns its rows: for every game, the
+    |            member(s) holding the high score and the score. Shared by
+    |            queryA and script mode. Answered by the leaderboard, else
+    |            by a scan of the Gameplay columns if they are turned on,
+    |            else in the database.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: None.
+    |
+    |  Parameters:
+    |      connection -- Connection object representing the database connection.
+    |
+    |  Returns:  List<Map<String, Object>> -- One row per high score with the
+    |            keys game, firstName, lastName and score.
+    *-------------------------------------------------------------------*/
+    private static List<Map<String, Object>> getHighScores(Connection dbConn) throws SQLException {
+        return metrics.time("queryA", () -> {
+            // served from memory unless the leaderboard is turned off
+            if (LEADERBOARD_SIZE > 0) {
+                return leaderboard.highScores(dbConn);
+            }
+            if (GAMEPLAY_COLUMNS) {
+                return gameplayColumns.highScores(dbConn);
+            }
+            return queryHighScores(dbConn);
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method queryHighScores(connection)
+    |
+    |  Purpose:  Computes the rows of query a in the database, without the
+    |            leaderboard, using the plan picked by -Dprog4.queryA.plan.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: None.
+    |
+    |  Parameters:
+    |      connection -- Connection object representing the database connection.
+    |
+    |  Returns:  List<Map<String, Object>> -- Same rows as getHighScores.
+    *-------------------------------------------------------------------*/
+    private static List<Map<String, Object>> queryHighScores(Connection dbConn) throws SQLException {
+        return queryHighScores(dbConn, QUERY_A_PLAN);
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method queryHighScores(connection, plan)
+    |
+    |  Purpose:  Computes the rows of query a with the given form of the
+    |            SQL:
+    |              - rank: ranks each game's gameplay rows with
+    |                RANK() OVER (PARTITION BY GameID ORDER BY Score DESC)
+    |                and keeps rank 1, one pass over Gameplay that the
+    |                GameplayGameScore index can feed in order.
+    |              - legacy: the original comma join with a correlated
+    |                MAX(Score) subquery per row, kept to compare against.
+    |            Both return the same rows.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: None.
+    |
+    |  Parameters:
+    |      connection -- Connection object representing the database connection.
+    |      plan -- rank or legacy.
+    |
+    |  Returns:  List<Map<String, Object>> -- Same rows as getHighScores.
+    *-------------------------------------------------------------------*/
+    private static List<Map<String, Object>> queryHighScores(Connection dbConn, String plan) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        String query; // SQL of the chosen plan
+
+        if (plan.equals("legacy")) {
+            // SQL query to select game name, member first name, member last name, and score from the database
+            query = "SELECT Game.Name, Member.Fname, Member.Lname, Gameplay.Score " +
+                    "FROM Game, Member, Gameplay " +
+                    "WHERE Game.GameID = Gameplay.GameID AND Member.MemberID = Gameplay.MemberID " +
+                    "AND Gameplay.Score = (SELECT MAX(Score) FROM Gameplay WHERE Gameplay.GameID = Game.GameID)";
+        } else if (plan.equals("rank")) {
+            // rank every game's rows once and keep the top rank, ties included
+            query = "SELECT Game.Name, Member.Fname, Member.Lname, Ranked.Score " +
+                    "FROM (SELECT GameID, MemberID, Score, " +
+                    "RANK() OVER (PARTITION BY GameID ORDER BY Score DESC) AS Position FROM Gameplay) Ranked " +
+                    "JOIN Game ON Game.GameID = Ranked.GameID " +
+                    "JOIN Member ON Member.MemberID = Ranked.MemberID " +
+                    "WHERE Ranked.Position = 1";
+        } else {
+            throw new IllegalArgumentException("Unknown query a plan " + plan + ", expected rank or legacy.");
+        }
+
+        try (Statement statement = dbConn.createStatement();
+             ResultSet rs = statement.executeQuery(query)) {
+            // Execute the query and collect each row
+            while (rs.next()) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("game", rs.getString("Name"));
+                row.put("firstName", rs.getString("Fname"));
+                row.put("lastName", rs.getString("Lname"));
+                row.put("score", rs.getInt("Score"));
+                rows.add(row);
+            }
+        }
+
+        return rows;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class Leaderboard
+    |
+    |  Purpose:  In-memory top-N high scores of every game, so query a is
+    |            answered without touching the database. Each game keeps its
+    |            size best gameplay rows, best first. The boards are loaded
+    |            with one ROW_NUMBER() query the first time they are read,
+    |            and afterwards kept current by recordPlay, addGame,
+    |            removeGame and removeMembers, which the methods changing
+    |            those tables call.
+    |
+    |            A board that was full and loses rows to a member deletion
+    |            may be missing plays that were below its cutoff, so it is
+    |            reloaded from the database on the next read. The same
+    |            happens when every cached row ties the high score, since
+    |            more members may share it. Member names are looked up the
+    |            first time a member appears on a board.
+    |
+    |            Loads, reloads and name lookups run outside the monitor, so
+    |            recordPlay and the other changes never wait on the database.
+    |            Changes made while a load runs are applied to the current
+    |            boards and replayed onto the loaded ones before they are
+    |            swapped in; a play the load already read is recognized by its
+    |            GameplayID and not added twice. A load that an invalidate()
+    |            overtakes is thrown away and run again.
+    |
+    |            The cache only sees changes made by this process; another
+    |            client changing Gameplay needs invalidate() to be seen.
+    |
+    |  Methods:  - highScores(dbConn): The rows of query a.
+    |            - recordPlay(gameplayId, gameId, memberId, score): Adds a
+    |              gameplay row.
+    |            - addGame / removeGame / removeMembers: Keep the boards in
+    |              step with the Game and Member tables.
+    |            - invalidate(): Reloads everything on the next read.
+    *-------------------------------------------------------------------*/
+    private static final class Leaderboard {
+        private final int size; /* rows kept per game */
+        private final ReentrantLock loadLock = new ReentrantLock(); /* one load at a time, held without the monitor */
+        private Boards current = null; /* the loaded boards, null until the next read loads them */
+        private List<Consumer<Boards>> pending = null; /* changes made while a load runs, null when none runs */
+        private long generation = 0; /* bumped by invalidate, so a load started before it is dropped */
+
+        Leaderboard(int size) {
+            this.size = size;
+        }
+
+        /*---------------------------------------------------------------------
+        |  Class Board
+        |
+        |  Purpose:  The best rows of one game, best score first. complete is
+        |            true while the board has never been full, meaning it
+        |            holds every gameplay row of the game.
+        *-------------------------------------------------------------------*/
+        private static final class Board {
+            final int[] gameplayIds;
+            final int[] memberIds;
+            final int[] scores;
+            int count = 0;
+            boolean complete = true;
+
+            Board(int size) {
+                gameplayIds = new int[size];
+                memberIds = new int[size];
+                scores = new int[size];
+            }
+
+            void add(int gameplayId, int memberId, int score) {
+                // already on the board, read by the load it is replayed onto
+                for (int i = 0; i < count; i++) {
+                    if (gameplayIds[i] == gameplayId) {
+                        return;
+                    }
+                }
+
+                if (count == scores.length) {
+                    complete = false;
+                    // not better than the last row
+                    if (score <= scores[count - 1]) {
+                        return;
+                    }
+                    count--;
+                }
+
+                // insert after every row with an equal or higher score
+                int i = count;
+                while (i > 0 && scores[i - 1] < score) {
+                    gameplayIds[i] = gameplayIds[i - 1];
+                    scores[i] = scores[i - 1];
+                    memberIds[i] = memberIds[i - 1];
+                    i--;
+                }
+                gameplayIds[i] = gameplayId;
+                scores[i] = score;
+                memberIds[i] = memberId;
+                count++;
+                if (count == scores.length) {
+                    complete = false;
+                }
+            }
+
+            boolean remove(IntHashSet removedIds) {
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    if (!removedIds.contains(memberIds[i])) {
+                        gameplayIds[kept] = gameplayIds[i];
+                        memberIds[kept] = memberIds[i];
+                        scores[kept] = scores[i];
+                        kept++;
+                    }
+                }
+                boolean removed = kept < count;
+                count = kept;
+                return removed;
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Class Boards
+        |
+        |  Purpose:  The boards of a set of games with the names shown on
+        |            them. The leaderboard's current boards hold every game; a
+        |            reload of stale games fills a Boards holding just those.
+        *-------------------------------------------------------------------*/
+        private static final class Boards {
+            final int size; /* rows kept per game */
+            final Map<Integer, String> gameNames = new TreeMap<>(); /* name of every game, in GameID order */
+            final Map<Integer, Board> boards = new HashMap<>(); /* best rows of each game with plays */
+            final Map<Integer, String[]> memberNames = new HashMap<>(); /* first and last name of members on a board */
+            final Set<Integer> stale = new HashSet<>(); /* games to reload before the next read */
+
+            Boards(int size) {
+                this.size = size;
+            }
+
+            void recordPlay(int gameplayId, int gameId, int memberId, int score) {
+                if (gameNames.containsKey(gameId)) {
+                    boards.computeIfAbsent(gameId, id -> new Board(size)).add(gameplayId, memberId, score);
+                }
+            }
+
+            void removeGame(int gameId) {
+                gameNames.remove(gameId);
+                boards.remove(gameId);
+                stale.remove(gameId);
+            }
+
+            void removeMembers(IntHashSet memberIds) {
+                memberNames.keySet().removeIf(memberIds::contains);
+                for (Map.Entry<Integer, Board> board : boards.entrySet()) {
+                    // rows below the cutoff of a full board may now belong on it
+                    if (board.getValue().remove(memberIds) && !board.getValue().complete) {
+                        stale.add(board.getKey());
+                    }
+                }
+            }
+
+            /*---------------------------------------------------------------------
+            |  Method load(dbConn, gameId)
+            |
+            |  Purpose:  Reads the best size rows of one game, or of every game
+            |            (and the game names) when gameId is null, with their
+            |            member names.
+            *-------------------------------------------------------------------*/
+            void load(Connection dbConn, Integer gameId) throws SQLException {
+                if (gameId == null) {
+                    try (Statement statement = dbConn.createStatement();
+                         ResultSet games = statement.executeQuery("SELECT GameID, Name FROM Game")) {
+                        while (games.next()) {
+                            gameNames.put(games.getInt("GameID"), games.getString("Name"));
+                        }
+                    }
+                }
+
+                String query = "SELECT Ranked.GameID, Ranked.GameplayID, Ranked.MemberID, Ranked.Score, " +
+                               "Member.Fname, Member.Lname " +
+                               "FROM (SELECT GameID, GameplayID, MemberID, Score, " +
+                               "ROW_NUMBER() OVER (PARTITION BY GameID ORDER BY Score DESC) AS Position " +
+                               "FROM Gameplay" + (gameId == null ? "" : " WHERE GameID = ?") + ") Ranked, Member " +
+                               "WHERE Ranked.Position <= ? AND Member.MemberID = Ranked.MemberID " +
+                               "ORDER BY Ranked.GameID, Ranked.Position";
+                try (PreparedStatement statement = dbConn.prepareStatement(query)) {
+                    int index = 1; // next parameter to set
+                    if (gameId != null) {
+                        statement.setInt(index++, gameId);
+                    }
+                    statement.setInt(index, size);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            int memberId = resultSet.getInt("MemberID");
+                            boards.computeIfAbsent(resultSet.getInt("GameID"), id -> new Board(size))
+                                  .add(resultSet.getInt("GameplayID"), memberId, resultSet.getInt("Score"));
+                            memberNames.put(memberId, new String[] {resultSet.getString("Fname"), resultSet.getString("Lname")});
+                        }
+                    }
+                }
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method highScores(dbConn)
+        |
+        |  Purpose:  Returns the rows of query a from the boards, loading or
+        |            reloading boards from the database first if needed. The
+        |            boards are read under the monitor; the members sharing a
+        |            tied high score and names not yet cached are looked up
+        |            after it is released.
+        |
+        |  Parameters:
+        |      dbConn -- Connection used when a board must be (re)loaded.
+        |
+        |  Returns:  List<Map<String, Object>> -- One row per high score with
+        |            the keys game, firstName, lastName and score.
+        *-------------------------------------------------------------------*/
+        List<Map<String, Object>> highScores(Connection dbConn) throws SQLException {
+            Boards read; // the boards the rows come from
+            List<Integer> gameIds = new ArrayList<>(); // games with a high score, in GameID order
+            List<String> games = new ArrayList<>(); // name of each of those games
+            List<Integer> highScores = new ArrayList<>(); // high score of each
+            List<List<Integer>> holders = new ArrayList<>(); // members holding it, null to look them up
+            Map<Integer, String[]> names = new HashMap<>(); // cached names of the holders
+            for (;;) {
+                refresh(dbConn);
+                synchronized (this) {
+                    // an invalidate or deletion got in after the refresh
+                    if (current == null || !current.stale.isEmpty()) {
+                        continue;
+                    }
+                    read = current;
+                    for (Map.Entry<Integer, String> game : read.gameNames.entrySet()) {
+                        Board board = read.boards.get(game.getKey());
+                        if (board == null || board.count == 0) {
+                            continue;
+                        }
+
+                        int highScore = board.scores[0];
+                        List<Integer> gameHolders = null; // members with the high score
+                        // every cached row ties, so more members may share the high score
+                        if (board.complete || board.scores[board.count - 1] != highScore) {
+                            gameHolders = new ArrayList<>();
+                            for (int i = 0; i < board.count && board.scores[i] == highScore; i++) {
+                                gameHolders.add(board.memberIds[i]);
+                                names.put(board.memberIds[i], read.memberNames.get(board.memberIds[i]));
+                            }
+                        }
+                        gameIds.add(game.getKey());
+                        games.add(game.getValue());
+                        highScores.add(highScore);
+                        holders.add(gameHolders);
+                    }
+                }
+                break;
+            }
+
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (int g = 0; g < games.size(); g++) {
+                List<Integer> gameHolders = holders.get(g);
+                if (gameHolders == null) {
+                    gameHolders = loadHolders(dbConn, gameIds.get(g), highScores.get(g));
+                }
+
+                for (int memberId : gameHolders) {
+                    String[] name = names.get(memberId);
+                    if (name == null) {
+                        name = loadName(dbConn, memberId);
+                        names.put(memberId, name);
+                        synchronized (this) {
+                            // only while the boards read are still current and still show the member
+                            if (current == read && onBoard(read, memberId)) {
+                                read.memberNames.putIfAbsent(memberId, name);
+                            }
+                        }
+                    }
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("game", games.get(g));
+                    row.put("firstName", name[0]);
+                    row.put("lastName", name[1]);
+                    row.put("score", highScores.get(g));
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+
+        synchronized void recordPlay(int gameplayId, int gameId, int memberId, int score) {
+            change(boards -> boards.recordPlay(gameplayId, gameId, memberId, score));
+        }
+
+        synchronized void addGame(int gameId, String name) {
+            change(boards -> boards.gameNames.put(gameId, name));
+        }
+
+        synchronized void removeGame(int gameId) {
+            change(boards -> boards.removeGame(gameId));
+        }
+
+        synchronized void removeMembers(IntHashSet memberIds) {
+            change(boards -> boards.removeMembers(memberIds));
+        }
+
+        synchronized void invalidate() {
+            current = null;
+            generation++;
+        }
+
+        // applies a change to the current boards, and to the ones being loaded; the caller holds the monitor
+        private void change(Consumer<Boards> change) {
+            if (current != null) {
+                change.accept(current);
+            }
+            if (pending != null) {
+                pending.add(change);
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method refresh(dbConn)
+        |
+        |  Purpose:  Loads every board if none are loaded, or reloads the
+        |            stale ones, without holding the monitor while the queries
+        |            run. The changes made meanwhile are replayed onto what was
+        |            read before it replaces the current boards.
+        *-------------------------------------------------------------------*/
+        private void refresh(Connection dbConn) throws SQLException {
+            loadLock.lock();
+            try {
+                for (;;) {
+                    long started; // generation the load reads
+                    Boards loaded; // what the load reads
+                    boolean full; // whether every board is read, rather than the stale ones
+                    synchronized (this) {
+                        if (current != null && current.stale.isEmpty()) {
+                            return;
+                        }
+                        started = generation;
+                        full = current == null;
+                        loaded = new Boards(size);
+                        if (!full) {
+                            for (Integer gameId : current.stale) {
+                                loaded.gameNames.put(gameId, current.gameNames.get(gameId));
+                            }
+                        }
+                        pending = new ArrayList<>();
+                    }
+
+                    List<Consumer<Boards>> changes; // made while the load ran
+                    try {
+                        if (full) {
+                            loaded.load(dbConn, null);
+                        } else {
+                            for (Integer gameId : loaded.gameNames.keySet()) {
+                                loaded.load(dbConn, gameId);
+                            }
+                        }
+                    } finally {
+                        synchronized (this) {
+                            changes = pending;
+                            pending = null;
+                        }
+                    }
+
+                    synchronized (this) {
+                        // invalidated while loading: what was read may be older than the invalidation
+                        if (generation != started) {
+                            continue;
+                        }
+                        for (Consumer<Boards> change : changes) {
+                            change.accept(loaded);
+                        }
+
+                        if (full) {
+                            current = loaded;
+                        } else {
+                            for (Integer gameId : loaded.gameNames.keySet()) {
+                                // removed while loading
+                                if (!current.gameNames.containsKey(gameId)) {
+                                    continue;
+                                }
+                                Board board = loaded.boards.get(gameId);
+                                if (board == null) {
+                                    current.boards.remove(gameId);
+                                } else {
+                                    current.boards.put(gameId, board);
+                                }
+                                current.stale.remove(gameId);
+                                if (loaded.stale.contains(gameId)) {
+                                    current.stale.add(gameId);
+                                }
+                            }
+                            current.memberNames.putAll(loaded.memberNames);
+                        }
+                    }
+                }
+            } finally {
+                loadLock.unlock();
+            }
+        }
+
+        private static boolean onBoard(Boards boards, int memberId) {
+            for (Board board : boards.boards.values()) {
+                for (int i = 0; i < board.count; i++) {
+                    if (board.memberIds[i] == memberId) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private List<Integer> loadHolders(Connection dbConn, int gameId, int score) throws SQLException {
+            List<Integer> holders = new ArrayList<>();
+            try (PreparedStatement statement = dbConn.prepareStatement(
+                    "SELECT MemberID FROM Gameplay WHERE GameID = ? AND Score = ?")) {
+                statement.setInt(1, gameId);
+                statement.setInt(2, score);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        holders.add(resultSet.getInt(1));
+                    }
+                }
+            }
+            return holders;
+        }
+
+        private String[] loadName(Connection dbConn, int memberId) throws SQLException {
+            String[] name = {null, null};
+            try (PreparedStatement statement = dbConn.prepareStatement(
+                    "SELECT Fname, Lname FROM Member WHERE MemberID = ?")) {
+                statement.setInt(1, memberId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        name[0] = resultSet.getString(1);
+                        name[1] = resultSet.getString(2);
+                    }
+                }
+            }
+            return name;
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method queryB(connection)
+    |
+    |  Purpose:  Retrieves the names and membership information of all members
+    |            who have spent at least $100 on tokens in the past month.
+    |            The method constructs and executes an SQL query to fetch
+    |            this information from the database and prints the results.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: List of qualifying members and their information is displayed.
+    |
+    |  Parameters:
+    |      connection -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void queryB(Connection dbConn) {
+        try {
+            List<Map<String, Object>> rows = getBigSpenders(dbConn);
+    
+            // Print the header for the result
+            System.out.println("\nNames and membership information of all members who have spent at least $100 on tokens in the past month:");
+            System.out.println("------------------------------------------------------------");
+    
+            // Iterate over the rows and print each member's information
+            for (Map<String, Object> row : rows) {
+                // Print member information
+                System.out.println("Member ID: " + row.get("memberId"));
+                System.out.println("Name: " + row.get("firstName") + " " + row.get("lastName"));
+                System.out.println("Telephone Number: " + row.get("telephoneNum"));
+                System.out.println("Address: " + row.get("address"));
+                System.out.println("Game Tokens: " + row.get("gameTokens"));
+                System.out.println("Total Spending: $" + row.get("totalSpending"));
+                System.out.println(String.format("Token Spending (past 30 days): $%.2f", row.get("tokenSpending")));
+                System.out.println("Membership Tier: " + row.get("membershipTier"));
+                System.out.println("Visit Count: " + row.get("visitCount"));
+                System.out.println("Last Visit Date: " + row.get("lastVisitDate"));
+                System.out.println("Total Tickets: " + row.get("totalTickets"));
+                System.out.println("--------------------------------------------");
+            }
+    
+            // Print the footer for the result
+            System.out.println("--------------------------------------------");
+        } catch (SQLException e) {
+            // Print any SQL exceptions that occur
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method getBigSpenders(connection)
+    |
+    |  Purpose:  Runs query b and returns its rows: the membership
+    |            information of the members who have spent at least $100 on
+    |            tokens in the past 30 days. Shared by queryB and script mode.
+    |            The members come from the TokenSpendWindow, so only their
+    |            Member rows are read, by primary key.
+    |
+    |  Pre-condition:  Connection to the database is established.
+    |
+    |  Post-condition: None.
+    |
+    |  Parameters:
+    |      connection -- Connection object representing the database connection.
+    |
+    |  Returns:  List<Map<String, Object>> -- One row per member in MemberID
+    |            order, with the keys of readMember and tokenSpending (the
+    |            member's token spending in the past 30 days).
+    *-------------------------------------------------------------------*/
+    private static List<Map<String, Object>> getBigSpenders(Connection dbConn) throws SQLException {
+        return metrics.time("queryB", () -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            Map<Integer, Long> spenders = tokenSpending.bigSpenders(dbConn); // MemberID -> cents spent, in MemberID order
+            List<Integer> memberIds = new ArrayList<>(spenders.keySet());
+
+            // read the members in chunks, Oracle allows at most 1000 values in an IN list
+            for (int start = 0; start < memberIds.size(); start += 1000) {
+                List<Integer> chunk = memberIds.subList(start, Math.min(start + 1000, memberIds.size()));
+                String query = "SELECT MemberID, Fname, Lname, TelephoneNum, Address, GameTokens, TotalSpending, " +
+                               "MembershipTier, VisitCount, LastVisitDate, TotalTickets " +
+                               "FROM Member " +
+                               "WHERE MemberID IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") " +
+                               "ORDER BY MemberID";
+
+                try (PreparedStatement statement = dbConn.prepareStatement(query)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setInt(i + 1, chunk.get(i));
+                    }
+                    // Execute the query and collect each member's information
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            Map<String, Object> member = readMember(resultSet);
+                            member.put("tokenSpending", spenders.get((Integer) member.get("memberId")) / 100.0);
+                            rows.add(member);
+                        }
+                    }
+                }
+            }
+
+            return rows;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method readMember(resultSet)
+    |
+    |  Purpose:  Reads the Member columns of the current row of a result set
+    |            into a map.
+    |
+    |  Pre-condition:  The result set is on a row with every Member column.
+    |
+    |  Post-condition: None.
+    |
+    |  Parameters:
+    |      resultSet -- Result set positioned on a member row.
+    |
+    |  Returns:  Map<String, Object> -- The keys memberId, firstName,
+    |            lastName, telephoneNum, address, gameTokens, totalSpending,
+    |            membershipTier, visitCount, lastVisitDate and totalTickets.
+    *-------------------------------------------------------------------*/
+    private static Map<String, Object> readMember(ResultSet resultSet) throws SQLException {
+        Map<String, Object> member = new LinkedHashMap<>();
+        member.put("memberId", resultSet.getInt("MemberID"));
+        member.put("firstName", resultSet.getString("Fname"));
+        member.put("lastName", resultSet.getString("Lname"));
+        member.put("telephoneNum", resultSet.getString("TelephoneNum"));
+        member.put("address", resultSet.getString("Address"));
+        member.put("gameTokens", resultSet.getInt("GameTokens"));
+        member.put("totalSpending", resultSet.getDouble("TotalSpending"));
+        member.put("membershipTier", resultSet.getString("MembershipTier"));
+        member.put("visitCount", resultSet.getInt("VisitCount"));
+        java.sql.Date lastVisit = resultSet.getDate("LastVisitDate");
+        member.put("lastVisitDate", lastVisit == null ? null : lastVisit.toString()); // yyyy-mm-dd whatever the driver
+        member.put("totalTickets", resultSet.getInt("TotalTickets"));
+        return member;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class MemberCache
+    |
+    |  Purpose:  The most recently used member profiles, keyed by MemberID,
+    |            so existence checks and profile reads at the front desk do
+    |            not go to the database. A miss reads the member by primary
+    |            key and caches it; once the cache holds capacity members the
+    |            least recently used one is evicted. The member flows write
+    |            through it: insertMember adds the new member,
+    |            updateMemberContact changes the cached contact details,
+    |            removeMembers forgets deleted members, and redeemPrize and
+    |            exchangeAllTickets forget members whose tickets they take.
+    |            Imports throw the whole cache away. Only changes made through
+    |            this program are seen by the cache.
+    |
+    |            A read that raced with a write is not cached, so a slow read
+    |            can never put back a profile a write has just replaced.
+    |
+    |  Methods:  - get(dbConn, memberId): The member's profile, or null.
+    |            - put(member), updateContact(memberId, phone, address),
+    |              remove(memberId), removeAll(memberIds): Write through.
+    |            - invalidate(): Forgets every member.
+    |            - stats(): Describes the size, hit rate and evictions.
+    *-------------------------------------------------------------------*/
+    private static final class MemberCache {
+        private final int capacity; /* most members kept, 0 for none */
+        private final LinkedHashMap<Integer, Map<String, Object>> profiles; /* least recently used first */
+        private long generation = 0; /* bumped by every write, so racing reads are not cached */
+        private long hits = 0;
+        private long misses = 0;
+        private long evictions = 0;
+
+        MemberCache(int capacity) {
+            this.capacity = Math.max(0, capacity);
+            this.profiles = new LinkedHashMap<Integer, Map<String, Object>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Map<String, Object>> eldest) {
+                    if (size() > MemberCache.this.capacity) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Map<String, Object> get(Connection dbConn, int memberId) throws SQLException {
+            long readGeneration; // generation the read started in
+            synchronized (this) {
+                Map<String, Object> member = profiles.get(memberId);
+                if (member != null) {
+                    hits++;
+                    return member;
+                }
+                misses++;
+                readGeneration = generation;
+            }
+
+            // read outside the lock, so other lookups are not held up by the database
+            Map<String, Object> member = null;
+            try (PreparedStatement statement = dbConn.prepareStatement(
+                    "SELECT MemberID, Fname, Lname, TelephoneNum, Address, GameTokens, TotalSpending, " +
+                    "MembershipTier, VisitCount, LastVisitDate, TotalTickets FROM Member WHERE MemberID = ?")) {
+                statement.setInt(1, memberId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        member = Collections.unmodifiableMap(readMember(resultSet));
+                    }
+                }
+            }
+
+            synchronized (this) {
+                if (member != null && generation == readGeneration && capacity > 0) {
+                    profiles.put(memberId, member);
+                }
+            }
+            return member;
+        }
+
+        synchronized void put(Map<String, Object> member) {
+            generation++;
+            if (capacity > 0) {
+                profiles.put((Integer) member.get("memberId"), Collections.unmodifiableMap(new LinkedHashMap<>(member)));
+            }
+        }
+
+        synchronized void updateContact(int memberId, String telephoneNum, String address) {
+            generation++;
+            Map<String, Object> member = profiles.get(memberId);
+            if (member == null) {
+                return;
+            }
+            Map<String, Object> updated = new LinkedHashMap<>(member);
+            if (telephoneNum != null) {
+                updated.put("telephoneNum", telephoneNum);
+            }
+            if (address != null) {
+                updated.put("address", address);
+            }
+            profiles.put(memberId, Collections.unmodifiableMap(updated));
+        }
+
+        synchronized void remove(int memberId) {
+            generation++;
+            profiles.remove(memberId);
+        }
+
+        synchronized void removeAll(IntHashSet memberIds) {
+            generation++;
+            profiles.keySet().removeIf(memberIds::contains);
+        }
+
+        synchronized void invalidate() {
+            generation++;
+            profiles.clear();
+        }
+
+        synchronized String stats() {
+            return String.format("Member cache: %d of %d members, %d hits, %d misses (%.1f%% hit rate), %d evicted",
+                                 profiles.size(), capacity, hits, misses,
+                                 hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses), evictions);
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class TokenSpendWindow
+    |
+    |  Purpose:  Sliding window of each member's token spending over the
+    |            last WINDOW_DAYS days, the question query b asks. Token
+    |            transactions are kept in one bucket per day; each member's
+    |            window total is kept in a primitive map, and the members at
+    |            or above the query b threshold in a sorted set. When the day
+    |            changes, the buckets that fall out of the window are
+    |            subtracted from the totals, so a read never scans history.
+    |
+    |            The window is loaded from the Transaction table on first use
+    |            (through the TransactionDate index) and then kept current by
+    |            record, which insertTransaction calls, and removeMembers.
+    |            The window ends today, or on the date given with
+    |            -Dprog4.today (e.g. 2024-04-30 for the sample data).
+    |            Transactions dated after today are not counted until their
+    |            day comes: recording one marks the window for a reload
+    |            instead of moving the window forward.
+    |
+    |  Methods:  - bigSpenders(dbConn): Members whose window total is at
+    |              least the threshold, with their totals in cents.
+    |            - record(memberId, cents, date): Adds a token transaction.
+    |            - removeMembers(memberIds): Forgets deleted members.
+    |            - invalidate(): Reloads the window on next use.
+    *-------------------------------------------------------------------*/
+    private static final class TokenSpendWindow {
+        private static final int WINDOW_DAYS = 30; /* days in the window, today included */
+
+        private final long thresholdCents; /* window total that makes a big spender */
+        private final int[][] bucketMembers = new int[WINDOW_DAYS][]; /* MemberID of each transaction, by day */
+        private final long[][] bucketCents = new long[WINDOW_DAYS][]; /* amount of each transaction, by day */
+        private final int[] bucketSizes = new int[WINDOW_DAYS]; /* transactions in each day's bucket */
+        private final IntLongHashMap totals = new IntLongHashMap(); /* window total of each member in cents */
+        private final TreeSet<Integer> bigSpenders = new TreeSet<>(); /* members at or above the threshold */
+        private long lastDay = Long.MIN_VALUE; /* epoch day the window ends on */
+        private boolean loaded = false; /* whether the window has been loaded */
+
+        TokenSpendWindow(long thresholdCents) {
+            this.thresholdCents = thresholdCents;
+            for (int i = 0; i < WINDOW_DAYS; i++) {
+                bucketMembers[i] = new int[16];
+                bucketCents[i] = new long[16];
+            }
+        }
+
+        synchronized Map<Integer, Long> bigSpenders(Connection dbConn) throws SQLException {
+            if (!loaded) {
+                load(dbConn);
+            }
+            advance(today());
+
+            Map<Integer, Long> spenders = new LinkedHashMap<>();
+            for (int memberId : bigSpenders) {
+                spenders.put(memberId, totals.get(memberId));
+            }
+            return spenders;
+        }
+
+        synchronized void record(int memberId, long cents, LocalDate date) {
+            if (!loaded) {
+                return;
+            }
+            if (date.toEpochDay() > today()) {
+                // counted by the reload of a later read, once its day is in the window
+                loaded = false;
+                return;
+            }
+            add(memberId, cents, date.toEpochDay());
+        }
+
+        synchronized void removeMembers(IntHashSet memberIds) {
+            // drop the members' transactions so an expiring bucket cannot subtract them again
+            for (int day = 0; day < WINDOW_DAYS; day++) {
+                for (int i = 0; i < bucketSizes[day]; i++) {
+                    int memberId = bucketMembers[day][i];
+                    if (bucketCents[day][i] != 0 && memberIds.contains(memberId)) {
+                        bucketCents[day][i] = 0;
+                        totals.put(memberId, 0);
+                        bigSpenders.remove(memberId);
+                    }
+                }
+            }
+        }
+
+        synchronized void invalidate() {
+            loaded = false;
+        }
+
+        private void load(Connection dbConn) throws SQLException {
+            Arrays.fill(bucketSizes, 0);
+            totals.clear();
+            bigSpenders.clear();
+            lastDay = today();
+
+            try (PreparedStatement statement = dbConn.prepareStatement(
+                    "SELECT MemberID, Amount, \"Date\" FROM Transaction "
+                    + "WHERE Type = 'Token' AND \"Date\" > ? AND \"Date\" <= ? AND MemberID IS NOT NULL")) {
+                statement.setDate(1, java.sql.Date.valueOf(LocalDate.ofEpochDay(lastDay - WINDOW_DAYS)));
+                statement.setDate(2, java.sql.Date.valueOf(LocalDate.ofEpochDay(lastDay)));
+                statement.setFetchSize(IMPORT_BATCH_SIZE);
+                try (ResultSet transactions = statement.executeQuery()) {
+                    while (transactions.next()) {
+                        add(transactions.getInt("MemberID"), Math.round(transactions.getDouble("Amount") * 100),
+                            transactions.getDate("Date").toLocalDate().toEpochDay());
+                    }
+                }
+            }
+            // only now, so a failed read is retried by the next bigSpenders
+            loaded = true;
+        }
+
+        private void add(int memberId, long cents, long day) {
+            advance(today());
+            if (day <= lastDay - WINDOW_DAYS || day > lastDay) {
+                return;
+            }
+
+            int bucket = (int) Math.floorMod(day, (long) WINDOW_DAYS);
+            int size = bucketSizes[bucket];
+            if (size == bucketMembers[bucket].length) {
+                bucketMembers[bucket] = Arrays.copyOf(bucketMembers[bucket], size * 2);
+                bucketCents[bucket] = Arrays.copyOf(bucketCents[bucket], size * 2);
+            }
+            bucketMembers[bucket][size] = memberId;
+            bucketCents[bucket][size] = cents;
+            bucketSizes[bucket] = size + 1;
+            update(memberId, cents);
+        }
+
+        private void advance(long day) {
+            if (day <= lastDay) {
+                return;
+            }
+
+            // expire the buckets of the days leaving the window, at most a whole window's worth
+            for (long next = Math.max(lastDay + 1, day - WINDOW_DAYS + 1); next <= day; next++) {
+                int bucket = (int) Math.floorMod(next, (long) WINDOW_DAYS);
+                for (int i = 0; i < bucketSizes[bucket]; i++) {
+                    update(bucketMembers[bucket][i], -bucketCents[bucket][i]);
+                }
+                bucketSizes[bucket] = 0;
+            }
+            lastDay = day;
+        }
+
+        private void update(int memberId, long cents) {
+            if (cents == 0) {
+                return;
+            }
+            if (totals.add(memberId, cents) >= thresholdCents) {
+                bigSpenders.add(memberId);
+            } else {
+                bigSpenders.remove(memberId);
+            }
+        }
+
+        private static long today() {
+            String today = System.getProperty("prog4.today");
+            return (today == null ? LocalDate.now() : LocalDate.parse(today)).toEpochDay();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class IntLongHashMap
+    |
+    |  Purpose:  Open-addressing hash map from primitive int keys to long
+    |            values, the counterpart of IntHashSet for running totals.
+    |            Missing keys read as 0. Entries are never removed; a key set
+    |            back to 0 keeps its slot, so the map is bounded by the
+    |            number of distinct keys.
+    |
+    |  Methods:  - get(int key): The value of the key, 0 if missing.
+    |            - add(int key, long delta): Adds delta, returns the new value.
+    |            - put(int key, long value): Sets the value.
+    |            - addAll(other): Adds every value of other to this map.
+    |            - size(): The number of keys.
+    |            - sortedKeys(): The keys in ascending order.
+    |            - clear(): Removes every entry.
+    *-------------------------------------------------------------------*/
+    private static final class IntLongHashMap {
+        private int[] keys = new int[16]; /* hash table keys, length is always a power of two */
+        private long[] values = new long[16]; /* value of the key in the same slot */
+        private boolean[] used = new boolean[16]; /* whether the slot holds a key */
+        private int size = 0; /* number of keys in the map */
+
+        long get(int key) {
+            int index = find(key);
+            return used[index] ? values[index] : 0;
+        }
+
+        long add(int key, long delta) {
+            int index = slot(key);
+            values[index] += delta;
+            return values[index];
+        }
+
+        void put(int key, long value) {
+            values[slot(key)] = value;
+        }
+
+        void addAll(IntLongHashMap other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.used[i]) {
+                    add(other.keys[i], other.values[i]);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] sortedKeys() {
+            int[] sorted = new int[size];
+            int count = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (used[i]) {
+                    sorted[count++] = keys[i];
+                }
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        void clear() {
+            Arrays.fill(used, false);
+            Arrays.fill(values, 0);
+            size = 0;
+        }
+
+        private int slot(int key) {
+            // keep the table at most half full
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int index = find(key);
+            if (!used[index]) {
+                used[index] = true;
+                keys[index] = key;
+                values[index] = 0;
+                size++;
+            }
+            return index;
+        }
+
+        private int find(int key) {
+            int mask = keys.length - 1;
+            int index = IntHashSet.mix(key) & mask;
+            // probe until the key or a free slot is found
+            while (used[index] && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            long[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            // re-insert every entry into the larger table
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    int index = find(oldKeys[i]);
+                    used[index] = true;
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method queryC(connection)
+    |
+    |  Purpose:  Retrieves available rewards for a given member ID based
+    |            on the total tickets earned by the member.
+    |
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
+    |
+    |  Post-condition: Displays available rewards for the specified member
+    |                  ID along with their ticket costs.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void queryC(Connection dbConn) {
+        Scanner scanner = new Scanner(System.in); // initialize scanner for user input
+        System.out.println("Enter member ID to view available rewards:");
+        int memberId = scanner.nextInt(); // get memberID
+
+        try {
+            List<Map<String, Object>> rows = getAvailableRewards(dbConn, memberId); // rewards the member can afford
+
+            System.out.println("\nAvailable rewards for member ID " + memberId + ":");
+            System.out.println("-----------------------------------------------");
+            // iterate through every row returned
+            for (Map<String, Object> row : rows) {
+                System.out.println("Prize: " + row.get("name") + ", Ticket cost: " + row.get("ticketCost")); // print result
+            }
+            System.out.println("-----------------------------------------------");
+        } catch (SQLException e) {
+            System.err.println("Error in calculating query c.");
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method getAvailableRewards(connection, memberId)
+    |
+    |  Purpose:  Runs query c and returns its rows: the prizes the member
+    |            can afford with their tickets, cheapest first. Shared by
+    |            queryC and script mode. The member's balance comes from the
+    |            member cache and the prizes from the PrizeCatalog.
+    |
+    |  Pre-condition:  The JDBC database connection is valid and points to
+    |                  the target database.
+    |
+    |  Post-condition: None.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |      memberId -- The ID of the member.
+    |
+    |  Returns:  List<Map<String, Object>> -- One row per prize with the keys
+    |            name and ticketCost.
+    *-------------------------------------------------------------------*/
+    private static List<Map<String, Object>> getAvailableRewards(Connection dbConn, int memberId) throws SQLException {
+        return metrics.time("queryC", () -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+
+            Map<String, Object> member = members.get(dbConn, memberId); // the member's profile, null if there is no such member
+            if (member == null) {
+                return rows;
+            }
+            int tickets = (Integer) member.get("totalTickets"); // the member's ticket balance
+
+            // the affordable prizes are the cheapest ones in the catalog
+            PrizeCatalog catalog = PrizeCatalog.get(dbConn);
+            int affordable = catalog.affordable(tickets);
+            for (int i = 0; i < affordable; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("name", catalog.names[i]); // get prize name
+                row.put("ticketCost", catalog.costs[i]); // get ticket cost
+                rows.add(row);
+            }
+
+            return rows;
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class PrizeCatalog
+    |
+    |  Purpose:  In-memory copy of the Prize table sorted by TicketCost, so
+    |            the prizes a ticket balance can afford are the prefix found
+    |            by one binary search, with no database round trip. The
+    |            catalog is loaded on first use and thrown away by
+    |            invalidate(), which insertPrize and redeemPrize call when
+    |            they change the table; the next use reloads it.
+    |
+    |            A loaded catalog is never changed, so readers on any thread
+    |            use it without locking. invalidate() also bumps a generation
+    |            counter, and a load only publishes its catalog if the
+    |            counter has not moved since the load began, so a load that
+    |            read the table before a change cannot bring the old prizes
+    |            back after that change's invalidate().
+    |
+    |            basket(tickets) answers from a subset sum table built with
+    |            the catalog: for every balance, the largest total of
+    |            distinct prizes that fits in it, and the last prize of a
+    |            basket with that total. Balances are counted in units of the greatest
+    |            common divisor of the costs (50 tickets for the synthetic
+    |            data), so the table has one entry per affordable bucket
+    |            rather than per ticket, and is built 64 balances at a time
+    |            with bit shifts. A basket then takes one step per prize in
+    |            it, whatever the balance. A catalog whose table would exceed
+    |            MAX_BASKET_UNITS entries picks greedily, dearest first.
+    |
+    |            The table costs one pass over the bit set per prize. For the
+    |            200 prizes of the synthetic data that is about 5.5 ms on a
+    |            cold JVM and 0.3 ms once compiled, paid by every load, so
+    |            again after each redemption and exchange (they invalidate
+    |            the catalog). It is built by the constructor, never by
+    |            basket(), and exchangeAllTickets loads the catalog before
+    |            it locks any row, so no lock is held while it is built.
+    |
+    |  Methods:  - get(dbConn): The current catalog, loading it if needed.
+    |            - affordable(tickets): Number of prizes costing at most
+    |              tickets; they are entries 0 to that number - 1.
+    |            - basket(tickets): Entries of the distinct prizes whose
+    |              costs add up closest to tickets without going over.
+    |            - invalidate(): Reloads the catalog on next use.
+    *-------------------------------------------------------------------*/
+    private static final class PrizeCatalog {
+        private static volatile PrizeCatalog current = null; /* loaded catalog, null until next use */
+        private static long generation = 0; /* bumped by invalidate, so a load racing it is not published */
+
+        final int[] ids; /* PrizeID of each prize, cheapest first */
+        final String[] names; /* Name of each prize */
+        final int[] costs; /* TicketCost of each prize, ascending */
+
+        private static final int MAX_BASKET_UNITS = 1 << 22; /* largest subset sum table built, 32 MB */
+        private int unit; /* tickets per balance bucket, the gcd of the costs */
+        private int[] via; /* entry that completed each reachable bucket total */
+        private int[] best; /* largest reachable total of each bucket balance, empty if too big to build */
+
+        private PrizeCatalog(int[] ids, String[] names, int[] costs) {
+            this.ids = ids;
+            this.names = names;
+            this.costs = costs;
+            buildBaskets();
+        }
+
+        static PrizeCatalog get(Connection dbConn) throws SQLException {
+            PrizeCatalog catalog = current;
+            if (catalog != null) {
+                return catalog;
+            }
+
+            long readGeneration; // generation the load started in
+            synchronized (PrizeCatalog.class) {
+                readGeneration = generation;
+            }
+            catalog = load(dbConn);
+            synchronized (PrizeCatalog.class) {
+                // an invalidate() since the load began may mean the rows read are already out of date
+                if (generation == readGeneration) {
+                    current = catalog;
+                }
+            }
+            return catalog;
+        }
+
+        static synchronized void invalidate() {
+            current = null;
+            generation++;
+        }
+
+        int size() {
+            return costs.length;
+        }
+
+        int affordable(int tickets) {
+            // first index whose cost is above tickets
+            int low = 0;
+            int high = costs.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (costs[middle] <= tickets) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        int[] basket(int tickets) {
+            if (costs.length == 0 || tickets < costs[0]) {
+                return new int[0];
+            }
+            int[] totals = best;
+
+            // the table is too big to build: take the dearest prize that still fits, repeatedly
+            if (totals.length == 0) {
+                int[] basket = new int[costs.length];
+                int count = 0;
+                for (int i = costs.length - 1; i >= 0; i--) {
+                    if (costs[i] <= tickets) {
+                        basket[count++] = i;
+                        tickets -= costs[i];
+                    }
+                }
+                return Arrays.copyOf(basket, count);
+            }
+
+            // walk back from the best total, one prize per step
+            int total = totals[Math.min(tickets / unit, totals.length - 1)];
+            int[] basket = new int[costs.length];
+            int count = 0;
+            while (total > 0) {
+                int entry = via[total];
+                basket[count++] = entry;
+                total -= costs[entry] / unit;
+            }
+            return Arrays.copyOf(basket, count);
+        }
+
+        private void buildBaskets() {
+            int divisor = 0;
+            long sum = 0;
+            for (int cost : costs) {
+                divisor = gcd(divisor, cost);
+                sum += cost;
+            }
+            if (divisor <= 0 || sum / divisor >= MAX_BASKET_UNITS) {
+                best = new int[0];
+                return;
+            }
+            unit = divisor;
+            int size = (int) (sum / divisor) + 1; // bucket totals 0 to the whole catalog
+
+            // 0/1 subset sum as a bit set: adding a prize ORs in the set shifted by its cost
+            long[] reachable = new long[(size + 63) >>> 6];
+            reachable[0] = 1L;
+            int[] completedBy = new int[size];
+            int top = 0; // largest reachable total so far
+            for (int entry = 0; entry < costs.length; entry++) {
+                int shift = costs[entry] / divisor;
+                top += shift;
+                int wordShift = shift >>> 6;
+                int bitShift = shift & 63;
+                // highest word first, so each word is read before this prize changes it
+                for (int word = top >>> 6; word >= wordShift; word--) {
+                    long shifted = reachable[word - wordShift] << bitShift;
+                    if (bitShift != 0 && word - wordShift > 0) {
+                        shifted |= reachable[word - wordShift - 1] >>> (64 - bitShift);
+                    }
+                    long added = shifted & ~reachable[word]; // totals this prize makes reachable
+                    reachable[word] |= added;
+                    while (added != 0) {
+                        completedBy[(word << 6) + Long.numberOfTrailingZeros(added)] = entry;
+                        added &= added - 1;
+                    }
+                }
+            }
+
+            int[] totals = new int[size];
+            for (int total = 1; total < size; total++) {
+                totals[total] = (reachable[total >>> 6] & (1L << total)) != 0 ? total : totals[total - 1];
+            }
+            via = completedBy;
+            best = totals;
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) {
+                int remainder = a % b;
+                a = b;
+                b = remainder;
+            }
+            return a;
+        }
+
+        private static PrizeCatalog load(Connection dbConn) throws SQLException {
+            List<Integer> ids = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            List<Integer> costs = new ArrayList<>();
+            try (Statement statement = dbConn.createStatement();
+                 ResultSet prizes = statement.executeQuery("SELECT PrizeID, Name, TicketCost FROM Prize ORDER BY TicketCost, PrizeID")) {
+                while (prizes.next()) {
+                    ids.add(prizes.getInt("PrizeID"));
+                    names.add(prizes.getString("Name"));
+                    costs.add(prizes.getInt("TicketCost"));
+                }
+            }
+
+            int[] idArray = new int[ids.size()];
+            int[] costArray = new int[costs.size()];
+            for (int i = 0; i < idArray.length; i++) {
+                idArray[i] = ids.get(i);
+                costArray[i] = costs.get(i);
+            }
+            return new PrizeCatalog(idArray, names.toArray(new String[0]), costArray);
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    | Method queryD(connection)
+    |
+    | Purpose: Retrieves the total number of tickets earned by each member
+    | for a specific game.
+    | The method prompts the user to input the Game ID, then constructs
+    | and executes an SQL query to fetch this information from the database
+    | and prints the results. Game ID 0 prints the report of every game
+    | (see writeTicketsReport).
+    |
+    | Pre-condition: Connection to the database is established.
+    |
+    | Post-condition: Total tickets earned by each member for the specified game
+    | are displayed.
+    |
+    | Parameters:
+    | connection -- Connection object representing the database connection.
+    |
+    | Returns: None.
+    *-------------------------------------------------------------------*/
+    private static void queryD(Connection dbConn) {
+        Scanner scanner = new Scanner(System.in);
+    
+        // Prompt the user to enter the Game ID
+        System.out.println("Enter Game ID (0 for every game):");
+        int gameId = scanner.nextInt();
+
+        if (gameId == 0) {
+            try {
+                System.out.println("\nGameID,MemberID,TotalTicketsEarned");
+                long lines = writeTicketsReport(dbConn, new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+                System.out.println(lines + " members and games.");
+            } catch (SQLException | IOException e) {
+                System.err.println("Error in writing the tickets report.");
+                e.printStackTrace();
+            }
+            return;
+        }
+    
+        try {
+            List<Map<String, Object>> rows = getTicketsEarned(dbConn, gameId);
+    
+            // Print the header for the result
+            System.out.println("\nTotal tickets earned by each member for Game ID " + gameId + ":");
+            System.out.println("-----------------------------------------------");
+    
+            // Iterate over the rows and print each member's total tickets earned
+            for (Map<String, Object> row : rows) {
+                System.out.println("Member ID: " + row.get("memberId") + ", Total Tickets Earned: " + row.get("totalTicketsEarned"));
+            }
+    
+            // Print the footer for the result
+            System.out.println("-----------------------------------------------");
+        } catch (SQLException e) {
+            // Print error message if there is an SQL exception
+            System.err.println("Error in executing query d.");
+            e.printStackTrace();
+        }
+    
+        // Close the scanner
+        //scanner.close();
+    }
+
+    /*---------------------------------------------------------------------
+    | Method getTicketsEarned(connection, gameId)
+    |
+    | Purpose: Runs query d and returns its rows: the total number of
+    | tickets each member has earned on a game. Shared by queryD and
+    | script mode. The totals are summed from the Gameplay columns when
+    | they are turned on, else read from the database (see
+    | queryTicketsEarned).
+    |
+    | Pre-condition: Connection to the database is established.
+    |
+    | Post-condition: None.
+    |
+    | Parameters:
+    | connection -- Connection object representing the database connection.
+    | gameId -- The ID of the game.
+    |
+    | Returns: List<Map<String, Object>> -- One row per member with the keys
+    | memberId and totalTicketsEarned.
+    *-------------------------------------------------------------------*/
+    private static List<Map<String, Object>> getTicketsEarned(Connection dbConn, int gameId) throws SQLException {
+        return metrics.time("queryD", () -> {
+            if (GAMEPLAY_COLUMNS) {
+                return gameplayColumns.ticketsEarned(dbConn, gameId);
+            }
+            return queryTicketsEarned(dbConn, gameId);
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    | Method queryTicketsEarned(connection, gameId)
+    |
+    | Purpose: Computes the rows of query d in the database. The totals are
+    | read from GameTickets by its primary key instead of summing the
+    | game's Gameplay rows.
+    |
+    | Pre-condition: Connection to the database is established.
+    |
+    | Post-condition: None.
+    |
+    | Parameters:
+    | connection -- Connection object representing the database connection.
+    | gameId -- The ID of the game.
+    |
+    | Returns: List<Map<String, Object>> -- Same rows as getTicketsEarned.
+    *-------------------------------------------------------------------*/
+    private static List<Map<String, Object>> queryTicketsEarned(Connection dbConn, int gameId) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        // SQL query to select the total tickets earned by each member for the specified Game ID
+        String query = "SELECT MemberID, TotalTickets AS TotalTicketsEarned FROM GameTickets WHERE GameID = ?";
+
+        try (PreparedStatement statement = dbConn.prepareStatement(query)) {
+            statement.setInt(1, gameId);
+            // Execute the query and collect each member's total tickets earned
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("memberId", resultSet.getInt("MemberID"));
+                    row.put("totalTicketsEarned", resultSet.getInt("TotalTicketsEarned"));
+                    rows.add(row);
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    /*---------------------------------------------------------------------
+    | Method getGameStats(connection)
+    |
+    | Purpose: Aggregates the plays of every game: how many there were,
+    | the tickets they earned, the high and average score and the
+    | first and last day played. Scans the Gameplay columns when they
+    | are turned on, else groups Gameplay in the database.
+    |
+    | Pre-condition: Connection to the database is established.
+    |
+    | Post-condition: None.
+    |
+    | Parameters:
+    | connection -- Connection object representing the database connection.
+    |
+    | Returns: List<Map<String, Object>> -- One row per game with plays, in
+    | GameID order, with the keys gameId, plays, ticketsEarned, highScore,
+    | averageScore, firstPlayed and lastPlayed.
+    *-------------------------------------------------------------------*/
+    private static List<Map<String, Object>> getGameStats(Connection dbConn) throws SQLException {
+        return metrics.time("gameStats", () -> {
+            if (GAMEPLAY_COLUMNS) {
+                return gameplayColumns.gameStats(dbConn);
+            }
+
+            List<Map<String, Object>> rows = new ArrayList<>();
+            String query = "SELECT GameID, COUNT(*) AS Plays, SUM(TicketsEarned) AS Tickets, MAX(Score) AS HighScore, " +
+                           "AVG(Score) AS AverageScore, MIN(\"Date\") AS FirstPlayed, MAX(\"Date\") AS LastPlayed " +
+                           "FROM Gameplay GROUP BY GameID ORDER BY GameID";
+
+            try (Statement statement = dbConn.createStatement();
+                 ResultSet resultSet = statement.executeQuery(query)) {
+                while (resultSet.next()) {
+                    java.sql.Date first = resultSet.getDate("FirstPlayed");
+                    java.sql.Date last = resultSet.getDate("LastPlayed");
+                    rows.add(gameStatsRow(resultSet.getInt("GameID"), resultSet.getInt("Plays"), resultSet.getLong("Tickets"),
+                                          resultSet.getInt("HighScore"), resultSet.getDouble("AverageScore"),
+                                          first == null ? null : first.toLocalDate(), last == null ? null : last.toLocalDate()));
+                }
+            }
+
+            return rows;
+        });
+    }
+
+    // one row of getGameStats, the same whether it was computed in memory or in the database
+    private static Map<String, Object> gameStatsRow(int gameId, int plays, long tickets, int highScore, double averageScore,
+                                                    LocalDate firstPlayed, LocalDate lastPlayed) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("gameId", gameId);
+        row.put("plays", plays);
+        row.put("ticketsEarned", tickets);
+        row.put("highScore", highScore);
+        row.put("averageScore", Math.round(averageScore * 100) / 100.0);
+        row.put("firstPlayed", firstPlayed == null ? null : firstPlayed.toString());
+        row.put("lastPlayed", lastPlayed == null ? null : lastPlayed.toString());
+        return row;
+    }
+
+    /*---------------------------------------------------------------------
+    | Method writeTicketsReport(connection, out)
+    |
+    | Purpose: Runs query d for every game at once, in place of one query
+    | per game, as CSV lines of GameID,MemberID,TotalTicketsEarned (see
+    | ticketsReport).
+    |
+    | Pre-condition: Connection to the database is established.
+    |
+    | Post-condition: The report has been written to out.
+    |
+    | Parameters:
+    | connection -- Connection object representing the database connection.
+    | out -- Writer the report goes to; flushed, not closed.
+    |
+    | Returns: long -- Lines written, one per game and member.
+    *-------------------------------------------------------------------*/
+    private static long writeTicketsReport(Connection dbConn, Writer out) throws SQLException, IOException {
+        return writeTicketsReport(dbConn, () -> out);
+    }
+
+    // the report written to a writer opened once the rows are ready (see ticketsReport), measured as ticketsReport
+    private static long writeTicketsReport(Connection dbConn, ReportOutput output) throws SQLException, IOException {
+        long start = System.nanoTime();
+        long startTrips = Metrics.roundTrips();
+        boolean failed = true;
+        try {
+            long lines = ticketsReport(dbConn, output);
+            failed = false;
+            return lines;
+        } finally {
+            metrics.record("ticketsReport", System.nanoTime() - start, Metrics.roundTrips() - startTrips, failed);
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Interface ReportOutput
+    |
+    |  Purpose:  Where a report is written, opened by ticketsReport once
+    |            its rows are ready and before the first line.
+    *-------------------------------------------------------------------*/
+    @FunctionalInterface
+    private interface ReportOutput {
+        Writer open() throws IOException;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method ticketsReport(connection, output)
+    |
+    |  Purpose:  Writes the lines of writeTicketsReport in GameID and then
+    |            MemberID order. With the Gameplay columns in memory they
+    |            are summed in parallel on REPORT_THREADS threads (see
+    |            GameplayColumns.writeTicketReport). Otherwise the totals
+    |            are already in GameTickets, keyed by (GameID, MemberID), so
+    |            the table is read in key order and each row written as it
+    |            arrives; Gameplay is not read at all and nothing is held
+    |            in memory. The output is opened only once the rows are
+    |            summed or the query has run, so a caller can still report
+    |            those failures in place of the report.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the rows are read on.
+    |      output -- Opens the writer the lines go to; it is flushed, not
+    |                closed.
+    |
+    |  Throws:
+    |      SQLException -- If the rows cannot be read.
+    |      IOException -- If the output cannot be opened or written.
+    |
+    |  Returns:  long -- Lines written.
+    *-------------------------------------------------------------------*/
+    private static long ticketsReport(Connection dbConn, ReportOutput output) throws SQLException, IOException {
+        if (GAMEPLAY_COLUMNS) {
+            GameplayColumns.Snapshot rows = gameplayColumns.get(dbConn);
+            IntLongHashMap[] totals = GameplayColumns.sumTickets(rows, REPORT_THREADS);
+            return GameplayColumns.writeTicketReport(rows, totals, output.open());
+        }
+
+        try (Statement statement = dbConn.createStatement()) {
+            statement.setFetchSize(10000); // stream the totals in large chunks
+            try (ResultSet resultSet = statement.executeQuery(
+                    "SELECT GameID, MemberID, TotalTickets FROM GameTickets ORDER BY GameID, MemberID")) {
+                Writer out = output.open();
+                long lines = 0;
+                StringBuilder text = new StringBuilder(); // lines not yet handed to out
+                while (resultSet.next()) {
+                    text.append(resultSet.getInt(1)).append(',').append(resultSet.getInt(2)).append(',')
+                        .append(resultSet.getInt(3)).append('\n');
+                    lines++;
+                    if (text.length() >= 8192) {
+                        out.append(text);
+                        text.setLength(0);
+                    }
+                }
+                out.append(text);
+                out.flush();
+                return lines;
+            }
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method createTicketTotals(connection)
+    |
+    |  Purpose:  Creates the GameTickets table if it does not exist and fills
+    |            it from Gameplay. GameTickets holds SUM(TicketsEarned) of
+    |            every (GameID, MemberID) pair in Gameplay, keyed by the pair,
+    |            so query d is a primary key range lookup. It is derived data:
+    |            rebuildTicketTotals recomputes it, recordTickets adds new
+    |            gameplay rows to it, and removeMember and removeGame delete
+    |            the totals of the rows they delete.
+    |
+    |  Pre-condition:  The tables exist.
+    |
+    |  Post-condition: GameTickets exists.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void createTicketTotals(Connection dbConn) {
+        if (tableExists(dbConn, "GameTickets")) {
+            return;
+        }
+
+        try (Statement statement = dbConn.createStatement()) {
+            statement.execute("CREATE TABLE GameTickets (" +
+                              "GameID INT, " +
+                              "MemberID INT, " +
+                              "TotalTickets INT, " +
+                              "PRIMARY KEY (GameID, MemberID)" +
+                              ")");
+            System.out.println("Table GameTickets created successfully.");
+            rebuildTicketTotals(dbConn);
+        } catch (SQLException e) {
+            System.err.println("Could not create table GameTickets.");
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method createRedemptionLog(connection)
+    |
+    |  Purpose:  Creates the PrizeRedemption table if it does not exist. It
+    |            logs every prize redeemed, with the member, the prize's
+    |            name and cost and the date, so the history survives the
+    |            prize row being deleted. It has no foreign keys for the same
+    |            reason.
+    |
+    |  Post-condition: PrizeRedemption exists.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void createRedemptionLog(Connection dbConn) {
+        if (tableExists(dbConn, "PrizeRedemption")) {
+            return;
+        }
+
+        try (Statement statement = dbConn.createStatement()) {
+            statement.execute("CREATE TABLE PrizeRedemption (" +
+                              "MemberID INT, " +
+                              "PrizeID INT, " +
+                              "Name VARCHAR(100), " +
+                              "TicketCost INT, " +
+                              "RedeemedOn DATE" +
+                              ")");
+            System.out.println("Table PrizeRedemption created successfully.");
+        } catch (SQLException e) {
+            System.err.println("Could not create table PrizeRedemption.");
+            e.printStackTrace();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method rebuildTicketTotals(connection)
+    |
+    |  Purpose:  Recomputes GameTickets from Gameplay in one transaction.
+    |            Needed after Gameplay is changed outside this program.
+    |
+    |  Pre-condition:  GameTickets exists.
+    |
+    |  Post-condition: GameTickets matches Gameplay.
+    |
+    |  Parameters:
+    |      dbConn -- Connection object representing the database connection.
+    |
+    |  Throws:
+    |      SQLException -- If the rebuild fails; nothing is changed then.
+    |
+    |  Returns:  int -- Number of (GameID, MemberID) totals written.
+    *-------------------------------------------------------------------*/
+    private static int rebuildTicketTotals(Connection dbConn) throws SQLException {
+        return metrics.time("rebuildTicketTotals", () -> {
+            long startTime = System.nanoTime();
+            boolean autoCommit = dbConn.getAutoCommit(); // restored when done
+            dbConn.setAutoCommit(false);
+
+            try (Statement statement = dbConn.createStatement()) {
+                statement.executeUpdate("DELETE FROM GameTickets");
+                int totals = statement.executeUpdate("INSERT INTO GameTickets (GameID, MemberID, TotalTickets) " +
+                                                     "SELECT GameID, MemberID, SUM(TicketsEarned) FROM Gameplay " +
+                                                     "GROUP BY GameID, MemberID");
+                dbConn.commit();
+
+                double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+                System.out.println(String.format("Rebuilt %d GameTickets totals in %.2f seconds.", totals, seconds));
+                return totals;
+            } catch (SQLException e) {
+                dbConn.rollback();
+                throw e;
+            } finally {
+                dbConn.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method recordTickets(connection, ticketsByPair)
+    |
+    |  Purpose:  Adds the tickets of new gameplay rows to GameTickets with
+    |            one batched MERGE, one row per (game, member) pair.
+    |            Anything that inserts into Gameplay calls this in the same
+    |            transaction as the insert.
+    |
+    |  Pre-condition:  GameTickets exists.
+    |
+    |  Post-condition: Each member's total for each game includes the new
+    |                  tickets.
+    |
+    |  Parameters:
+    |      dbConn -- Connection the Gameplay rows were inserted on.
+    |      ticketsByPair -- Tickets earned, keyed by GameID << 32 | MemberID.
+    |                       Sorted keys lock the totals in a fixed order.
+    |
+    |  Throws:
+    |      SQLException -- If the totals cannot be updated.
+    |
+    |  Returns:  None.
+    *-------------------------------------------------------------------*/
+    private static void recordTickets(Connection dbConn, SortedMap<Long, Integer> ticketsByPair) throws SQLException {
+        try (PreparedStatement statement = dbConn.prepareStatement(
+                "MERGE INTO GameTickets t " +
+                "USING (SELECT ? AS GameID, ? AS MemberID, ? AS Tickets FROM dual) s " +
+                "ON (t.GameID = s.GameID AND t.MemberID = s.MemberID) " +
+                "WHEN MATCHED THEN UPDATE SET t.TotalTickets = t.TotalTickets + s.Tickets " +
+                "WHEN NOT MATCHED THEN INSERT (GameID, MemberID, TotalTickets) VALUES (s.GameID, s.MemberID, s.Tickets)")) {
+            for (Map.Entry<Long, Integer> total : ticketsByPair.entrySet()) {
+                statement.setInt(1, (int) (total.getKey() >> 32));
+                statement.setInt(2, total.getKey().intValue());
+                statement.setInt(3, total.getValue());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class GameplayColumns
+    |
+    |  Purpose:  In-memory copy of the Gameplay table stored by column: one
+    |            int[] each for GameplayID, MemberID, GameID, Score,
+    |            TicketsEarned and the Date as a day count since 1970-01-01.
+    |            A row costs 24 bytes instead of a row object with boxed
+    |            fields, so the whole table fits in memory and query a,
+    |            query d and the per game aggregates become loops over
+    |            arrays instead of trips to the database. Turned on with
+    |            -Dprog4.gameplay.columns=true.
+    |
+    |            The copy is loaded from the database the first time it is
+    |            read (fromCsv builds one from a Gameplay CSV instead) and
+    |            kept current by the methods changing Gameplay: the gameplay
+    |            ingestor appends the plays it commits, and removeMembers and
+    |            removeGame drop rows. Imports throw it away. Only changes
+    |            made through this program are seen.
+    |
+    |            Readers never lock: they work on the current Snapshot, whose
+    |            arrays never change below its size. Appends fill the arrays
+    |            past the size, growing them by doubling, and publish a new
+    |            Snapshot; removals copy the rows kept into new arrays. Plays
+    |            committed while a load runs are held aside and added after
+    |            it, unless the load (which reads in GameplayID order) already
+    |            has them.
+    |
+    |  Methods:  - get(dbConn): The current snapshot, loaded if needed.
+    |            - fromCsv(file): A snapshot of a Gameplay CSV.
+    |            - append(...), removeMembers(memberIds), removeGame(gameId):
+    |              Keep the snapshot in step with Gameplay.
+    |            - invalidate(): Reloads on the next read.
+    |            - highScores(dbConn), ticketsEarned(dbConn, gameId),
+    |              gameStats(dbConn): Queries answered by scanning it.
+    |            - sumTickets(rows, threads), writeTicketReport(rows, totals,
+    |              out): Query d for every game, summed in parallel.
+    |            - stats(): Describes the rows and memory held.
+    *-------------------------------------------------------------------*/
+    private static final class GameplayColumns {
+        private static final int CHUNK_SIZE = 10000; /* rows fetched and appended at a time while loading */
+        private static final int NO_DAY = Integer.MIN_VALUE; /* day of a play with a NULL date */
+
+        private final Object loadLock = new Object(); /* held by the one load running */
+        private volatile Snapshot snapshot = null; /* rows readers see, null until loaded */
+        private Snapshot pending = null; /* plays committed during the running load, null when none runs */
+        private boolean loadStale = false; /* whether rows were removed or invalidated during the running load */
+        private long loads = 0;
+        private long loadNanos = 0;
+
+        /*---------------------------------------------------------------------
+        |  Class Snapshot
+        |
+        |  Purpose:  The first size rows of the column arrays, with the range
+        |            of GameIDs they hold. The arrays may be longer, and rows
+        |            past size may be filled in by a later snapshot.
+        *-------------------------------------------------------------------*/
+        static final class Snapshot {
+            final int[] gameplayIds;
+            final int[] memberIds;
+            final int[] gameIds;
+            final int[] scores;
+            final int[] tickets;
+            final int[] days;
+            final int size;
+            final int minGameId;
+            final int maxGameId;
+
+            Snapshot(int capacity) {
+                this(new int[capacity], new int[capacity], new int[capacity], new int[capacity], new int[capacity],
+                     new int[capacity], 0, Integer.MAX_VALUE, Integer.MIN_VALUE);
+            }
+
+            private Snapshot(int[] gameplayIds, int[] memberIds, int[] gameIds, int[] scores, int[] tickets, int[] days,
+                             int size, int minGameId, int maxGameId) {
+                this.gameplayIds = gameplayIds;
+                this.memberIds = memberIds;
+                this.gameIds = gameIds;
+                this.scores = scores;
+                this.tickets = tickets;
+                this.days = days;
+                this.size = size;
+                this.minGameId = minGameId;
+                this.maxGameId = maxGameId;
+            }
+
+            // these rows followed by rows [from, from + count) of the given columns
+            Snapshot with(int[] newIds, int[] newMembers, int[] newGames, int[] newScores, int[] newTickets, int[] newDays,
+                          int from, int count) {
+                int[][] columns = {gameplayIds, memberIds, gameIds, scores, tickets, days};
+                // double the arrays when the rows do not fit
+                if (size + count > gameplayIds.length) {
+                    int capacity = Math.max(size + count, gameplayIds.length * 2);
+                    for (int c = 0; c < columns.length; c++) {
+                        columns[c] = Arrays.copyOf(columns[c], capacity);
+                    }
+                }
+
+                int[][] added = {newIds, newMembers, newGames, newScores, newTickets, newDays};
+                for (int c = 0; c < columns.length; c++) {
+                    System.arraycopy(added[c], from, columns[c], size, count);
+                }
+                int min = minGameId;
+                int max = maxGameId;
+                for (int i = from; i < from + count; i++) {
+                    min = Math.min(min, newGames[i]);
+                    max = Math.max(max, newGames[i]);
+                }
+                return new Snapshot(columns[0], columns[1], columns[2], columns[3], columns[4], columns[5],
+                                    size + count, min, max);
+            }
+
+            // these rows without the ones whose value in column matches
+            Snapshot without(int[] column, IntPredicate removed) {
+                Snapshot kept = new Snapshot(Math.max(gameplayIds.length, 16));
+                int count = 0;
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int i = 0; i < size; i++) {
+                    if (!removed.test(column[i])) {
+                        kept.gameplayIds[count] = gameplayIds[i];
+                        kept.memberIds[count] = memberIds[i];
+                        kept.gameIds[count] = gameIds[i];
+                        kept.scores[count] = scores[i];
+                        kept.tickets[count] = tickets[i];
+                        kept.days[count] = days[i];
+                        min = Math.min(min, gameIds[i]);
+                        max = Math.max(max, gameIds[i]);
+                        count++;
+                    }
+                }
+                return new Snapshot(kept.gameplayIds, kept.memberIds, kept.gameIds, kept.scores, kept.tickets, kept.days,
+                                    count, min, max);
+            }
+
+            // slots of a dense per game array, GameID - minGameId indexing it
+            int gameSlots() {
+                return size == 0 ? 0 : maxGameId - minGameId + 1;
+            }
+
+            long bytes() {
+                return 6L * Integer.BYTES * gameplayIds.length;
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method get(dbConn)
+        |
+        |  Purpose:  Returns the current snapshot, loading the whole Gameplay
+        |            table in GameplayID order first if there is none. One
+        |            load runs at a time; readers arriving meanwhile wait for
+        |            it.
+        |
+        |  Parameters:
+        |      dbConn -- Connection the rows are loaded on.
+        |
+        |  Returns:  Snapshot -- The rows of Gameplay.
+        *-------------------------------------------------------------------*/
+        Snapshot get(Connection dbConn) throws SQLException {
+            Snapshot current = snapshot;
+            if (current != null) {
+                return current;
+            }
+
+            synchronized (loadLock) {
+                current = snapshot;
+                if (current != null) {
+                    return current;
+                }
+                synchronized (this) {
+                    pending = new Snapshot(16);
+                    loadStale = false;
+                }
+
+                long start = System.nanoTime();
+                Snapshot loaded = null;
+                try {
+                    loaded = load(dbConn);
+                } finally {
+                    synchronized (this) {
+                        if (loaded != null) {
+                            // add the plays committed during the load that it did not read
+                            int read = loaded.size;
+                            for (int i = 0; i < pending.size; i++) {
+                                if (Arrays.binarySearch(loaded.gameplayIds, 0, read, pending.gameplayIds[i]) < 0) {
+                                    loaded = loaded.with(pending.gameplayIds, pending.memberIds, pending.gameIds,
+                                                         pending.scores, pending.tickets, pending.days, i, 1);
+                                }
+                            }
+                            // a removal the load may have missed: answer this read, reload on the next
+                            if (!loadStale) {
+                                snapshot = loaded;
+                                loads++;
+                                loadNanos += System.nanoTime() - start;
+                            }
+                        }
+                        pending = null;
+                    }
+                }
+                return loaded;
+            }
+        }
+
+        private static Snapshot load(Connection dbConn) throws SQLException {
+            Snapshot rows = new Snapshot(CHUNK_SIZE);
+            int[][] chunk = new int[6][CHUNK_SIZE]; // rows fetched but not yet appended, one array per column
+            int count = 0;
+
+            try (Statement statement = dbConn.createStatement()) {
+                statement.setFetchSize(CHUNK_SIZE);
+                try (ResultSet resultSet = statement.executeQuery(
+                        "SELECT GameplayID, MemberID, GameID, Score, TicketsEarned, \"Date\" FROM Gameplay ORDER BY GameplayID")) {
+                    while (resultSet.next()) {
+                        for (int c = 0; c < 5; c++) {
+                            chunk[c][count] = resultSet.getInt(c + 1);
+                        }
+                        java.sql.Date date = resultSet.getDate(6);
+                        chunk[5][count] = date == null ? NO_DAY : (int) date.toLocalDate().toEpochDay();
+                        if (++count == CHUNK_SIZE) {
+                            rows = rows.with(chunk[0], chunk[1], chunk[2], chunk[3], chunk[4], chunk[5], 0, count);
+                            count = 0;
+                        }
+                    }
+                }
+            }
+            return rows.with(chunk[0], chunk[1], chunk[2], chunk[3], chunk[4], chunk[5], 0, count);
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method fromCsv(file)
+        |
+        |  Purpose:  Reads a Gameplay CSV (GameplayID, MemberID, GameID,
+        |            Score, TicketsEarned, yyyy-mm-dd) into a snapshot with
+        |            CsvReader, without a database.
+        |
+        |  Parameters:
+        |      file -- Path of the CSV.
+        |
+        |  Returns:  Snapshot -- The rows of the file, in file order.
+        *-------------------------------------------------------------------*/
+        static Snapshot fromCsv(String file) throws IOException {
+            Snapshot rows = new Snapshot(CHUNK_SIZE);
+            int[][] chunk = new int[6][CHUNK_SIZE]; // rows read but not yet appended, one array per column
+            int count = 0;
+
+            try (CsvReader reader = new CsvReader(file)) {
+                while (reader.nextRow()) {
+                    for (int c = 0; c < 5; c++) {
+                        chunk[c][count] = reader.readInt();
+                    }
+                    chunk[5][count] = reader.readEpochDay();
+                    if (++count == CHUNK_SIZE) {
+                        rows = rows.with(chunk[0], chunk[1], chunk[2], chunk[3], chunk[4], chunk[5], 0, count);
+                        count = 0;
+                    }
+                }
+            }
+            return rows.with(chunk[0], chunk[1], chunk[2], chunk[3], chunk[4], chunk[5], 0, count);
+        }
+
+        synchronized void append(int[] gameplayIds, int[] memberIds, int[] gameIds, int[] scores, int[] tickets,
+                                 int[] days, int from, int count) {
+            if (snapshot != null) {
+                snapshot = snapshot.with(gameplayIds, memberIds, gameIds, scores, tickets, days, from, count);
+            } else if (pending != null) {
+                pending = pending.with(gameplayIds, memberIds, gameIds, scores, tickets, days, from, count);
+            }
+        }
+
+        synchronized void removeMembers(IntHashSet memberIds) {
+            if (snapshot != null) {
+                snapshot = snapshot.without(snapshot.memberIds, memberIds::contains);
+            }
+            if (pending != null) {
+                pending = pending.without(pending.memberIds, memberIds::contains);
+                loadStale = true;
+            }
+        }
+
+        synchronized void removeGame(int gameId) {
+            if (snapshot != null) {
+                snapshot = snapshot.without(snapshot.gameIds, id -> id == gameId);
+            }
+            if (pending != null) {
+                pending = pending.without(pending.gameIds, id -> id == gameId);
+                loadStale = true;
+            }
+        }
+
+        synchronized void invalidate() {
+            snapshot = null;
+            if (pending != null) {
+                loadStale = true;
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method highScores(dbConn)
+        |
+        |  Purpose:  Computes the rows of query a with two passes over the
+        |            columns: the best score of every game into an array
+        |            indexed by GameID, then the rows holding it. Game names
+        |            are read from Game and member names from the member
+        |            cache.
+        |
+        |  Parameters:
+        |      dbConn -- Connection for the load and the names.
+        |
+        |  Returns:  List<Map<String, Object>> -- Same rows as getHighScores,
+        |            in GameID order.
+        *-------------------------------------------------------------------*/
+        List<Map<String, Object>> highScores(Connection dbConn) throws SQLException {
+            Snapshot rows = get(dbConn);
+            int[] best = new int[rows.gameSlots()]; // high score of each game
+            Arrays.fill(best, Integer.MIN_VALUE);
+            for (int i = 0; i < rows.size; i++) {
+                int game = rows.gameIds[i] - rows.minGameId;
+                if (rows.scores[i] > best[game]) {
+                    best[game] = rows.scores[i];
+                }
+            }
+
+            // rows holding a high score, as game slot << 32 | row, so sorting groups them by game
+            long[] holders = new long[Math.max(best.length, 16)];
+            int count = 0;
+            for (int i = 0; i < rows.size; i++) {
+                int game = rows.gameIds[i] - rows.minGameId;
+                if (rows.scores[i] == best[game]) {
+                    if (count == holders.length) {
+                        holders = Arrays.copyOf(holders, count * 2);
+                    }
+                    holders[count++] = ((long) game << 32) | i;
+                }
+            }
+            Arrays.sort(holders, 0, count);
+
+            Map<Integer, String> gameNames = new HashMap<>(); // name of every game
+            try (Statement statement = dbConn.createStatement();
+                 ResultSet games = statement.executeQuery("SELECT GameID, Name FROM Game")) {
+                while (games.next()) {
+                    gameNames.put(games.getInt("GameID"), games.getString("Name"));
+                }
+            }
+
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (int h = 0; h < count; h++) {
+                int i = (int) holders[h];
+                String game = gameNames.get(rows.gameIds[i]);
+                Map<String, Object> member = members.get(dbConn, rows.memberIds[i]);
+                // the SQL joins drop rows whose game or member is gone
+                if (game == null || member == null) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("game", game);
+                row.put("firstName", member.get("firstName"));
+                row.put("lastName", member.get("lastName"));
+                row.put("score", rows.scores[i]);
+                result.add(row);
+            }
+            return result;
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method ticketsEarned(dbConn, gameId)
+        |
+        |  Purpose:  Computes the rows of query d with one pass over the
+        |            GameID column: the game's rows are gathered as
+        |            MemberID << 32 | row, sorted, and each member's run
+        |            summed.
+        |
+        |  Parameters:
+        |      dbConn -- Connection used if the columns must be loaded.
+        |      gameId -- The ID of the game.
+        |
+        |  Returns:  List<Map<String, Object>> -- Same rows as
+        |            getTicketsEarned, in MemberID order.
+        *-------------------------------------------------------------------*/
+        List<Map<String, Object>> ticketsEarned(Connection dbConn, int gameId) throws SQLException {
+            Snapshot rows = get(dbConn);
+            long[] plays = new long[16]; // the game's rows, as MemberID << 32 | row
+            int count = 0;
+            for (int i = 0; i < rows.size; i++) {
+                if (rows.gameIds[i] == gameId) {
+                    if (count == plays.length) {
+                        plays = Arrays.copyOf(plays, count * 2);
+                    }
+                    plays[count++] = ((long) rows.memberIds[i] << 32) | i;
+                }
+            }
+            Arrays.sort(plays, 0, count);
+
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (int start = 0, end; start < count; start = end) {
+                int memberId = (int) (plays[start] >> 32);
+                int total = 0;
+                for (end = start; end < count && (int) (plays[end] >> 32) == memberId; end++) {
+                    total += rows.tickets[(int) plays[end]];
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("memberId", memberId);
+                row.put("totalTicketsEarned", total);
+                result.add(row);
+            }
+            return result;
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method gameStats(dbConn)
+        |
+        |  Purpose:  Aggregates every game's plays in one pass over the
+        |            columns into arrays indexed by GameID.
+        |
+        |  Parameters:
+        |      dbConn -- Connection used if the columns must be loaded.
+        |
+        |  Returns:  List<Map<String, Object>> -- Same rows as getGameStats.
+        *-------------------------------------------------------------------*/
+        List<Map<String, Object>> gameStats(Connection dbConn) throws SQLException {
+            Snapshot rows = get(dbConn);
+            int slots = rows.gameSlots();
+            int[] plays = new int[slots];
+            long[] tickets = new long[slots];
+            long[] scoreSums = new long[slots];
+            int[] highScores = new int[slots];
+            int[] firstDays = new int[slots];
+            int[] lastDays = new int[slots];
+            Arrays.fill(highScores, Integer.MIN_VALUE);
+            Arrays.fill(firstDays, Integer.MAX_VALUE);
+            Arrays.fill(lastDays, NO_DAY);
+
+            for (int i = 0; i < rows.size; i++) {
+                int game = rows.gameIds[i] - rows.minGameId;
+                plays[game]++;
+                tickets[game] += rows.tickets[i];
+                scoreSums[game] += rows.scores[i];
+                highScores[game] = Math.max(highScores[game], rows.scores[i]);
+                if (rows.days[i] != NO_DAY) {
+                    firstDays[game] = Math.min(firstDays[game], rows.days[i]);
+                    lastDays[game] = Math.max(lastDays[game], rows.days[i]);
+                }
+            }
+
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (int game = 0; game < slots; game++) {
+                if (plays[game] > 0) {
+                    result.add(gameStatsRow(rows.minGameId + game, plays[game], tickets[game], highScores[game],
+                                            scoreSums[game] / (double) plays[game],
+                                            lastDays[game] == NO_DAY ? null : LocalDate.ofEpochDay(firstDays[game]),
+                                            lastDays[game] == NO_DAY ? null : LocalDate.ofEpochDay(lastDays[game])));
+                }
+            }
+            return result;
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method writeTicketReport(rows, totals, out)
+        |
+        |  Purpose:  Writes the total tickets earned by every member on every
+        |            game, query d for all games at once, as CSV lines of
+        |            GameID,MemberID,TotalTicketsEarned in GameID and then
+        |            MemberID order. The totals come from sumTickets, which
+        |            sums the rows in parallel on a fork/join pool (see
+        |            TicketTotals), so everything that can fail other than the
+        |            writer is done before the first line. Each game's lines
+        |            are written as soon as it is formatted, so the report is
+        |            never held in memory as text.
+        |
+        |  Parameters:
+        |      rows -- The Gameplay rows the totals were summed from.
+        |      totals -- sumTickets(rows, threads).
+        |      out -- Writer the lines go to; flushed, not closed.
+        |
+        |  Returns:  long -- Lines written.
+        *-------------------------------------------------------------------*/
+        static long writeTicketReport(Snapshot rows, IntLongHashMap[] totals, Writer out) throws IOException {
+            long lines = 0;
+            StringBuilder text = new StringBuilder(); // lines of the current game
+            for (int game = 0; game < totals.length; game++) {
+                if (totals[game] == null) {
+                    continue;
+                }
+                int gameId = rows.minGameId + game;
+                for (int memberId : totals[game].sortedKeys()) {
+                    text.append(gameId).append(',').append(memberId).append(',')
+                        .append(totals[game].get(memberId)).append('\n');
+                }
+                lines += totals[game].size();
+                out.append(text);
+                text.setLength(0);
+            }
+            out.flush();
+            return lines;
+        }
+
+        // each game's MemberID -> tickets totals, indexed by GameID - minGameId
+        static IntLongHashMap[] sumTickets(Snapshot rows, int threads) {
+            // a few leaves per thread, so a slow one does not hold up the rest
+            int grain = Math.max(CHUNK_SIZE, rows.size / (threads * 4) + 1);
+            ForkJoinPool workers = new ForkJoinPool(threads);
+            try {
+                return workers.invoke(new TicketTotals(rows, 0, rows.size, grain));
+            } finally {
+                workers.shutdown();
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Class TicketTotals
+        |
+        |  Purpose:  Fork/join task summing the tickets of rows [from, to) per
+        |            game and member. Ranges of more than grain rows are split
+        |            in half. A leaf fills its own IntLongHashMap per game, so
+        |            the threads share nothing while they scan; the halves are
+        |            then merged game by game, adding the smaller map into the
+        |            larger. Splitting by row range rather than by game keeps
+        |            the leaves the same size however skewed the plays are.
+        *-------------------------------------------------------------------*/
+        private static final class TicketTotals extends RecursiveTask<IntLongHashMap[]> {
+            private static final long serialVersionUID = 1L;
+
+            private final Snapshot rows;
+            private final int from;
+            private final int to;
+            private final int grain;
+
+            TicketTotals(Snapshot rows, int from, int to, int grain) {
+                this.rows = rows;
+                this.from = from;
+                this.to = to;
+                this.grain = grain;
+            }
+
+            @Override
+            protected IntLongHashMap[] compute() {
+                if (to - from <= grain) {
+                    IntLongHashMap[] totals = new IntLongHashMap[rows.gameSlots()];
+                    for (int i = from; i < to; i++) {
+                        int game = rows.gameIds[i] - rows.minGameId;
+                        if (totals[game] == null) {
+                            totals[game] = new IntLongHashMap();
+                        }
+                        totals[game].add(rows.memberIds[i], rows.tickets[i]);
+                    }
+                    return totals;
+                }
+
+                int middle = (from + to) >>> 1;
+                TicketTotals right = new TicketTotals(rows, middle, to, grain);
+                right.fork();
+                IntLongHashMap[] totals = new TicketTotals(rows, from, middle, grain).compute();
+                IntLongHashMap[] rightTotals = right.join();
+                for (int game = 0; game < totals.length; game++) {
+                    if (totals[game] == null || (rightTotals[game] != null && rightTotals[game].size() > totals[game].size())) {
+                        IntLongHashMap smaller = totals[game];
+                        totals[game] = rightTotals[game];
+                        rightTotals[game] = smaller;
+                    }
+                    if (rightTotals[game] != null) {
+                        totals[game].addAll(rightTotals[game]);
+                    }
+                }
+                return totals;
+            }
+        }
+
+        synchronized String stats() {
+            return String.format("Gameplay columns: %s, %d loads (%.1f ms each)",
+                                 snapshot == null ? "not loaded"
+                                 : String.format("%d rows in %.1f MB", snapshot.size, snapshot.bytes() / 1048576.0),
+                                 loads, loads == 0 ? 0.0 : loadNanos / (double) loads / 1_000_000.0);
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method gameplayIngestor()
+    |
+    |  Purpose:  Returns the ingestor new plays are recorded through,
+    |            starting it on the shared connection pool on first use.
+    |
+    |  Returns:  GameplayIngestor -- The running ingestor.
+    *-------------------------------------------------------------------*/
+    private static synchronized GameplayIngestor gameplayIngestor() {
+        if (gameplayIngestor == null) {
+            gameplayIngestor = new GameplayIngestor(connectionPool,
+                                                    Integer.getInteger("prog4.ingest.capacity", 65536),
+                                                    Integer.getInteger("prog4.ingest.batchSize", 500),
+                                                    Integer.getInteger("prog4.ingest.lingerMillis", 20),
+                                                    Integer.getInteger("prog4.ingest.maxWaitMillis", 1000));
+        }
+        return gameplayIngestor;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Method closeGameplayIngestor()
+    |
+    |  Purpose:  Writes every buffered play and stops the ingestor, if it
+    |            was started. Called before the connection pool is closed.
+    |
+    |  Returns:  String -- The ingestor's final stats, or null if it was
+    |            never started.
+    *-------------------------------------------------------------------*/
+    private static synchronized String closeGameplayIngestor() {
+        if (gameplayIngestor == null) {
+            return null;
+        }
+        gameplayIngestor.close();
+        String stats = gameplayIngestor.stats();
+        gameplayIngestor = null;
+        return stats;
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class GameplayIngestor
+    |
+    |  Purpose:  Records new plays at machine rates. offer puts a play in a
+    |            bounded ring buffer of primitive arrays and returns at once;
+    |            a writer thread drains the buffer in batches of up to
+    |            batchSize plays, waiting at most lingerMillis for a batch to
+    |            fill. Each batch is one transaction (see
+    |            inRetriedTransaction) on a pooled connection:
+    |                - the Gameplay rows, with IDs from the Gameplay
+    |                  sequence, in one JDBC batch;
+    |                - Member.TotalTickets credited once per member;
+    |                - GameTickets credited once per (game, member) (see
+    |                  recordTickets).
+    |            Members and games are updated in ID order, so batches
+    |            running at once lock rows in the same order. Redemptions
+    |            lock their prizes and then a single member, so they cannot
+    |            close a cycle with a batch either.
+    |            Once a batch commits, its plays go to the leaderboard and
+    |            the Gameplay columns, and its members' cached profiles are
+    |            dropped.
+    |
+    |            If a batch fails for a reason other than contention (e.g. a
+    |            play names a member that does not exist), its plays are
+    |            written one at a time so only the bad ones are lost; they
+    |            are counted as failed.
+    |
+    |            Backpressure: when the buffer is full, offer waits up to
+    |            maxWaitMillis for room and then rejects the play, returning
+    |            false, so a burst slows the callers down instead of growing
+    |            memory without bound.
+    |
+    |  Methods:  - offer(memberId, gameId, score, tickets): Queues a play;
+    |              false if it was rejected.
+    |            - flush(): Waits until every play queued so far is written.
+    |            - close(): Flushes and stops the writer thread.
+    |            - stats(): Describes throughput, queue depth and failures.
+    *-------------------------------------------------------------------*/
+    private static final class GameplayIngestor implements AutoCloseable {
+        private final ConnectionPool pool; /* pool the batches are written through */
+        private final int batchSize; /* most plays per transaction */
+        private final long lingerNanos; /* longest the first play of a batch waits for more */
+        private final long maxWaitNanos; /* longest offer waits for room */
+
+        // ring buffer of plays, one array per column; head and tail only ever grow
+        private final int mask;
+        private final int[] memberIds;
+        private final int[] gameIds;
+        private final int[] scores;
+        private final int[] tickets;
+        private final int[] days; /* epoch day each play happened on */
+        private long head = 0; /* next play to write */
+        private long tail = 0; /* next free slot */
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private final Condition written = lock.newCondition();
+        private long writtenUpTo = 0; /* plays before this position are written or failed */
+        private boolean closed = false;
+        private final Thread writer;
+
+        // metrics, updated under the lock
+        private final long startNanos = System.nanoTime();
+        private long accepted = 0;
+        private long rejected = 0;
+        private long stored = 0;
+        private long failed = 0;
+        private long batches = 0;
+        private long batchNanos = 0;
+        private int maxDepth = 0;
+
+        GameplayIngestor(ConnectionPool pool, int capacity, int batchSize, int lingerMillis, int maxWaitMillis) {
+            int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // next power of two
+            this.pool = pool;
+            this.batchSize = Math.max(1, Math.min(batchSize, size));
+            this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+            this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+            this.mask = size - 1;
+            this.memberIds = new int[size];
+            this.gameIds = new int[size];
+            this.scores = new int[size];
+            this.tickets = new int[size];
+            this.days = new int[size];
+
+            writer = new Thread(this::writeLoop, "gameplay-ingestor");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        boolean offer(int memberId, int gameId, int score, int ticketsEarned) throws InterruptedException {
+            int day = (int) LocalDate.now().toEpochDay();
+            lock.lock();
+            try {
+                long waitNanos = maxWaitNanos;
+                while (tail - head > mask && !closed) {
+                    if (waitNanos <= 0) {
+                        rejected++;
+                        return false;
+                    }
+                    waitNanos = notFull.awaitNanos(waitNanos);
+                }
+                if (closed) {
+                    throw new UnavailableException("The gameplay ingestor is closed.");
+                }
+
+                int slot = (int) (tail & mask);
+                memberIds[slot] = memberId;
+                gameIds[slot] = gameId;
+                scores[slot] = score;
+                tickets[slot] = ticketsEarned;
+                days[slot] = day;
+                tail++;
+                accepted++;
+                maxDepth = Math.max(maxDepth, (int) (tail - head));
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void flush() throws InterruptedException {
+            lock.lock();
+            try {
+                long target = tail;
+                notEmpty.signal();
+                while (writtenUpTo < target) {
+                    written.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signal();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        String stats() {
+            lock.lock();
+            try {
+                double seconds = (System.nanoTime() - startNanos) / 1e9;
+                return String.format("Gameplay ingestor: %d accepted, %d rejected, %d written, %d failed, %.0f plays/sec; " +
+                                     "%d batches (avg %.1f plays, %.2f ms); queue %d now, %d max of %d",
+                                     accepted, rejected, stored, failed, stored / Math.max(seconds, 1e-9), batches,
+                                     batches == 0 ? 0.0 : (stored + failed) / (double) batches,
+                                     batches == 0 ? 0.0 : batchNanos / (double) batches / 1_000_000.0,
+                                     tail - head, maxDepth, mask + 1);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void writeLoop() {
+            int[] batchIds = new int[batchSize];
+            int[] batchMembers = new int[batchSize];
+            int[] batchGames = new int[batchSize];
+            int[] batchScores = new int[batchSize];
+            int[] batchTickets = new int[batchSize];
+            int[] batchDays = new int[batchSize];
+            while (true) {
+                int count; // plays taken for this batch
+                lock.lock();
+                try {
+                    // wait for a play, then up to lingerNanos for the batch to fill
+                    while (tail == head && !closed) {
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    if (tail == head) {
+                        return; // closed and drained
+                    }
+                    long lingerLeft = lingerNanos;
+                    while (tail - head < batchSize && lingerLeft > 0 && !closed) {
+                        try {
+                            lingerLeft = notEmpty.awaitNanos(lingerLeft);
+                        } catch (InterruptedException e) {
+                            lingerLeft = 0;
+                        }
+                    }
+
+                    count = (int) Math.min(batchSize, tail - head);
+                    for (int i = 0; i < count; i++) {
+                        int slot = (int) ((head + i) & mask);
+                        batchMembers[i] = memberIds[slot];
+                        batchGames[i] = gameIds[slot];
+                        batchScores[i] = scores[slot];
+                        batchTickets[i] = tickets[slot];
+                        batchDays[i] = days[slot];
+                    }
+                    head += count;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                long start = System.nanoTime();
+                int batchFailed = write(batchIds, batchMembers, batchGames, batchScores, batchTickets, batchDays, count);
+                long elapsed = System.nanoTime() - start;
+
+                lock.lock();
+                try {
+                    stored += count - batchFailed;
+                    failed += batchFailed;
+                    batches++;
+                    batchNanos += elapsed;
+                    writtenUpTo += count;
+                    written.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        // writes plays [0, count) as one transaction, or one at a time if that fails; returns the plays lost
+        private int write(int[] gameplayIds, int[] memberIds, int[] gameIds, int[] scores, int[] tickets, int[] days,
+                          int count) {
+            try (Connection dbConn = pool.borrow()) {
+                try {
+                    metrics.time("recordPlays", () -> inRetriedTransaction(dbConn, () -> writeBatch(dbConn, gameplayIds, memberIds,
+                            gameIds, scores, tickets, days, 0, count)));
+                    published(gameplayIds, memberIds, gameIds, scores, tickets, days, 0, count);
+                    return 0;
+                } catch (SQLException | RuntimeException e) {
+                    if (count == 1) {
+                        System.err.println("Could not record a play of member " + memberIds[0] + " on game " + gameIds[0] + ".");
+                        e.printStackTrace();
+                        return 1;
+                    }
+                }
+
+                // isolate the bad plays
+                int lost = 0;
+                for (int i = 0; i < count; i++) {
+                    int play = i;
+                    try {
+                        metrics.time("recordPlays", () -> inRetriedTransaction(dbConn, () -> writeBatch(dbConn, gameplayIds,
+                                memberIds, gameIds, scores, tickets, days, play, 1)));
+                        published(gameplayIds, memberIds, gameIds, scores, tickets, days, play, 1);
+                    } catch (SQLException | RuntimeException e) {
+                        System.err.println("Could not record a play of member " + memberIds[i] + " on game " + gameIds[i] + ": "
+                                           + e.getMessage());
+                        lost++;
+                    }
+                }
+                return lost;
+            } catch (SQLException e) {
+                System.err.println("Could not borrow a connection to record " + count + " plays.");
+                e.printStackTrace();
+                return count;
+            }
+        }
+
+        // gameplayIds is filled in with the IDs the rows were given
+        private static Void writeBatch(Connection dbConn, int[] gameplayIds, int[] memberIds, int[] gameIds, int[] scores,
+                                       int[] tickets, int[] days, int from, int count) throws SQLException {
+            TreeMap<Integer, Integer> memberTickets = new TreeMap<>(); // tickets earned by each member, in ID order
+            TreeMap<Long, Integer> gameTickets = new TreeMap<>(); // tickets earned per (GameID, MemberID), in key order
+
+            try (PreparedStatement statement = dbConn.prepareStatement("INSERT INTO Gameplay VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = from; i < from + count; i++) {
+                    gameplayIds[i] = nextId(dbConn, "Gameplay");
+                    statement.setInt(1, gameplayIds[i]);
+                    statement.setInt(2, memberIds[i]);
+                    statement.setInt(3, gameIds[i]);
+                    statement.setInt(4, scores[i]);
+                    statement.setInt(5, tickets[i]);
+                    statement.setDate(6, java.sql.Date.valueOf(LocalDate.ofEpochDay(days[i])));
+                    statement.addBatch();
+                    memberTickets.merge(memberIds[i], tickets[i], Integer::sum);
+                    gameTickets.merge(((long) gameIds[i] << 32) | (memberIds[i] & 0xFFFFFFFFL), tickets[i], Integer::sum);
+                }
+                statement.executeBatch();
+            }
+
+            try (PreparedStatement statement = dbConn.prepareStatement(
+                    "UPDATE Member SET TotalTickets = TotalTickets + ? WHERE MemberID = ?")) {
+                for (Map.Entry<Integer, Integer> member : memberTickets.entrySet()) {
+                    statement.setInt(1, member.getValue());
+                    statement.setInt(2, member.getKey());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+
+            recordTickets(dbConn, gameTickets);
+            return null;
+        }
+
+        // the plays are committed: update the in-memory views of them
+        private static void published(int[] gameplayIds, int[] memberIds, int[] gameIds, int[] scores, int[] tickets,
+                                      int[] days, int from, int count) {
+            for (int i = from; i < from + count; i++) {
+                leaderboard.recordPlay(gameplayIds[i], gameIds[i], memberIds[i], scores[i]);
+                members.remove(memberIds[i]); // the cached ticket balance is out of date
+            }
+            gameplayColumns.append(gameplayIds, memberIds, gameIds, scores, tickets, days, from, count);
         }
-    
-        // Close the scanner
-        //scanner.close();
     }
 
     /*---------------------------------------------------------------------
     |  Method drop(connection)
     |
     |  Purpose:  Drops all tables in the database along with their foreign
-    |            key constraints.
+    |            key constraints, and the ID sequences.
     |
     |  Pre-condition:  The JDBC database connection is valid and points to
     |                  the target database.
@@ -2111,7 +8113,8 @@ public class Prog4 {
     |  Returns:  None.
     *-------------------------------------------------------------------*/
     private static void drop(Connection dbConn) {
-        String[] tables = {"Transaction", "FoodCoupon", "Gameplay", "Member", "Prize", "Game", "MembershipTier"};
+        String[] tables = {"PrizeRedemption", "GameTickets", "Transaction", "FoodCoupon", "Gameplay", "Member", "Prize", "Game",
+                           "MembershipTier"};
 
         try {
             Statement stmt = dbConn.createStatement();
@@ -2137,6 +8140,8 @@ public class Prog4 {
                 System.out.println("Dropped table: " + table);
             }
 
+            dropSequences(dbConn);
+
             System.out.println("Successfully dropped all tables.");
         } catch (SQLException e) {
             System.err.println("Couldn't drop tables.");
@@ -2145,4 +8150,1289 @@ public class Prog4 {
         }
     }
 
+    /*---------------------------------------------------------------------
+    |  Class DataGenerator
+    |
+    |  Purpose:  Writes synthetic CSVs for all seven tables in the format the
+    |            import*Data methods read. Run with
+    |                java 'Prog4$DataGenerator' <directory> <scale> [seed]
+    |            Scale 1 is production size: 2,000,000 members and about
+    |            500,000,000 gameplay rows; fractional scales such as 0.001
+    |            give smaller data sets. The same scale and seed always give
+    |            the same files.
+    |
+    |            Every MemberID and GameID refers to a row that is written.
+    |            The data is skewed the way the arcade is: games are picked
+    |            with a Zipf distribution so a few games get most of the
+    |            plays, and the number of plays of each member follows a
+    |            power law (most members play a little, a few play a lot).
+    |            A member's TotalTickets, VisitCount and LastVisitDate agree
+    |            with their gameplay rows.
+    |
+    |            Rows are written as they are generated, one member at a
+    |            time, so memory use only depends on the number of games.
+    |
+    |  Methods:  - atScale(scale, seed): The generator of a scale, the
+    |              one definition of scale the benchmarks share.
+    |            - write(dir): Writes the seven CSVs into dir.
+    |            - memberCount() / gameCount(): Rows written to Member and
+    |              Game.
+    *-------------------------------------------------------------------*/
+    public static final class DataGenerator {
+        private static final int PRODUCTION_MEMBERS = 2_000_000; /* members at scale 1 */
+        private static final int MEMBERS_PER_GAME = 1000; /* members for each game in the arcade */
+        private static final double MEAN_PLAYS = 250.0; /* average gameplay rows per member, 500M / 2M */
+        private static final double PLAYS_ALPHA = 1.6; /* tail exponent of the plays per member */
+        private static final int MAX_PLAYS = 100_000; /* most gameplay rows of one member */
+        private static final double GAME_SKEW = 1.2; /* Zipf exponent of game popularity */
+        private static final int PRIZES = 200; /* rows written to Prize */
+        private static final int DAYS = 365; /* gameplay dates go back this many days */
+        private static final LocalDate LAST_DAY = LocalDate.of(2024, 4, 30); /* most recent gameplay date */
+        private static final String[] FIRST_NAMES = {"John", "Jane", "Mike", "Emma", "Liam", "Olivia", "Noah", "Ava",
+                                                     "Mason", "Sophia", "Lucas", "Mia", "Ethan", "Amelia"};
+        private static final String[] LAST_NAMES = {"Doe", "Smith", "Johnson", "Brown", "Garcia", "Miller", "Davis",
+                                                    "Martinez", "Lopez", "Wilson", "Anderson", "Lee", "Nguyen"};
+        private static final String[] STREETS = {"Main St", "Elm St", "Oak St", "Park Ave", "Speedway Blvd",
+                                                 "Campbell Ave", "Broadway"};
+        private static final String[] GAME_NAMES = {"Pinball", "PacMan", "Skeeball", "Air Hockey", "Galaga",
+                                                    "Whac-A-Mole", "Dance Dance", "Claw Machine", "Basketball",
+                                                    "Donkey Kong"};
+        private static final String[] FOODS = {"Pizza", "Beverage", "Garlic Bread", "Pretzel", "Nachos"};
+
+        private final int members; /* rows written to Member */
+        private final int games; /* rows written to Game */
+        private final long seed; /* seed of every random choice */
+
+        /*---------------------------------------------------------------------
+        |  Constructor DataGenerator(members, seed)
+        |
+        |  Parameters:
+        |      members -- Number of members. The number of games and of the
+        |                 rows of the other tables follow from it.
+        |      seed -- Seed of the random data.
+        *-------------------------------------------------------------------*/
+        public DataGenerator(int members, long seed) {
+            if (members < 1) {
+                throw new IllegalArgumentException("There must be at least one member.");
+            }
+            this.members = members;
+            this.games = Math.max(10, members / MEMBERS_PER_GAME);
+            this.seed = seed;
+        }
+
+        // scale 1 is production size; any smaller scale still writes one member
+        public static DataGenerator atScale(double scale, long seed) {
+            return new DataGenerator((int) Math.max(1, Math.round(PRODUCTION_MEMBERS * scale)), seed);
+        }
+
+        public int memberCount() {
+            return members;
+        }
+
+        public int gameCount() {
+            return games;
+        }
+
+        public static void main(String[] args) throws IOException {
+            if (args.length < 2 || args.length > 3) {
+                System.err.println("Usage: java 'Prog4$DataGenerator' <directory> <scale> [seed]");
+                System.exit(-1);
+            }
+
+            double scale = Double.parseDouble(args[1]);
+            long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+            File dir = new File(args[0]);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                System.err.println("Could not create directory " + dir + ".");
+                System.exit(-1);
+            }
+
+            atScale(scale, seed).write(dir);
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method write(dir)
+        |
+        |  Purpose:  Writes Member, Game, Gameplay, Prize, FoodCoupon,
+        |            MembershipTier and Transaction CSVs into dir, replacing
+        |            any that are there, and prints the rows written.
+        |
+        |  Parameters:
+        |      dir -- Existing directory to write the CSVs into.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        public void write(File dir) throws IOException {
+            long start = System.nanoTime();
+            Random random = new Random(seed);
+            String[] dates = new String[DAYS]; // date text of each day, most recent first
+            for (int day = 0; day < DAYS; day++) {
+                dates[day] = LAST_DAY.minusDays(day).toString();
+            }
+
+            // games: the ticket payout is used to derive TicketsEarned
+            int[] gameTickets = new int[games + 1];
+            try (Writer out = open(dir, "Game")) {
+                StringBuilder row = new StringBuilder();
+                for (int id = 1; id <= games; id++) {
+                    gameTickets[id] = 10 * (1 + random.nextInt(10));
+                    row.setLength(0);
+                    row.append(id).append(',').append(GAME_NAMES[(id - 1) % GAME_NAMES.length]);
+                    if (id > GAME_NAMES.length) {
+                        row.append(' ').append((id - 1) / GAME_NAMES.length + 1);
+                    }
+                    row.append(',').append(1 + random.nextInt(5)).append(',').append(gameTickets[id]).append('\n');
+                    out.append(row);
+                }
+            }
+
+            // Zipf popularity, shuffled so the hot games are not simply the lowest IDs
+            int[] gameByRank = new int[games];
+            for (int i = 0; i < games; i++) {
+                gameByRank[i] = i + 1;
+            }
+            for (int i = games - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = gameByRank[i];
+                gameByRank[i] = gameByRank[j];
+                gameByRank[j] = swap;
+            }
+            double[] rankCdf = new double[games]; // chance a play is on one of the first i + 1 ranks
+            double total = 0;
+            for (int rank = 0; rank < games; rank++) {
+                total += 1.0 / Math.pow(rank + 1, GAME_SKEW);
+                rankCdf[rank] = total;
+            }
+            for (int rank = 0; rank < games; rank++) {
+                rankCdf[rank] /= total;
+            }
+
+            // members and their gameplay are written together so the member totals match their plays
+            long gameplayId = 0; // last GameplayID written
+            double playsScale = MEAN_PLAYS * (PLAYS_ALPHA - 1); // Lomax scale giving MEAN_PLAYS on average
+            boolean[] visited = new boolean[DAYS]; // days the current member played on
+            try (Writer memberOut = open(dir, "Member");
+                 Writer gameplayOut = open(dir, "Gameplay")) {
+                StringBuilder row = new StringBuilder();
+                for (int memberId = 1; memberId <= members; memberId++) {
+                    // power law number of plays: most members play a little, a few play a lot
+                    int plays = (int) Math.min(MAX_PLAYS,
+                            playsScale * (Math.pow(1 - random.nextDouble(), -1 / PLAYS_ALPHA) - 1));
+                    Arrays.fill(visited, false);
+                    int visits = 0;
+                    int lastDay = DAYS - 1 - random.nextInt(DAYS / 2); // members with no plays visited a while ago
+                    long tickets = 0;
+
+                    for (int i = 0; i < plays; i++) {
+                        int rank = Arrays.binarySearch(rankCdf, random.nextDouble());
+                        int gameId = gameByRank[Math.min(rank < 0 ? -rank - 1 : rank, games - 1)];
+                        int score = random.nextInt(1000);
+                        int earned = gameTickets[gameId] * score / 1000;
+                        int day = random.nextInt(DAYS);
+                        if (!visited[day]) {
+                            visited[day] = true;
+                            visits++;
+                        }
+                        lastDay = i == 0 ? day : Math.min(lastDay, day);
+                        tickets += earned;
+
+                        row.setLength(0);
+                        row.append(++gameplayId).append(',').append(memberId).append(',').append(gameId).append(',')
+                           .append(score).append(',').append(earned).append(',').append(dates[day]).append('\n');
+                        gameplayOut.append(row);
+                    }
+
+                    int tokens = random.nextInt(500);
+                    long cents = plays * 50L + random.nextInt(10000); // about two dollars of tokens every four plays
+                    String tier = cents >= 50000 ? "Diamond" : cents >= 25000 ? "Gold" : "NULL"; // MembershipTier thresholds
+                    row.setLength(0);
+                    row.append(memberId).append(',')
+                       .append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append(',')
+                       .append(LAST_NAMES[random.nextInt(LAST_NAMES.length)]).append(',')
+                       .append(String.format("%03d-%03d-%04d", 200 + random.nextInt(800), random.nextInt(1000),
+                                             random.nextInt(10000))).append(',')
+                       .append(1 + random.nextInt(9999)).append(' ').append(STREETS[random.nextInt(STREETS.length)])
+                       .append(',').append(tokens).append(',')
+                       .append(cents / 100).append('.').append(cents % 100 < 10 ? "0" : "").append(cents % 100).append(',')
+                       .append(tier).append(',').append(visits).append(',').append(dates[lastDay]).append(',')
+                       .append(Math.min(tickets, Integer.MAX_VALUE)).append('\n');
+                    memberOut.append(row);
+                }
+            }
+
+            try (Writer out = open(dir, "Prize")) {
+                for (int id = 1; id <= PRIZES; id++) {
+                    out.append(id + ",Prize " + id + "," + 50 * (1 + random.nextInt(200)) + "\n");
+                }
+            }
+
+            long coupons = members / 2L; // rows written to FoodCoupon
+            try (Writer out = open(dir, "FoodCoupon")) {
+                for (long id = 1; id <= coupons; id++) {
+                    out.append(id + "," + (1 + random.nextInt(members)) + "," + FOODS[random.nextInt(FOODS.length)] + ","
+                               + random.nextInt(2) + "\n");
+                }
+            }
+
+            try (Writer out = open(dir, "MembershipTier")) {
+                out.append("1,Gold,250.00,10.00,5000\n");
+                out.append("2,Diamond,500.00,20.00,10000\n");
+            }
+
+            long transactions = 2L * members; // rows written to Transaction
+            try (Writer out = open(dir, "Transaction")) {
+                for (long id = 1; id <= transactions; id++) {
+                    int cents = 100 + random.nextInt(19900);
+                    out.append(id + "," + (1 + random.nextInt(members)) + "," + (random.nextBoolean() ? "Token" : "Ticket")
+                               + "," + cents / 100 + "."
+                               + (cents % 100 < 10 ? "0" : "") + cents % 100 + "," + dates[random.nextInt(DAYS)] + "\n");
+                }
+            }
+
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.out.println(String.format("Wrote %,d members, %,d games, %,d gameplay rows, %,d prizes, %,d food coupons "
+                                             + "and %,d transactions to %s in %.2f seconds.", members, games, gameplayId,
+                                             PRIZES, coupons, transactions, dir, seconds));
+        }
+
+        private static Writer open(File dir, String tableName) throws IOException {
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, tableName + ".csv")),
+                                                             StandardCharsets.UTF_8), 1 << 20);
+        }
+    }
+
+    /*---------------------------------------------------------------------
+    |  Class Benchmarks
+    |
+    |  Purpose:  Command line benchmarks for the performance sensitive parts
+    |            of the program. Run with
+    |                java 'Prog4$Benchmarks' <benchmark> [arguments]
+    |
+    |  Benchmarks:
+    |      csv <file> [rounds] -- Parses a CSV file with the old
+    |          BufferedReader + String.split path and with CsvReader, and
+    |          prints rows/sec and MB/sec for both. The file name (Member.csv,
+    |          Gameplay.csv, ...) selects the column types.
+    |      import <user> <pw> [scale] [rounds] -- Times every import*Data
+    |          method on a synthetic data set of the given scale.
+    |      queries <user> <pw> [scale] [iterations] -- Times queries a-d on
+    |          a seeded synthetic data set.
+    |      plans <user> <pw> [scale] [iterations] -- Times the rank and
+    |          legacy SQL of query a against each other and checks that they
+    |          return the same rows.
+    |      columns <user> <pw> [scale] [iterations] -- Compares the memory
+    |          and load time of the Gameplay columns with row maps, and times
+    |          queries a and d in SQL against scans of the columns.
+    |      members <user> <pw> [scale] [iterations] -- Times the add, edit
+    |          and delete member cycle on a seeded synthetic data set.
+    |      redeem <user> <pw> [threads] [prizes] -- Stress check of
+    |          redeemPrize: many threads redeem the same prizes for one
+    |          member at once, then the member's tickets and the prizes left
+    |          are checked for lost or double spent tickets.
+    |      ingest <user> <pw> [scale] [plays] -- Seeds the synthetic data set
+    |          and has four threads record random plays through the
+    |          GameplayIngestor as fast as it accepts them, then prints its
+    |          throughput, batch and queue depth stats.
+    |      basket [prizes] [iterations] -- Times PrizeCatalog.basket, the
+    |          ticket exchange optimizer, on a synthetic catalog for random
+    |          balances up to the whole catalog's cost. Needs no database.
+    |      report [scale] [rounds] -- Times the tickets report of all games
+    |          from the synthetic Gameplay.csv on 1, 2, 4, ... threads and
+    |          prints the speedup. Needs no database.
+    |
+    |            The database benchmarks run against -Dprog4.db.url, so they
+    |            can point at a scratch Oracle schema. The SQL is Oracle's
+    |            (sequences, MERGE ... FROM dual), so other databases are not
+    |            supported. They empty every table before seeding it. The data
+    |            comes from DataGenerator and scale means the same as there:
+    |            1 is production size, 2,000,000 members.
+    |            The default scale is 0.0005, 1,000 members and about 250,000
+    |            gameplay rows, and -Dprog4.bench.seed fixes the random data
+    |            (default 42).
+    *-------------------------------------------------------------------*/
+    public static final class Benchmarks {
+        private static final Map<String, String> COLUMN_TYPES = new HashMap<>(); /* i=int, n=decimal, d=date, s=string */
+        static {
+            COLUMN_TYPES.put("Member", "issssinsidi");
+            COLUMN_TYPES.put("Game", "isii");
+            COLUMN_TYPES.put("Gameplay", "iiiiid");
+            COLUMN_TYPES.put("Prize", "isi");
+            COLUMN_TYPES.put("FoodCoupon", "iisi");
+            COLUMN_TYPES.put("MembershipTier", "isnni");
+            COLUMN_TYPES.put("Transaction", "iisnd");
+        }
+
+        private static final long SEED = Long.getLong("prog4.bench.seed", 42L); /* seed of the synthetic data */
+        private static final double DEFAULT_SCALE = 0.0005; /* DataGenerator scale of 1,000 members */
+        private static final String[] IMPORT_ORDER = {"Member", "Game", "Prize", "MembershipTier", "Transaction",
+                                                      "Gameplay", "FoodCoupon"}; /* parents before children */
+        private static final Map<String, BiConsumer<Connection, String>> IMPORTERS = new HashMap<>(); /* import method of each table */
+        static {
+            IMPORTERS.put("Member", Prog4::importMemberData);
+            IMPORTERS.put("Game", Prog4::importGameData);
+            IMPORTERS.put("Prize", Prog4::importPrizeData);
+            IMPORTERS.put("MembershipTier", Prog4::importMembershipTierData);
+            IMPORTERS.put("Transaction", Prog4::importTransactionData);
+            IMPORTERS.put("Gameplay", Prog4::importGameplayData);
+            IMPORTERS.put("FoodCoupon", Prog4::importFoodCouponData);
+        }
+
+        private Benchmarks() {}
+
+        public static void main(String[] args) throws Exception {
+            // pick the benchmark named by the first argument
+            switch (args.length > 0 ? args[0] : "") {
+                case "csv":
+                    if (args.length < 2) {
+                        break;
+                    }
+                    benchmarkCsv(args[1], args.length > 2 ? Integer.parseInt(args[2]) : 5);
+                    return;
+
+                case "import":
+                case "queries":
+                case "plans":
+                case "columns":
+                case "members":
+                case "ingest":
+                    if (args.length < 3) {
+                        break;
+                    }
+                    double scale = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_SCALE; // size of the synthetic data set
+                    int count = args.length > 4 ? Integer.parseInt(args[4]) : 0; // rounds or iterations, 0 for the default
+                    try (ConnectionPool pool = getConnectionPool(new String[] {args[1], args[2]})) {
+                        connectionPool = pool;
+                        if (args[0].equals("import")) {
+                            benchmarkImport(pool, scale, count > 0 ? count : 3);
+                        } else if (args[0].equals("queries")) {
+                            benchmarkQueries(pool, scale, count > 0 ? count : 200);
+                        } else if (args[0].equals("plans")) {
+                            benchmarkPlans(pool, scale, count > 0 ? count : 20);
+                        } else if (args[0].equals("columns")) {
+                            benchmarkColumns(pool, scale, count > 0 ? count : 50);
+                        } else if (args[0].equals("ingest")) {
+                            benchmarkIngest(pool, scale, count > 0 ? count : 100000);
+                        } else {
+                            benchmarkMembers(pool, scale, count > 0 ? count : 1000);
+                        }
+                        System.out.println("\n" + pool.stats());
+                        System.out.println(members.stats());
+                        System.out.println(metrics.dump());
+                    }
+                    return;
+
+                case "basket":
+                    benchmarkBasket(args.length > 1 ? Integer.parseInt(args[1]) : 200,
+                                    args.length > 2 ? Integer.parseInt(args[2]) : 100000);
+                    return;
+
+                case "report":
+                    benchmarkReport(args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_SCALE,
+                                    args.length > 2 ? Integer.parseInt(args[2]) : 5);
+                    return;
+
+                case "redeem":
+                    if (args.length < 3) {
+                        break;
+                    }
+                    try (ConnectionPool pool = getConnectionPool(new String[] {args[1], args[2]})) {
+                        connectionPool = pool;
+                        boolean passed = stressRedeem(pool, args.length > 3 ? Integer.parseInt(args[3]) : 64,
+                                                      args.length > 4 ? Integer.parseInt(args[4]) : 200);
+                        System.out.println("\n" + pool.stats());
+                        if (!passed) {
+                            System.exit(1);
+                        }
+                    }
+                    return;
+
+                default:
+                    break;
+            }
+
+            System.err.println("Usage: java 'Prog4$Benchmarks' csv <file> [rounds]");
+            System.err.println("       java 'Prog4$Benchmarks' import <user> <pw> [scale] [rounds]");
+            System.err.println("       java 'Prog4$Benchmarks' queries <user> <pw> [scale] [iterations]");
+            System.err.println("       java 'Prog4$Benchmarks' plans <user> <pw> [scale] [iterations]");
+            System.err.println("       java 'Prog4$Benchmarks' columns <user> <pw> [scale] [iterations]");
+            System.err.println("       java 'Prog4$Benchmarks' members <user> <pw> [scale] [iterations]");
+            System.err.println("       java 'Prog4$Benchmarks' ingest <user> <pw> [scale] [plays]");
+            System.err.println("       java 'Prog4$Benchmarks' redeem <user> <pw> [threads] [prizes]");
+            System.err.println("       java 'Prog4$Benchmarks' basket [prizes] [iterations]");
+            System.err.println("       java 'Prog4$Benchmarks' report [scale] [rounds]");
+            System.exit(-1);
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkImport(pool, scale, rounds)
+        |
+        |  Purpose:  Times each import*Data method on its own. Every round
+        |            empties the tables and imports the synthetic CSVs one
+        |            table at a time in foreign key order. One untimed round is
+        |            run first to warm up.
+        |
+        |  Parameters:
+        |      pool -- Pool the imports borrow their connection from.
+        |      scale -- Size of the synthetic data set.
+        |      rounds -- Number of timed rounds.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkImport(ConnectionPool pool, double scale, int rounds) throws IOException, SQLException {
+            File dir = writeSyntheticData(generator(scale));
+            Map<String, Long> rows = new HashMap<>(); // rows in each CSV
+            for (String tableName : IMPORT_ORDER) {
+                rows.put(tableName, countRows(new File(dir, tableName + ".csv").getPath()));
+            }
+
+            Map<String, Long> nanos = new HashMap<>(); // total import time of each table
+            for (int round = 0; round <= rounds; round++) {
+                Map<String, Long> roundNanos = seed(pool, dir);
+                // round 0 is the warm-up
+                if (round > 0) {
+                    roundNanos.forEach((table, time) -> nanos.merge(table, time, Long::sum));
+                }
+            }
+
+            System.out.println(String.format("%nImport of scale %s, %d rounds:", scaleText(scale), rounds));
+            long totalRows = 0;
+            long totalNanos = 0;
+            for (String tableName : IMPORT_ORDER) {
+                printImportRate(tableName, rows.get(tableName) * rounds, nanos.get(tableName));
+                totalRows += rows.get(tableName) * rounds;
+                totalNanos += nanos.get(tableName);
+            }
+            printImportRate("All tables", totalRows, totalNanos);
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkQueries(pool, scale, iterations)
+        |
+        |  Purpose:  Seeds the synthetic data set and times queries a-d. Each
+        |            query runs iterations times after a tenth as many warm-up
+        |            runs, on a connection borrowed from the pool like the
+        |            menu does. Queries c and d pick a random member or game.
+        |
+        |  Parameters:
+        |      pool -- Pool the queries borrow their connection from.
+        |      scale -- Size of the synthetic data set.
+        |      iterations -- Timed runs of each query.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkQueries(ConnectionPool pool, double scale, int iterations) throws IOException, SQLException {
+            DataGenerator generator = generator(scale);
+            seed(pool, writeSyntheticData(generator));
+            int members = generator.memberCount();
+            int games = generator.gameCount();
+            Random random = new Random(SEED);
+
+            Map<String, DatabaseAction> queries = new LinkedHashMap<>(); // each query, discarding its rows
+            queries.put("query a", dbConn -> getHighScores(dbConn));
+            queries.put("query b", dbConn -> getBigSpenders(dbConn));
+            queries.put("query c", dbConn -> getAvailableRewards(dbConn, 1 + random.nextInt(members)));
+            queries.put("query d", dbConn -> getTicketsEarned(dbConn, 1 + random.nextInt(games)));
+
+            System.out.println(String.format("%nQueries on scale %s, %d iterations:", scaleText(scale), iterations));
+            for (Map.Entry<String, DatabaseAction> query : queries.entrySet()) {
+                long[] latencies = new long[iterations];
+                for (int i = -iterations / 10; i < iterations; i++) {
+                    long start = System.nanoTime();
+                    try (Connection dbConn = pool.borrow()) {
+                        query.getValue().run(dbConn);
+                    }
+                    // negative iterations are the warm-up
+                    if (i >= 0) {
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                }
+                printLatencies(query.getKey(), latencies);
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkPlans(pool, scale, iterations)
+        |
+        |  Purpose:  Seeds the synthetic data set and times both SQL forms of
+        |            query a in the database (the leaderboard is bypassed),
+        |            alternating them so both see the same conditions. Fails
+        |            if they do not return the same rows.
+        |
+        |  Parameters:
+        |      pool -- Pool the queries borrow their connection from.
+        |      scale -- Size of the synthetic data set.
+        |      iterations -- Timed runs of each plan.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkPlans(ConnectionPool pool, double scale, int iterations) throws IOException, SQLException {
+            seed(pool, writeSyntheticData(generator(scale)));
+            String[] plans = {"legacy", "rank"};
+            long[][] latencies = new long[plans.length][iterations];
+
+            try (Connection dbConn = pool.borrow()) {
+                // untimed run of each plan, which also checks that they agree
+                Set<String> expected = null;
+                for (String plan : plans) {
+                    Set<String> rows = new TreeSet<>();
+                    for (Map<String, Object> row : queryHighScores(dbConn, plan)) {
+                        rows.add(row.toString());
+                    }
+                    if (expected != null && !expected.equals(rows)) {
+                        throw new SQLException("Plan " + plan + " returned different rows than " + plans[0] + ".");
+                    }
+                    expected = rows;
+                }
+
+                for (int i = 0; i < iterations; i++) {
+                    for (int p = 0; p < plans.length; p++) {
+                        long start = System.nanoTime();
+                        queryHighScores(dbConn, plans[p]);
+                        latencies[p][i] = System.nanoTime() - start;
+                    }
+                }
+            }
+
+            System.out.println(String.format("%nQuery a plans on scale %s, %d iterations:", scaleText(scale), iterations));
+            for (int p = 0; p < plans.length; p++) {
+                printLatencies(plans[p], latencies[p]);
+            }
+            System.out.println(String.format("Speedup: %.2fx",
+                    Arrays.stream(latencies[0]).sum() / (double) Math.max(Arrays.stream(latencies[1]).sum(), 1)));
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkColumns(pool, scale, iterations)
+        |
+        |  Purpose:  Seeds the synthetic data set and compares the Gameplay
+        |            columns with the database: the memory and load time of
+        |            Gameplay as columns (from the database and from the CSV)
+        |            and as row maps, then query a and query d in SQL against
+        |            scans of the columns, alternating them so both see the
+        |            same conditions. Fails if they do not return the same
+        |            rows.
+        |
+        |  Parameters:
+        |      pool -- Pool the queries borrow their connection from.
+        |      scale -- Size of the synthetic data set.
+        |      iterations -- Timed runs of each query.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkColumns(ConnectionPool pool, double scale, int iterations) throws IOException, SQLException {
+            DataGenerator generator = generator(scale);
+            File dir = writeSyntheticData(generator);
+            seed(pool, dir);
+            int games = generator.gameCount();
+            Random random = new Random(SEED);
+            String[] names = {"query a sql", "query a columns", "query d sql", "query d columns"};
+            long[][] latencies = new long[names.length][iterations];
+
+            try (Connection dbConn = pool.borrow()) {
+                // the same rows as row maps and as columns
+                long heap = usedHeap();
+                long start = System.nanoTime();
+                List<Map<String, Object>> rowMaps = loadGameplayRows(dbConn);
+                long rowNanos = System.nanoTime() - start;
+                long rowBytes = usedHeap() - heap;
+                int rows = rowMaps.size();
+                rowMaps = null;
+
+                heap = usedHeap();
+                start = System.nanoTime();
+                GameplayColumns.Snapshot columns = gameplayColumns.get(dbConn);
+                long columnNanos = System.nanoTime() - start;
+                long columnBytes = usedHeap() - heap;
+                start = System.nanoTime();
+                GameplayColumns.Snapshot csvColumns = GameplayColumns.fromCsv(new File(dir, "Gameplay.csv").getPath());
+                long csvNanos = System.nanoTime() - start;
+                if (columns.size != rows || csvColumns.size != rows) {
+                    throw new SQLException("The columns hold " + columns.size + " rows from the database and " + csvColumns.size
+                                           + " from the CSV, Gameplay has " + rows + ".");
+                }
+
+                System.out.println(String.format("%nGameplay of scale %s, %,d rows:", scaleText(scale), rows));
+                System.out.println(String.format("    row maps  %8.1f MB, loaded in %,8.0f ms", rowBytes / 1048576.0, rowNanos / 1e6));
+                System.out.println(String.format("    columns   %8.1f MB, loaded in %,8.0f ms from the database, %,.0f ms from the CSV"
+                                                 + " (%.1fx less memory)", columnBytes / 1048576.0, columnNanos / 1e6,
+                                                 csvNanos / 1e6, rowBytes / (double) Math.max(columnBytes, 1)));
+
+                // untimed run of both forms of each query, which also checks that they agree
+                if (!asStrings(queryHighScores(dbConn)).equals(asStrings(gameplayColumns.highScores(dbConn)))) {
+                    throw new SQLException("The columns returned different rows than the database for query a.");
+                }
+                for (int gameId = 1; gameId <= games; gameId++) {
+                    if (!asStrings(queryTicketsEarned(dbConn, gameId)).equals(asStrings(gameplayColumns.ticketsEarned(dbConn, gameId)))) {
+                        throw new SQLException("The columns returned different rows than the database for query d of game "
+                                               + gameId + ".");
+                    }
+                }
+
+                for (int i = 0; i < iterations; i++) {
+                    int gameId = 1 + random.nextInt(games);
+                    DatabaseAction[] runs = {
+                        conn -> queryHighScores(conn),
+                        conn -> gameplayColumns.highScores(conn),
+                        conn -> queryTicketsEarned(conn, gameId),
+                        conn -> gameplayColumns.ticketsEarned(conn, gameId)
+                    };
+                    for (int r = 0; r < runs.length; r++) {
+                        start = System.nanoTime();
+                        runs[r].run(dbConn);
+                        latencies[r][i] = System.nanoTime() - start;
+                    }
+                }
+            }
+
+            System.out.println(String.format("%nQueries on scale %s, %d iterations:", scaleText(scale), iterations));
+            for (int r = 0; r < names.length; r++) {
+                printLatencies(names[r], latencies[r]);
+            }
+            for (int r = 0; r < names.length; r += 2) {
+                System.out.println(String.format("Speedup of %s: %.2fx", names[r].substring(0, 7),
+                        Arrays.stream(latencies[r]).sum() / (double) Math.max(Arrays.stream(latencies[r + 1]).sum(), 1)));
+            }
+        }
+
+        // every Gameplay row as a map, the way the queries hand out rows
+        private static List<Map<String, Object>> loadGameplayRows(Connection dbConn) throws SQLException {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            try (Statement statement = dbConn.createStatement()) {
+                statement.setFetchSize(10000);
+                try (ResultSet resultSet = statement.executeQuery(
+                        "SELECT GameplayID, MemberID, GameID, Score, TicketsEarned, \"Date\" FROM Gameplay ORDER BY GameplayID")) {
+                    while (resultSet.next()) {
+                        Map<String, Object> row = new LinkedHashMap<>();
+                        row.put("gameplayId", resultSet.getInt(1));
+                        row.put("memberId", resultSet.getInt(2));
+                        row.put("gameId", resultSet.getInt(3));
+                        row.put("score", resultSet.getInt(4));
+                        row.put("ticketsEarned", resultSet.getInt(5));
+                        row.put("date", resultSet.getDate(6));
+                        rows.add(row);
+                    }
+                }
+            }
+            return rows;
+        }
+
+        private static Set<String> asStrings(List<Map<String, Object>> rows) {
+            Set<String> strings = new TreeSet<>();
+            for (Map<String, Object> row : rows) {
+                strings.add(row.toString());
+            }
+            return strings;
+        }
+
+        // heap in use after a few collections
+        private static long usedHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkMembers(pool, scale, iterations)
+        |
+        |  Purpose:  Seeds the synthetic data set and times the member
+        |            lifecycle: insertMember, updateMemberContact and
+        |            removeMember, the cores of the add, edit and delete
+        |            member menu options. Each cycle runs on one borrowed
+        |            connection and every step is timed on its own.
+        |
+        |  Parameters:
+        |      pool -- Pool the cycles borrow their connection from.
+        |      scale -- Size of the synthetic data set.
+        |      iterations -- Number of add, edit, delete cycles.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkMembers(ConnectionPool pool, double scale, int iterations) throws IOException, SQLException {
+            seed(pool, writeSyntheticData(generator(scale)));
+
+            long[] adds = new long[iterations];
+            long[] edits = new long[iterations];
+            long[] deletes = new long[iterations];
+            for (int i = 0; i < iterations; i++) {
+                try (Connection dbConn = pool.borrow()) {
+                    long start = System.nanoTime();
+                    int memberId = insertMember(dbConn, "Bench", "Member" + i, "555-000-0000", i + " Bench St");
+                    adds[i] = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    updateMemberContact(dbConn, memberId, "555-111-1111", i + " Other St");
+                    edits[i] = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    removeMember(dbConn, memberId);
+                    deletes[i] = System.nanoTime() - start;
+                }
+            }
+
+            System.out.println(String.format("%nMember lifecycle on scale %s, %d iterations:", scaleText(scale), iterations));
+            printLatencies("add member", adds);
+            printLatencies("edit member", edits);
+            printLatencies("delete member", deletes);
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkIngest(pool, scale, plays)
+        |
+        |  Purpose:  Seeds the synthetic data set, then has four threads
+        |            offer random plays of the seeded members and games to a
+        |            GameplayIngestor until plays have been accepted, retrying
+        |            rejected ones, and waits for them to be written. Prints
+        |            the end to end rate and the ingestor's stats, and checks
+        |            that Gameplay grew by the plays written.
+        |
+        |  Parameters:
+        |      pool -- Pool the ingestor writes through.
+        |      scale -- Size of the synthetic data set.
+        |      plays -- Number of plays recorded.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkIngest(ConnectionPool pool, double scale, int plays) throws IOException, SQLException, InterruptedException {
+            DataGenerator generator = generator(scale);
+            seed(pool, writeSyntheticData(generator));
+            long before = countGameplay(pool);
+
+            final int producers = 4;
+            AtomicLong remaining = new AtomicLong(plays); // plays still to be accepted
+            AtomicLong retries = new AtomicLong(); // offers the ingestor rejected
+            long start = System.nanoTime();
+            GameplayIngestor ingestor = gameplayIngestor();
+            ExecutorService executor = Executors.newFixedThreadPool(producers);
+            for (int p = 0; p < producers; p++) {
+                int seed = p;
+                executor.execute(() -> {
+                    Random random = new Random(SEED + seed);
+                    try {
+                        while (remaining.getAndDecrement() > 0) {
+                            int memberId = 1 + random.nextInt(generator.memberCount());
+                            int gameId = 1 + random.nextInt(generator.gameCount());
+                            int score = random.nextInt(10000);
+                            while (!ingestor.offer(memberId, gameId, score, score / 100)) {
+                                retries.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+            ingestor.flush();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            String stats = closeGameplayIngestor();
+
+            long added = countGameplay(pool) - before;
+            System.out.println(String.format("%nIngested %,d plays on scale %s in %.2f seconds (%,.0f plays/sec), %d offers rejected",
+                                             plays, scaleText(scale), seconds, plays / seconds, retries.get()));
+            System.out.println(stats);
+            System.out.println(added == plays ? "Gameplay grew by every play" : "Gameplay grew by " + added + " rows, expected " + plays);
+        }
+
+        private static long countGameplay(ConnectionPool pool) throws SQLException {
+            try (Connection dbConn = pool.borrow();
+                 PreparedStatement statement = dbConn.prepareStatement("SELECT COUNT(*) FROM Gameplay");
+                 ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkReport(scale, rounds)
+        |
+        |  Purpose:  Writes the synthetic data set, reads its Gameplay.csv
+        |            into columns and times the tickets report of all games on
+        |            1, 2, 4, ... threads up to the number of processors, with
+        |            the speedup and parallel efficiency over one thread. The
+        |            parallel sum is timed on its own and with the report
+        |            written out to a writer that only checksums it. Fails if
+        |            two thread counts write different reports. Needs no
+        |            database.
+        |
+        |  Parameters:
+        |      scale -- Size of the synthetic data set.
+        |      rounds -- Timed rounds per thread count, the best is kept.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkReport(double scale, int rounds) throws IOException {
+            File dir = writeSyntheticData(generator(scale));
+            GameplayColumns.Snapshot rows = GameplayColumns.fromCsv(new File(dir, "Gameplay.csv").getPath());
+            int processors = Runtime.getRuntime().availableProcessors();
+            List<Integer> threadCounts = new ArrayList<>(); // powers of two, then every processor
+            for (int threads = 1; threads < processors; threads *= 2) {
+                threadCounts.add(threads);
+            }
+            threadCounts.add(processors);
+
+            System.out.println(String.format("%nTickets report of scale %s, %,d rows, best of %d rounds:", scaleText(scale), rows.size, rounds));
+            System.out.println(String.format("%8s %10s %10s %14s %8s %11s", "threads", "sum ms", "report ms", "rows/sec",
+                                             "speedup", "efficiency"));
+            long oneThreadNanos = 0; // sum time on one thread
+            Long expected = null; // checksum of the report on one thread
+            for (int threads : threadCounts) {
+                long sumNanos = Long.MAX_VALUE;
+                long reportNanos = Long.MAX_VALUE;
+                // round 0 is the warm-up
+                for (int round = 0; round <= rounds; round++) {
+                    long start = System.nanoTime();
+                    GameplayColumns.sumTickets(rows, threads);
+                    long summed = System.nanoTime() - start;
+
+                    ChecksumWriter out = new ChecksumWriter();
+                    start = System.nanoTime();
+                    GameplayColumns.writeTicketReport(rows, GameplayColumns.sumTickets(rows, threads), out);
+                    long reported = System.nanoTime() - start;
+                    if (expected == null) {
+                        expected = out.checksum;
+                    } else if (out.checksum != expected) {
+                        throw new IOException("The report on " + threads + " threads differs from the one on one thread.");
+                    }
+
+                    if (round > 0) {
+                        sumNanos = Math.min(sumNanos, summed);
+                        reportNanos = Math.min(reportNanos, reported);
+                    }
+                }
+
+                if (threads == 1) {
+                    oneThreadNanos = sumNanos;
+                }
+                double speedup = oneThreadNanos / (double) Math.max(sumNanos, 1);
+                System.out.println(String.format("%8d %10.1f %10.1f %,14.0f %7.2fx %10.0f%%", threads, sumNanos / 1e6,
+                                                 reportNanos / 1e6, rows.size / (sumNanos / 1e9), speedup,
+                                                 100 * speedup / threads));
+            }
+        }
+
+        // a writer that keeps a checksum of the text instead of the text
+        private static final class ChecksumWriter extends Writer {
+            long checksum = 0;
+
+            @Override
+            public void write(char[] text, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    checksum = checksum * 31 + text[i];
+                }
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkBasket(prizes, iterations)
+        |
+        |  Purpose:  Builds a catalog of prizes costing 50 to 10,000 tickets
+        |            in steps of 50, like DataGenerator's, times building its
+        |            subset sum table, then times basket for random balances up
+        |            to the cost of the whole catalog after a tenth as many
+        |            warm-up calls.
+        |
+        |  Parameters:
+        |      prizes -- Number of prizes in the catalog.
+        |      iterations -- Timed basket calls.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkBasket(int prizes, int iterations) {
+            Random random = new Random(SEED);
+            int[] ids = new int[prizes];
+            String[] names = new String[prizes];
+            int[] costs = new int[prizes];
+            int total = 0; // cost of the whole catalog
+            for (int i = 0; i < prizes; i++) {
+                costs[i] = 50 * (1 + random.nextInt(200));
+                total += costs[i];
+            }
+            Arrays.sort(costs);
+            for (int i = 0; i < prizes; i++) {
+                ids[i] = i + 1;
+                names[i] = "Prize " + (i + 1);
+            }
+
+            PrizeCatalog catalog = new PrizeCatalog(ids, names, costs);
+            long start = System.nanoTime();
+            catalog.basket(total);
+            double buildMillis = (System.nanoTime() - start) / 1e6;
+
+            long[] latencies = new long[iterations];
+            long spent = 0; // tickets spent by every basket, kept so the calls are not optimized away
+            for (int i = -iterations / 10; i < iterations; i++) {
+                int tickets = random.nextInt(total + 1);
+                start = System.nanoTime();
+                int[] basket = catalog.basket(tickets);
+                long elapsed = System.nanoTime() - start;
+                for (int entry : basket) {
+                    spent += costs[entry];
+                }
+                // negative i are the warm-up
+                if (i >= 0) {
+                    latencies[i] = elapsed;
+                }
+            }
+
+            System.out.println(String.format("%nBasket of %d prizes (%,d tickets in all), table built in %.2f ms, %,d tickets spent:",
+                                             prizes, total, buildMillis, spent));
+            printLatencies("basket", latencies);
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method stressRedeem(pool, threads, prizes)
+        |
+        |  Purpose:  Adds one member and a set of 10 ticket prizes, gives
+        |            the member tickets for half of them, and has every
+        |            thread try to redeem every prize for that member at once,
+        |            each in its own order on its own borrowed connection.
+        |            Afterwards exactly half the prizes must be gone, the
+        |            member must have no tickets left, and the redemptions the
+        |            threads saw succeed must match both. The member and the
+        |            prizes left are deleted again.
+        |
+        |  Parameters:
+        |      pool -- Pool the redeemers borrow their connections from.
+        |      threads -- Number of concurrent redeemers.
+        |      prizes -- Number of prizes added.
+        |
+        |  Returns:  boolean -- true if no ticket was lost or spent twice.
+        *-------------------------------------------------------------------*/
+        private static boolean stressRedeem(ConnectionPool pool, int threads, int prizes) throws SQLException, InterruptedException {
+            final int ticketCost = 10; // cost of every prize
+            int startTickets = prizes / 2 * ticketCost; // enough for half the prizes
+            int memberId;
+            int[] prizeIds = new int[prizes];
+            try (Connection dbConn = pool.borrow()) {
+                createTables(dbConn);
+                createRedemptionLog(dbConn);
+                createSequences(dbConn);
+                memberId = insertMember(dbConn, "Stress", "Redeemer", "555-000-0000", "1 Stress St");
+                try (PreparedStatement statement = dbConn.prepareStatement(
+                        "UPDATE Member SET TotalTickets = ? WHERE MemberID = ?")) {
+                    statement.setInt(1, startTickets);
+                    statement.setInt(2, memberId);
+                    statement.executeUpdate();
+                }
+                for (int i = 0; i < prizes; i++) {
+                    prizeIds[i] = insertPrize(dbConn, "Stress Prize " + i, ticketCost);
+                }
+            }
+
+            Map<RedeemResult, AtomicLong> outcomes = new ConcurrentHashMap<>(); // results the threads saw
+            AtomicLong failures = new AtomicLong(); // redemptions that threw
+            CountDownLatch start = new CountDownLatch(1); // releases every thread at once
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            long startNanos = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                executor.execute(() -> {
+                    int[] order = prizeIds.clone();
+                    Random random = new Random(SEED + seed);
+                    for (int i = order.length - 1; i > 0; i--) {
+                        int j = random.nextInt(i + 1);
+                        int swap = order[i];
+                        order[i] = order[j];
+                        order[j] = swap;
+                    }
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int prizeId : order) {
+                        try (Connection dbConn = pool.borrow()) {
+                            outcomes.computeIfAbsent(redeemPrize(dbConn, prizeId, memberId), k -> new AtomicLong())
+                                    .incrementAndGet();
+                        } catch (SQLException e) {
+                            failures.incrementAndGet();
+                            e.printStackTrace();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+            int tickets; // member's tickets afterwards
+            int prizesLeft; // stress prizes nobody redeemed
+            int logged; // redemptions logged for the member
+            try (Connection dbConn = pool.borrow()) {
+                try (PreparedStatement statement = dbConn.prepareStatement(
+                        "SELECT TotalTickets FROM Member WHERE MemberID = ?")) {
+                    statement.setInt(1, memberId);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        resultSet.next();
+                        tickets = resultSet.getInt("TotalTickets");
+                    }
+                }
+                try (PreparedStatement statement = dbConn.prepareStatement(
+                        "SELECT COUNT(*) FROM Prize WHERE Name LIKE 'Stress Prize %'")) {
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        resultSet.next();
+                        prizesLeft = resultSet.getInt(1);
+                    }
+                }
+
+                try (PreparedStatement statement = dbConn.prepareStatement(
+                        "SELECT COUNT(*) FROM PrizeRedemption WHERE MemberID = ?")) {
+                    statement.setInt(1, memberId);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        resultSet.next();
+                        logged = resultSet.getInt(1);
+                    }
+                }
+
+                inTransaction(dbConn, () -> executeInChunks(dbConn, "DELETE FROM Prize WHERE PrizeID IN", new int[0], prizeIds));
+                try (PreparedStatement statement = dbConn.prepareStatement("DELETE FROM PrizeRedemption WHERE MemberID = ?")) {
+                    statement.setInt(1, memberId);
+                    statement.executeUpdate();
+                }
+                removeMember(dbConn, memberId);
+            }
+            PrizeCatalog.invalidate();
+
+            long redeemed = outcomes.getOrDefault(RedeemResult.REDEEMED, new AtomicLong()).get();
+            boolean passed = failures.get() == 0 && tickets == 0 && redeemed == prizes / 2
+                             && prizesLeft == prizes - redeemed && logged == redeemed
+                             && startTickets - redeemed * ticketCost == tickets;
+            System.out.println(String.format("%n%d threads redeeming %d prizes of %d tickets with %d tickets, %.2f seconds:",
+                                             threads, prizes, ticketCost, startTickets, seconds));
+            System.out.println(String.format("  outcomes %s, %d failed", outcomes, failures.get()));
+            System.out.println(String.format("  %d tickets left (expected 0), %d prizes left (expected %d), %d logged",
+                                             tickets, prizesLeft, prizes - prizes / 2, logged));
+            System.out.println(passed ? "PASSED: no tickets lost or spent twice" : "FAILED");
+            return passed;
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method seed(pool, dir)
+        |
+        |  Purpose:  Creates the tables if needed, empties them and imports
+        |            the CSVs in dir one table at a time in foreign key order.
+        |
+        |  Parameters:
+        |      pool -- Pool the import borrows its connection from.
+        |      dir -- Directory holding one CSV per table.
+        |
+        |  Returns:  Map<String, Long> -- Nanoseconds each table took to import.
+        *-------------------------------------------------------------------*/
+        private static Map<String, Long> seed(ConnectionPool pool, File dir) throws SQLException {
+            Map<String, Long> nanos = new HashMap<>();
+            try (Connection dbConn = pool.borrow()) {
+                createTables(dbConn);
+                addMissingColumns(dbConn);
+                createIndexes(dbConn);
+                createTicketTotals(dbConn);
+
+                // children first so no foreign key is left dangling
+                try (Statement statement = dbConn.createStatement()) {
+                    statement.executeUpdate("DELETE FROM GameTickets");
+                    for (int i = IMPORT_ORDER.length - 1; i >= 0; i--) {
+                        statement.executeUpdate("DELETE FROM " + IMPORT_ORDER[i]);
+                    }
+                }
+                if (!dbConn.getAutoCommit()) {
+                    dbConn.commit();
+                }
+
+                for (String tableName : IMPORT_ORDER) {
+                    long start = System.nanoTime();
+                    IMPORTERS.get(tableName).accept(dbConn, new File(dir, tableName + ".csv").getPath());
+                    nanos.put(tableName, System.nanoTime() - start);
+                }
+                rebuildTicketTotals(dbConn);
+
+                // restart the ID sequences after the seeded IDs
+                dropSequences(dbConn);
+                createSequences(dbConn);
+            }
+            leaderboard.invalidate();
+            PrizeCatalog.invalidate();
+            tokenSpending.invalidate();
+            members.invalidate();
+            gameplayColumns.invalidate();
+            return nanos;
+        }
+
+        private static DataGenerator generator(double scale) {
+            return DataGenerator.atScale(scale, SEED);
+        }
+
+        // 0.0005 rather than 5.0E-4
+        private static String scaleText(double scale) {
+            return java.math.BigDecimal.valueOf(scale).stripTrailingZeros().toPlainString();
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method writeSyntheticData(generator)
+        |
+        |  Purpose:  Writes the generator's CSVs into a new temporary
+        |            directory that is deleted when the JVM exits.
+        |
+        |  Parameters:
+        |      generator -- Generator of the data set.
+        |
+        |  Returns:  File -- The directory holding the CSVs.
+        *-------------------------------------------------------------------*/
+        private static File writeSyntheticData(DataGenerator generator) throws IOException {
+            File dir = java.nio.file.Files.createTempDirectory("prog4-bench").toFile();
+            dir.deleteOnExit();
+            for (String tableName : IMPORT_ORDER) {
+                new File(dir, tableName + ".csv").deleteOnExit();
+            }
+            generator.write(dir);
+            return dir;
+        }
+
+        private static void printImportRate(String name, long rows, long nanos) {
+            double seconds = nanos / 1_000_000_000.0;
+            System.out.println(String.format("%-16s %,12d rows %9.2f s %,14.0f rows/sec", name, rows, seconds, rows / seconds));
+        }
+
+        private static void printLatencies(String name, long[] nanos) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long value : sorted) {
+                total += value;
+            }
+            System.out.println(String.format("%-16s %,10.0f ops/sec  mean %8.3f ms  p50 %8.3f ms  p99 %8.3f ms  max %8.3f ms",
+                               name, sorted.length / (total / 1_000_000_000.0), total / 1e6 / sorted.length,
+                               sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6,
+                               sorted[sorted.length - 1] / 1e6));
+        }
+
+        /*---------------------------------------------------------------------
+        |  Method benchmarkCsv(file, rounds)
+        |
+        |  Purpose:  Times the old split-based parse and CsvReader over the
+        |            same file. One warm-up round is run for each before the
+        |            timed rounds. Both paths compute a checksum of every
+        |            value, which must match.
+        |
+        |  Parameters:
+        |      file -- CSV file named after one of the tables.
+        |      rounds -- Number of timed rounds for each path.
+        |
+        |  Returns:  None.
+        *-------------------------------------------------------------------*/
+        private static void benchmarkCsv(String file, int rounds) throws IOException {
+            String tableName = new File(file).getName().replaceFirst("\\.csv$", ""); // table the file belongs to
+            String types = COLUMN_TYPES.get(tableName);
+            if (types == null) {
+                System.err.println("No column types for " + file + ". Name the file after a table, e.g. Gameplay.csv.");
+                return;
+            }
+            double megabytes = new File(file).length() / (1024.0 * 1024.0); // size of the file
+
+            // one untimed round of each to warm up
+            long splitChecksum = parseWithSplit(file, types);
+            long readerChecksum = parseWithCsvReader(file, types);
+            if (splitChecksum != readerChecksum) {
+                System.err.println("Checksums differ: split " + splitChecksum + ", CsvReader " + readerChecksum + ".");
+            }
+
+            long rows = countRows(file);
+            long splitNanos = 0; // total time of the split rounds
+            long readerNanos = 0; // total time of the CsvReader rounds
+            // alternate the two paths so both see the same machine conditions
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                parseWithSplit(file, types);
+                splitNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                parseWithCsvReader(file, types);
+                readerNanos += System.nanoTime() - start;
+            }
+
+            printRate("BufferedReader + split", rows * rounds, megabytes * rounds, splitNanos);
+            printRate("CsvReader", rows * rounds, megabytes * rounds, readerNanos);
+            System.out.println(String.format("Speedup: %.2fx", splitNanos / (double) Math.max(readerNanos, 1)));
+        }
+
+        private static long parseWithSplit(String file, String types) throws IOException {
+            long checksum = 0; // combined value of every field
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line = null;
+                // split every line and convert each field the way the importers used to
+                while ((line = reader.readLine()) != null) {
+                    String[] data = line.split(",");
+                    for (int i = 0; i < types.length(); i++) {
+                        switch (types.charAt(i)) {
+                            case 'i':
+                                checksum = checksum * 31 + Integer.valueOf(data[i]);
+                                break;
+                            case 'n':
+                                checksum = checksum * 31 + Math.round(Double.valueOf(data[i]) * 100);
+                                break;
+                            case 'd':
+                                checksum = checksum * 31 + java.sql.Date.valueOf(data[i]).toLocalDate().toEpochDay();
+                                break;
+                            default:
+                                checksum = checksum * 31 + (data[i].equals("NULL") ? 0 : data[i].hashCode());
+                                break;
+                        }
+                    }
+                }
+            }
+            return checksum;
+        }
+
+        private static long parseWithCsvReader(String file, String types) throws IOException {
+            long checksum = 0; // combined value of every field
+            try (CsvReader reader = new CsvReader(file)) {
+                // read every field straight into its type
+                while (reader.nextRow()) {
+                    for (int i = 0; i < types.length(); i++) {
+                        switch (types.charAt(i)) {
+                            case 'i':
+                                checksum = checksum * 31 + reader.readInt();
+                                break;
+                            case 'n':
+                                checksum = checksum * 31 + Math.round(reader.readDecimal() * 100);
+                                break;
+                            case 'd':
+                                checksum = checksum * 31 + reader.readEpochDay();
+                                break;
+                            default:
+                                String value = reader.readString();
+                                checksum = checksum * 31 + (value == null ? 0 : value.hashCode());
+                                break;
+                        }
+                    }
+                }
+            }
+            return checksum;
+        }
+
+        private static long countRows(String file) throws IOException {
+            long rows = 0;
+            try (CsvReader reader = new CsvReader(file)) {
+                while (reader.nextRow()) {
+                    rows++;
+                }
+            }
+            return rows;
+        }
+
+        private static void printRate(String name, long rows, double megabytes, long nanos) {
+            double seconds = nanos / 1_000_000_000.0;
+            System.out.println(String.format("%-24s %,14.0f rows/sec %10.1f MB/sec", name, rows / seconds, megabytes / seconds));
+        }
+    }
+
 }
\ No newline at end of file